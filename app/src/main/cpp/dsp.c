@@ -0,0 +1,67 @@
+#include "dsp.h"
+
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+#include <arm_neon.h>
+#define DSP_NEON 1
+#elif defined(__SSE2__)
+#include <emmintrin.h>
+#define DSP_SSE2 1
+#endif
+
+void dsp_pcm16_to_float_scalar(const int16_t *in, float *out, size_t count, float scale) {
+    for (size_t i = 0; i < count; ++i) {
+        out[i] = (float) in[i] * scale;
+    }
+}
+
+void dsp_pcm16_to_float(const int16_t *in, float *out, size_t count, float scale) {
+    size_t i = 0;
+#if defined(DSP_NEON)
+    const float32x4_t scales = vdupq_n_f32(scale);
+    for (; i + 8 <= count; i += 8) {
+        const int16x8_t samples = vld1q_s16(in + i);
+        const int32x4_t low = vmovl_s16(vget_low_s16(samples));
+        const int32x4_t high = vmovl_s16(vget_high_s16(samples));
+        vst1q_f32(out + i, vmulq_f32(vcvtq_f32_s32(low), scales));
+        vst1q_f32(out + i + 4, vmulq_f32(vcvtq_f32_s32(high), scales));
+    }
+#elif defined(DSP_SSE2)
+    const __m128 scales = _mm_set1_ps(scale);
+    for (; i + 8 <= count; i += 8) {
+        const __m128i samples = _mm_loadu_si128((const __m128i *) (in + i));
+        /* Widen with sign by placing each sample in the top half of a lane and shifting down. */
+        const __m128i low = _mm_srai_epi32(_mm_unpacklo_epi16(samples, samples), 16);
+        const __m128i high = _mm_srai_epi32(_mm_unpackhi_epi16(samples, samples), 16);
+        _mm_storeu_ps(out + i, _mm_mul_ps(_mm_cvtepi32_ps(low), scales));
+        _mm_storeu_ps(out + i + 4, _mm_mul_ps(_mm_cvtepi32_ps(high), scales));
+    }
+#endif
+    dsp_pcm16_to_float_scalar(in + i, out + i, count - i, scale);
+}
+
+void dsp_block_stats_compute(const int16_t *in, size_t count, int previous_negative, dsp_block_stats *stats) {
+    int64_t sum_of_squares = 0;
+    int32_t peak = 0;
+    int32_t zero_crossings = 0;
+    int negative = previous_negative != 0;
+    for (size_t i = 0; i < count; ++i) {
+        const int32_t sample = in[i];
+        const int32_t magnitude = sample < 0 ? -sample : sample;
+        const int sample_negative = sample < 0;
+        sum_of_squares += sample * sample;
+        peak = magnitude > peak ? magnitude : peak;
+        zero_crossings += sample_negative != negative;
+        negative = sample_negative;
+    }
+    stats->sum_of_squares = sum_of_squares;
+    stats->peak = peak;
+    stats->zero_crossings = zero_crossings;
+}
+
+void dsp_ring_extract(const int16_t *ring, size_t ring_length, size_t start, size_t count,
+                      float *out, float scale) {
+    start %= ring_length;
+    const size_t first = count < ring_length - start ? count : ring_length - start;
+    dsp_pcm16_to_float(ring + start, out, first, scale);
+    dsp_pcm16_to_float(ring, out + first, count - first, scale);
+}
@@ -0,0 +1,41 @@
+#ifndef PINGPONG_DSP_H
+#define PINGPONG_DSP_H
+
+#include <stddef.h>
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/* Per-block audio statistics, exact integers so blocks can be summed. */
+typedef struct {
+    int64_t sum_of_squares;
+    int32_t peak;
+    int32_t zero_crossings;
+} dsp_block_stats;
+
+/* out[i] = in[i] * scale, vectorized where the target allows. */
+void dsp_pcm16_to_float(const int16_t *in, float *out, size_t count, float scale);
+
+/* Reference implementation of dsp_pcm16_to_float, kept for tests and as the fallback. */
+void dsp_pcm16_to_float_scalar(const int16_t *in, float *out, size_t count, float scale);
+
+/*
+ * Sum of squares, peak magnitude and sign changes of a block. previous_negative is the sign of the
+ * sample before the block, so crossings at block boundaries are counted once.
+ */
+void dsp_block_stats_compute(const int16_t *in, size_t count, int previous_negative, dsp_block_stats *stats);
+
+/*
+ * Converts count samples of a ring of ring_length samples, starting at index start and wrapping
+ * at the end of the ring, into out.
+ */
+void dsp_ring_extract(const int16_t *ring, size_t ring_length, size_t start, size_t count,
+                      float *out, float scale);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif
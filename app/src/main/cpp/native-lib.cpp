@@ -1,13 +1,78 @@
 #include <jni.h>
-#include <string>
+
+#include "dsp.h"
+
+// JNI bindings for com.sieong.pingpong.NativeDsp. Java arrays are pinned with critical regions,
+// which must stay short and must not call back into the VM, and float output goes straight into
+// direct buffers.
+
+namespace {
+
+bool rangeValid(JNIEnv *env, jarray array, jint offset, jint length) {
+    return offset >= 0 && length >= 0 && offset <= env->GetArrayLength(array) - length;
+}
+
+float *directFloats(JNIEnv *env, jobject buffer, jint length) {
+    if (env->GetDirectBufferCapacity(buffer) < length) {
+        return nullptr;
+    }
+    return static_cast<float *>(env->GetDirectBufferAddress(buffer));
+}
+
+}  // namespace
+
+extern "C"
+JNIEXPORT jboolean JNICALL
+Java_com_sieong_pingpong_NativeDsp_nativePcm16ToFloat(
+        JNIEnv *env, jclass, jshortArray in, jint offset, jint length, jobject out, jfloat scale) {
+    float *destination = directFloats(env, out, length);
+    if (destination == nullptr || !rangeValid(env, in, offset, length)) {
+        return JNI_FALSE;
+    }
+    auto *samples = static_cast<jshort *>(env->GetPrimitiveArrayCritical(in, nullptr));
+    if (samples == nullptr) {
+        return JNI_FALSE;
+    }
+    dsp_pcm16_to_float(samples + offset, destination, static_cast<size_t>(length), scale);
+    env->ReleasePrimitiveArrayCritical(in, samples, JNI_ABORT);
+    return JNI_TRUE;
+}
+
+extern "C"
+JNIEXPORT jboolean JNICALL
+Java_com_sieong_pingpong_NativeDsp_nativeRingExtract(
+        JNIEnv *env, jclass, jshortArray ring, jint start, jint length, jobject out, jfloat scale) {
+    const jint ringLength = env->GetArrayLength(ring);
+    float *destination = directFloats(env, out, length);
+    if (destination == nullptr || start < 0 || length < 0 || length > ringLength) {
+        return JNI_FALSE;
+    }
+    auto *samples = static_cast<jshort *>(env->GetPrimitiveArrayCritical(ring, nullptr));
+    if (samples == nullptr) {
+        return JNI_FALSE;
+    }
+    dsp_ring_extract(samples, static_cast<size_t>(ringLength), static_cast<size_t>(start),
+                     static_cast<size_t>(length), destination, scale);
+    env->ReleasePrimitiveArrayCritical(ring, samples, JNI_ABORT);
+    return JNI_TRUE;
+}
 
 extern "C"
-JNIEXPORT jstring
-
-JNICALL
-Java_com_sieong_pingpong_MainActivity_stringFromJNI(
-        JNIEnv *env,
-        jobject /* this */) {
-    std::string hello = "Hello from C++";
-    return env->NewStringUTF(hello.c_str());
+JNIEXPORT jboolean JNICALL
+Java_com_sieong_pingpong_NativeDsp_nativeBlockStats(
+        JNIEnv *env, jclass, jshortArray in, jint offset, jint length, jboolean previousNegative,
+        jlongArray out) {
+    if (!rangeValid(env, in, offset, length) || env->GetArrayLength(out) < 3) {
+        return JNI_FALSE;
+    }
+    auto *samples = static_cast<jshort *>(env->GetPrimitiveArrayCritical(in, nullptr));
+    if (samples == nullptr) {
+        return JNI_FALSE;
+    }
+    dsp_block_stats stats;
+    dsp_block_stats_compute(samples + offset, static_cast<size_t>(length), previousNegative, &stats);
+    env->ReleasePrimitiveArrayCritical(in, samples, JNI_ABORT);
+    const jlong values[3] = {stats.sum_of_squares, stats.peak, stats.zero_crossings};
+    env->SetLongArrayRegion(out, 0, 3, values);
+    return JNI_TRUE;
 }
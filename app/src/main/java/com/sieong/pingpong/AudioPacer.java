@@ -0,0 +1,47 @@
+package com.sieong.pingpong;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Holds an offline source back to a multiple of real time.
+ */
+final class AudioPacer {
+    private final int sampleRate;
+    private final float speed;
+    private long startNanos;
+
+    /**
+     * @param speed 1 for real time, 10 for ten times as fast; 0 or less does not pace at all.
+     */
+    AudioPacer(int sampleRate, float speed) {
+        this.sampleRate = sampleRate;
+        this.speed = speed;
+    }
+
+    boolean isPaced() {
+        return speed > 0;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Sleeps until the given number of samples would have been played at this speed.
+     */
+    void await(long samples) throws InterruptedIOException {
+        if (speed <= 0) {
+            return;
+        }
+        final long dueNanos = startNanos + (long) (samples * 1e9 / (sampleRate * (double) speed));
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
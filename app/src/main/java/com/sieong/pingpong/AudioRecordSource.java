@@ -0,0 +1,78 @@
+package com.sieong.pingpong;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+
+import java.io.IOException;
+
+/**
+ * The device microphone.
+ */
+public final class AudioRecordSource implements AudioSource {
+    private final int sampleRate;
+    private final int bufferSize;
+    private AudioRecord record;
+
+    public AudioRecordSource(int sampleRate) {
+        this.sampleRate = sampleRate;
+        // Estimate the buffer size we'll need for this device.
+        int size = AudioRecord.getMinBufferSize(
+                sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (size == AudioRecord.ERROR || size == AudioRecord.ERROR_BAD_VALUE) {
+            size = sampleRate * 2;
+        }
+        bufferSize = size;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int preferredReadLength() {
+        return bufferSize / 2;
+    }
+
+    @Override
+    public boolean isPaced() {
+        return true;
+    }
+
+    @Override
+    public void start() throws IOException {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        record = new AudioRecord(
+                MediaRecorder.AudioSource.DEFAULT,
+                sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT,
+                bufferSize);
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            record.release();
+            record = null;
+            throw new IOException("Audio Record can't initialize!");
+        }
+        record.startRecording();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        final int numberRead = record.read(buffer, offset, length);
+        if (numberRead < 0) {
+            throw new IOException("AudioRecord.read failed with " + numberRead);
+        }
+        return numberRead;
+    }
+
+    @Override
+    public void close() {
+        if (record != null) {
+            record.stop();
+            record.release();
+            record = null;
+        }
+    }
+}
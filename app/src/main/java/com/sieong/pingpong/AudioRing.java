@@ -0,0 +1,169 @@
+package com.sieong.pingpong;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Lock-free single-producer, single-consumer ring of 16-bit audio.
+ *
+ * <p>The capture thread appends samples and publishes them by advancing a monotonically increasing
+ * write sequence; it never waits for the reader. The recognition thread copies out the latest
+ * samples and then re-reads the sequence, seqlock-style: if the writer could have reached any of
+ * the copied slots in the meantime, the copy is retried. The ring keeps enough slack past the
+ * longest snapshot that a retry only happens if the reader is descheduled mid-copy.
+ */
+public final class AudioRing {
+    private final short[] buffer;
+    private final int mask;
+    private final int maxWriteLength;
+    private final int maxReadLength;
+    // Total samples ever written; the sample with sequence s lives at buffer[s & mask].
+    private volatile long writeSequence;
+    // End sequence of the last snapshot. Written between the copy and the re-check, which keeps the
+    // copy from being reordered past the re-check.
+    private volatile long readSequence;
+
+    /**
+     * @param maxReadLength  longest snapshot that will be taken.
+     * @param maxWriteLength longest run the writer stores before publishing; longer writes are
+     *                       split into runs of this length.
+     */
+    public AudioRing(int maxReadLength, int maxWriteLength) {
+        this(maxReadLength, maxWriteLength, 0);
+    }
+
+    /**
+     * @param historyLength how far behind the newest sample a window may end and still be
+     *                      {@link #read} back.
+     */
+    public AudioRing(int maxReadLength, int maxWriteLength, int historyLength) {
+        int capacity = Integer.highestOneBit(maxReadLength + historyLength + 2 * maxWriteLength - 1) << 1;
+        buffer = new short[capacity];
+        mask = capacity - 1;
+        this.maxWriteLength = maxWriteLength;
+        this.maxReadLength = maxReadLength;
+    }
+
+    /**
+     * Appends samples. Only ever called from the capture thread.
+     */
+    public void write(short[] samples, int offset, int length) {
+        long sequence = writeSequence;
+        while (length > 0) {
+            final int runLength = Math.min(length, maxWriteLength);
+            final int start = (int) (sequence & mask);
+            final int firstCopyLength = Math.min(runLength, buffer.length - start);
+            System.arraycopy(samples, offset, buffer, start, firstCopyLength);
+            System.arraycopy(samples, offset + firstCopyLength, buffer, 0, runLength - firstCopyLength);
+            sequence += runLength;
+            writeSequence = sequence;
+            offset += runLength;
+            length -= runLength;
+        }
+    }
+
+    /**
+     * Copies the latest out.length samples into out, oldest first, and returns the sequence just
+     * past the last of them. Before enough audio has been written the window starts with silence.
+     * Only ever called from the recognition thread.
+     */
+    public long snapshot(short[] out) {
+        return snapshot(out, 0, out.length);
+    }
+
+    public long snapshot(short[] out, int offset, int length) {
+        checkReadLength(length);
+        while (true) {
+            final long end = writeSequence;
+            final long start = end - length;
+            copy(start, out, offset, length);
+            readSequence = end;
+            // The writer may be filling up to maxWriteLength samples beyond what it has published.
+            if (writeSequence + maxWriteLength - start <= buffer.length) {
+                return end;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #snapshot(short[])}, but converts the samples straight into a float tensor buffer
+     * with {@link NativeDsp#ringToFloat}, scaled by scale, in the same pass as the copy.
+     */
+    public long snapshot(FloatBuffer out, int length, float scale) {
+        checkReadLength(length);
+        while (true) {
+            final long end = writeSequence;
+            final long start = end - length;
+            NativeDsp.ringToFloat(buffer, (int) (start & mask), length, out, scale);
+            readSequence = end;
+            if (writeSequence + maxWriteLength - start <= buffer.length) {
+                return end;
+            }
+        }
+    }
+
+    /**
+     * Copies the window of out.length samples ending at endSequence, which may lie in the past.
+     * Returns false, with out holding garbage, if that audio has not been written yet or has
+     * already been overwritten.
+     */
+    public boolean read(long endSequence, short[] out) {
+        return read(endSequence, out, 0, out.length);
+    }
+
+    /**
+     * Like {@link #read(long, short[])}, for the length samples ending at endSequence.
+     */
+    public boolean read(long endSequence, short[] out, int offset, int length) {
+        checkReadLength(length);
+        final long start = endSequence - length;
+        if (endSequence > writeSequence) {
+            return false;
+        }
+        copy(start, out, offset, length);
+        readSequence = endSequence;
+        return writeSequence + maxWriteLength - start <= buffer.length;
+    }
+
+    /**
+     * Like {@link #read(long, short[])}, but converts into a float tensor buffer as
+     * {@link #snapshot(FloatBuffer, int, float)} does.
+     */
+    public boolean read(long endSequence, FloatBuffer out, int length, float scale) {
+        checkReadLength(length);
+        final long start = endSequence - length;
+        if (endSequence > writeSequence) {
+            return false;
+        }
+        NativeDsp.ringToFloat(buffer, (int) (start & mask), length, out, scale);
+        readSequence = endSequence;
+        return writeSequence + maxWriteLength - start <= buffer.length;
+    }
+
+    /**
+     * Total number of samples written so far.
+     */
+    public long writeSequence() {
+        return writeSequence;
+    }
+
+    /**
+     * End sequence of the last snapshot taken.
+     */
+    public long readSequence() {
+        return readSequence;
+    }
+
+    private void checkReadLength(int length) {
+        if (length > maxReadLength) {
+            throw new IllegalArgumentException(
+                    "Snapshot of " + length + " samples is longer than the " + maxReadLength + " the ring was sized for");
+        }
+    }
+
+    private void copy(long start, short[] out, int offset, int length) {
+        final int from = (int) (start & mask);
+        final int firstCopyLength = Math.min(length, buffer.length - from);
+        System.arraycopy(buffer, from, out, offset, firstCopyLength);
+        System.arraycopy(buffer, 0, out, offset + firstCopyLength, length - firstCopyLength);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sieong.pingpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the recognition pipeline gets its 16-bit mono audio from: the microphone on a device, or a
+ * file or generator when the pipeline runs headless.
+ *
+ * <p>All methods are called on the capture thread.
+ */
+public interface AudioSource extends Closeable {
+    int sampleRate();
+
+    /**
+     * Samples to ask for per read; for the microphone this follows the device's buffer size.
+     */
+    int preferredReadLength();
+
+    /**
+     * Whether reads are tied to a clock, as the microphone is. Unpaced sources deliver audio as
+     * fast as it is asked for, and the pipeline then reads them in lockstep with recognition so
+     * no window is skipped.
+     */
+    boolean isPaced();
+
+    void start() throws IOException;
+
+    /**
+     * Blocks until audio is available and reads up to length samples, returning how many were
+     * read or -1 once the source is exhausted.
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Stops the source and releases whatever it holds.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,12 @@
+package com.sieong.pingpong;
+
+/**
+ * Implemented by an {@link InferenceEngine} that wants to see audio as it is captured rather than
+ * only when it loads a window, e.g. to turn it into features once per hop.
+ */
+public interface AudioTap {
+    /**
+     * Called on the capture thread with every block, in order, right after it reaches the ring.
+     */
+    void onAudio(short[] samples, int offset, int length);
+}
@@ -0,0 +1,118 @@
+package com.sieong.pingpong;
+
+/**
+ * Plain average of every frame within a fixed time window.
+ *
+ * <p>Frames are kept in a ring of timestamps plus a flat score matrix, with running per-label sums,
+ * so each frame costs O(labels) whatever the window length.
+ */
+public class BoxcarSmoother implements ScoreSmoother {
+    // Re-add the window from scratch after this many evictions per slot, so float error in the
+    // running sums cannot build up over a long session.
+    private static final int RESUM_INTERVAL_FACTOR = 64;
+
+    private final int labelsCount;
+    private final long windowDurationMs;
+    private long[] times;
+    private float[] scores;
+    private int head;
+    private int count;
+    private final double[] sums;
+    private int evictionsSinceResum;
+
+    /**
+     * @param expectedFrames how many frames the window usually holds; the ring grows past it if needed.
+     */
+    public BoxcarSmoother(int labelsCount, long windowDurationMs, int expectedFrames) {
+        this.labelsCount = labelsCount;
+        this.windowDurationMs = windowDurationMs;
+        final int capacity = Math.max(2, expectedFrames);
+        times = new long[capacity];
+        scores = new float[capacity * labelsCount];
+        sums = new double[labelsCount];
+    }
+
+    @Override
+    public void add(float[] frame, long timeMs) {
+        if (count == times.length) {
+            grow();
+        }
+        final int index = slot(count);
+        times[index] = timeMs;
+        System.arraycopy(frame, 0, scores, index * labelsCount, labelsCount);
+        for (int i = 0; i < labelsCount; ++i) {
+            sums[i] += frame[i];
+        }
+        ++count;
+
+        // Prune any earlier results that are too old for the averaging window.
+        final long timeLimit = timeMs - windowDurationMs;
+        while (times[head] < timeLimit) {
+            removeOldest();
+        }
+    }
+
+    @Override
+    public float score(int index) {
+        return count == 0 ? 0.0f : (float) (sums[index] / count);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long oldestTimeMs() {
+        return times[head];
+    }
+
+    @Override
+    public long newestTimeMs() {
+        return times[slot(count - 1)];
+    }
+
+    private int slot(int position) {
+        int index = head + position;
+        return index < times.length ? index : index - times.length;
+    }
+
+    private void removeOldest() {
+        final int offset = head * labelsCount;
+        for (int i = 0; i < labelsCount; ++i) {
+            sums[i] -= scores[offset + i];
+        }
+        head = slot(1);
+        --count;
+        if (++evictionsSinceResum >= times.length * RESUM_INTERVAL_FACTOR) {
+            resum();
+        }
+    }
+
+    private void resum() {
+        evictionsSinceResum = 0;
+        for (int i = 0; i < labelsCount; ++i) {
+            sums[i] = 0;
+        }
+        for (int position = 0; position < count; ++position) {
+            final int offset = slot(position) * labelsCount;
+            for (int i = 0; i < labelsCount; ++i) {
+                sums[i] += scores[offset + i];
+            }
+        }
+    }
+
+    private void grow() {
+        final int capacity = times.length * 2;
+        final long[] newTimes = new long[capacity];
+        final float[] newScores = new float[capacity * labelsCount];
+        for (int position = 0; position < count; ++position) {
+            final int index = slot(position);
+            newTimes[position] = times[index];
+            System.arraycopy(scores, index * labelsCount, newScores, position * labelsCount, labelsCount);
+        }
+        times = newTimes;
+        scores = newScores;
+        head = 0;
+    }
+}
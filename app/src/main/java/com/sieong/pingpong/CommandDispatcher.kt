@@ -0,0 +1,95 @@
+package com.sieong.pingpong
+
+import com.sieong.pingpong.RecognizeCommands.RecognitionResult
+import java.io.BufferedReader
+import java.io.IOException
+import java.io.Reader
+
+/**
+ * Turns smoothed recognition results into referee actions. Shared by [Referee] and the offline
+ * replay tools so both make the same decisions from the same scores.
+ *
+ * Which word does what comes from a bindings map, resolved once into a table indexed by label, so
+ * dispatching a result is an array lookup.
+ */
+class CommandDispatcher @JvmOverloads constructor(
+        labels: List<String>,
+        bindings: Map<String, Action> = DEFAULT_BINDINGS) {
+
+    companion object {
+        const val MINIMUM_TIME_BETWEEN_SCORES_MS: Long = 6000
+
+        /**
+         * The words the app has always used: "yes" for the host, "go" for the guest and "stop" to
+         * take the last point back.
+         */
+        @JvmField
+        val DEFAULT_BINDINGS: Map<String, Action> = mapOf(
+                "yes" to Action.HOST_POINT,
+                "go" to Action.GUEST_POINT,
+                "stop" to Action.UNDO)
+
+        /**
+         * Reads bindings, one `word = ACTION` per line. Blank lines and lines starting with `#`
+         * are ignored.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun readBindings(reader: Reader): Map<String, Action> {
+            val bindings = LinkedHashMap<String, Action>()
+            BufferedReader(reader).useLines { lines ->
+                lines.forEachIndexed { number, raw ->
+                    val line = raw.trim()
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        return@forEachIndexed
+                    }
+                    val parts = line.split("=")
+                    require(parts.size == 2) { "Line ${number + 1}: expected word = ACTION, got \"$line\"" }
+                    val word = parts[0].trim()
+                    val action = Action.values().firstOrNull { it.name == parts[1].trim() }
+                    require(word.isNotEmpty() && action != null) { "Line ${number + 1}: unknown binding \"$line\"" }
+                    bindings[word] = action
+                }
+            }
+            return bindings
+        }
+    }
+
+    private val actionTable = arrayOfNulls<Action>(labels.size)
+    private var lastScoreTimestamp = Long.MIN_VALUE
+
+    init {
+        for ((word, action) in bindings) {
+            val index = labels.indexOf(word)
+            require(index >= 0) { "\"$word\" is bound to $action but is not a label of the model" }
+            actionTable[index] = action
+        }
+    }
+
+    /**
+     * Returns the action for a new command, or null if the result is not a bound command or a
+     * score is coming too soon after the previous one.
+     */
+    fun dispatch(result: RecognitionResult, nowMs: Long): Action? {
+        if (!result.isNewCommand || result.labelIndex < 0) {
+            return null
+        }
+        return when (val action = actionTable[result.labelIndex]) {
+            Action.HOST_POINT, Action.GUEST_POINT -> scoreAction(action, nowMs)
+            else -> action
+        }
+    }
+
+    private fun scoreAction(action: Action, nowMs: Long): Action? {
+        if (isTooSoonForAnotherScore(nowMs)) {
+            return null
+        }
+        lastScoreTimestamp = nowMs
+        return action
+    }
+
+    private fun isTooSoonForAnotherScore(nowMs: Long) = lastScoreTimestamp != Long.MIN_VALUE &&
+            nowMs - lastScoreTimestamp < MINIMUM_TIME_BETWEEN_SCORES_MS
+
+    enum class Action { HOST_POINT, GUEST_POINT, UNDO, RESTART, ANNOUNCE_SCORE }
+}
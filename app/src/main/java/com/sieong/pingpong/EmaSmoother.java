@@ -0,0 +1,60 @@
+package com.sieong.pingpong;
+
+/**
+ * Exponential moving average of the frame scores. It needs no window storage, and a short time
+ * constant lets a command cross the detection threshold after a few agreeing frames.
+ *
+ * <p>The decay follows the real gap between frames, so an irregular frame rate does not change
+ * the effective time constant.
+ */
+public class EmaSmoother implements ScoreSmoother {
+    private final int labelsCount;
+    private final double timeConstantMs;
+    private final float[] averages;
+    private int count;
+    private long firstTimeMs;
+    private long lastTimeMs;
+
+    public EmaSmoother(int labelsCount, long timeConstantMs) {
+        this.labelsCount = labelsCount;
+        this.timeConstantMs = Math.max(1, timeConstantMs);
+        averages = new float[labelsCount];
+    }
+
+    @Override
+    public void add(float[] frame, long timeMs) {
+        if (count == 0) {
+            System.arraycopy(frame, 0, averages, 0, labelsCount);
+            firstTimeMs = timeMs;
+        } else {
+            final float alpha = (float) (1.0 - Math.exp(-(timeMs - lastTimeMs) / timeConstantMs));
+            for (int i = 0; i < labelsCount; ++i) {
+                averages[i] += alpha * (frame[i] - averages[i]);
+            }
+        }
+        lastTimeMs = timeMs;
+        if (count < Integer.MAX_VALUE) {
+            ++count;
+        }
+    }
+
+    @Override
+    public float score(int index) {
+        return averages[index];
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long oldestTimeMs() {
+        return firstTimeMs;
+    }
+
+    @Override
+    public long newestTimeMs() {
+        return lastTimeMs;
+    }
+}
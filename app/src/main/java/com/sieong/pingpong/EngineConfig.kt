@@ -0,0 +1,53 @@
+package com.sieong.pingpong
+
+/**
+ * How the interpreter is set up: how many threads it runs on and which delegate, if any, executes
+ * the model.
+ */
+data class EngineConfig(val threads: Int, val delegate: Delegate) {
+
+    enum class Delegate {
+        CPU, XNNPACK, NNAPI
+    }
+
+    /**
+     * Compact form for persisting, e.g. "XNNPACK:2"; read back with [decode].
+     */
+    fun encode(): String = "$delegate:$threads"
+
+    override fun toString(): String = encode()
+
+    companion object {
+        @JvmField
+        val DEFAULT = EngineConfig(1, Delegate.CPU)
+
+        /**
+         * The configurations worth timing on a device: 1, 2 and 4 threads on plain CPU and on
+         * XNNPACK, plus NNAPI where the platform has a usable implementation.
+         */
+        @JvmStatic
+        fun candidates(nnapiAvailable: Boolean): List<EngineConfig> {
+            val candidates = mutableListOf<EngineConfig>()
+            for (delegate in listOf(Delegate.CPU, Delegate.XNNPACK)) {
+                for (threads in intArrayOf(1, 2, 4)) {
+                    candidates.add(EngineConfig(threads, delegate))
+                }
+            }
+            if (nnapiAvailable) {
+                candidates.add(EngineConfig(1, Delegate.NNAPI))
+            }
+            return candidates
+        }
+
+        @JvmStatic
+        fun decode(encoded: String?): EngineConfig? {
+            val parts = encoded?.split(':') ?: return null
+            if (parts.size != 2) {
+                return null
+            }
+            val delegate = Delegate.values().firstOrNull { it.name == parts[0] } ?: return null
+            val threads = parts[1].toIntOrNull()?.takeIf { it > 0 } ?: return null
+            return EngineConfig(threads, delegate)
+        }
+    }
+}
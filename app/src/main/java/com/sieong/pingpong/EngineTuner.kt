@@ -0,0 +1,111 @@
+package com.sieong.pingpong
+
+/**
+ * Picks the fastest [EngineConfig] on this device by timing each candidate on synthetic audio
+ * arriving a hop at a time, as it does live, and remembers the winner in a [TuningStore] so later
+ * starts go straight to it.
+ * The stored choice is only used under the same key, so a new model or OS build tunes afresh.
+ */
+class EngineTuner @JvmOverloads constructor(
+        private val factory: InferenceEngine.Factory,
+        private val store: TuningStore,
+        private val key: String,
+        private val windowLength: Int,
+        private val sampleRate: Int,
+        private val labelCount: Int,
+        private val clock: () -> Long = { System.nanoTime() }) {
+
+    companion object {
+        private const val WARM_UP_RUNS = 2
+        private const val TIMED_RUNS = 5
+    }
+
+    private val hopLength = (sampleRate * RecognitionPipeline.DEFAULT_HOP_MS / 1000).toInt()
+
+    /**
+     * The engine to use, already created in [config]. [timingsNanos] holds the median inference
+     * time of every candidate that ran, and is empty when the stored choice was used.
+     */
+    class Result(val engine: InferenceEngine, val config: EngineConfig, val timingsNanos: Map<EngineConfig, Long>)
+
+    fun select(candidates: List<EngineConfig>): Result {
+        EngineConfig.decode(store.get(key))?.let { stored ->
+            createOrNull(stored)?.let { return Result(it, stored, emptyMap()) }
+        }
+        val audio = benchmarkAudio()
+        val scores = FloatArray(labelCount)
+        val timings = LinkedHashMap<EngineConfig, Long>()
+        var best: InferenceEngine? = null
+        var bestConfig = EngineConfig.DEFAULT
+        var bestNanos = Long.MAX_VALUE
+        for (config in candidates) {
+            val engine = createOrNull(config) ?: continue
+            val nanos = try {
+                time(engine, audio, scores)
+            } catch (e: RuntimeException) {
+                engine.close()
+                continue
+            }
+            timings[config] = nanos
+            if (nanos < bestNanos) {
+                best?.close()
+                best = engine
+                bestConfig = config
+                bestNanos = nanos
+            } else {
+                engine.close()
+            }
+        }
+        if (best == null) {
+            // Nothing could be timed; fall back to the plain interpreter without remembering it.
+            return Result(factory.create(EngineConfig.DEFAULT), EngineConfig.DEFAULT, timings)
+        }
+        store.put(key, bestConfig.encode())
+        return Result(best, bestConfig, timings)
+    }
+
+    private fun createOrNull(config: EngineConfig): InferenceEngine? {
+        return try {
+            factory.create(config)
+        } catch (e: RuntimeException) {
+            null
+        }
+    }
+
+    /**
+     * Every run gets a new hop of audio, so a streaming engine pays for the hop it would really
+     * see rather than for nothing at all.
+     */
+    private fun time(engine: InferenceEngine, audio: ShortArray, scores: FloatArray): Long {
+        val ring = AudioRing(windowLength, windowLength)
+        val tap = engine as? AudioTap
+        ring.write(audio, 0, windowLength)
+        tap?.onAudio(audio, 0, windowLength)
+        var written = windowLength
+        engine.load(ring)
+        val runs = LongArray(TIMED_RUNS)
+        for (i in 0 until WARM_UP_RUNS + TIMED_RUNS) {
+            if (i > 0) {
+                ring.write(audio, written, hopLength)
+                tap?.onAudio(audio, written, hopLength)
+                written += hopLength
+                engine.load(ring)
+            }
+            val start = clock()
+            engine.run(scores)
+            if (i >= WARM_UP_RUNS) {
+                runs[i - WARM_UP_RUNS] = clock() - start
+            }
+        }
+        runs.sort()
+        return runs[TIMED_RUNS / 2]
+    }
+
+    private fun benchmarkAudio(): ShortArray {
+        val samples = ShortArray(windowLength + (WARM_UP_RUNS + TIMED_RUNS) * hopLength)
+        SyntheticAudioSource(sampleRate, samples.size * 1000L / sampleRate + 1, 0f, 1).use {
+            it.read(samples, 0, samples.size)
+        }
+        return samples
+    }
+}
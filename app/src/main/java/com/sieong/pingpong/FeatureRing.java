@@ -0,0 +1,74 @@
+package com.sieong.pingpong;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Round-robin store of feature frames, the counterpart of {@link AudioRing} for models that take
+ * a spectrogram. One thread appends frames; another copies the newest ones straight into a
+ * model's input without either waiting for the other.
+ */
+public final class FeatureRing {
+    private final int featureCount;
+    private final int maxReadFrames;
+    private final int mask;
+    private final float[] frames;
+    private volatile long writeSequence;
+
+    /**
+     * @param maxReadFrames most frames a snapshot will take.
+     */
+    public FeatureRing(int featureCount, int maxReadFrames) {
+        final int capacity = Integer.highestOneBit(maxReadFrames * 2 - 1) << 1;
+        this.featureCount = featureCount;
+        this.maxReadFrames = maxReadFrames;
+        mask = capacity - 1;
+        frames = new float[capacity * featureCount];
+    }
+
+    public int featureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Appends one frame of featureCount values. Single writer only.
+     */
+    public void write(float[] frame) {
+        final long sequence = writeSequence;
+        System.arraycopy(frame, 0, frames, (int) (sequence & mask) * featureCount, featureCount);
+        writeSequence = sequence + 1;
+    }
+
+    /**
+     * Frames written so far.
+     */
+    public long writeSequence() {
+        return writeSequence;
+    }
+
+    /**
+     * Copies the newest count frames, oldest first, to out from index 0 and returns the sequence
+     * just past the newest. Frames from before the first write read as zeros. The buffer's
+     * position is left untouched.
+     */
+    public long snapshot(FloatBuffer out, int count) {
+        if (count > maxReadFrames) {
+            throw new IllegalArgumentException(
+                    "Snapshot of " + count + " frames is longer than the " + maxReadFrames + " the ring was sized for");
+        }
+        final int position = out.position();
+        while (true) {
+            final long end = writeSequence;
+            final long start = end - count;
+            out.position(0);
+            final int first = (int) (start & mask);
+            final int head = Math.min(count, mask + 1 - first);
+            out.put(frames, first * featureCount, head * featureCount);
+            out.put(frames, 0, (count - head) * featureCount);
+            // The writer may be filling the slot after the newest frame.
+            if (writeSequence + 1 - start <= mask + 1) {
+                out.position(position);
+                return end;
+            }
+        }
+    }
+}
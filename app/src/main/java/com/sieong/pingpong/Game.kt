@@ -1,77 +1,239 @@
 package com.sieong.pingpong
 
-import kotlin.math.abs
+import com.sieong.pingpong.GameJournal.Event
+import com.sieong.pingpong.Score.Companion.CHANGES_SHIFT
+import com.sieong.pingpong.Score.Companion.DEPTH_SHIFT
+import com.sieong.pingpong.Score.Companion.GAME_MASK
+import com.sieong.pingpong.Score.Companion.GAMES_GUEST_SHIFT
+import com.sieong.pingpong.Score.Companion.GAMES_HOST_SHIFT
+import com.sieong.pingpong.Score.Companion.GAMES_MASK
+import com.sieong.pingpong.Score.Companion.GAME_SHIFT
+import com.sieong.pingpong.Score.Companion.GUEST_SHIFT
+import com.sieong.pingpong.Score.Companion.HISTORY_SHIFT
+import com.sieong.pingpong.Score.Companion.HISTORY_SIZE
+import com.sieong.pingpong.Score.Companion.HOST_SHIFT
+import com.sieong.pingpong.Score.Companion.MAX_CHANGES
+import com.sieong.pingpong.Score.Companion.MAX_SCORE
+import com.sieong.pingpong.Score.Companion.field
+import java.util.concurrent.atomic.AtomicLong
 
-class Game {
+/**
+ * The score of a match under its [rules], a single game by default, safe to change from any
+ * thread without a lock: the whole state is a single long, see [Score], replaced by
+ * compare-and-set. The buttons and the recognizer can score at the same time and every reader
+ * still sees a consistent [score].
+ *
+ * Every change also goes to the [journal], if there is one, in the slot its compare-and-set won,
+ * and a match opened on an existing journal replays it and carries on where it left off. The last
+ * few points of the current game can be taken back from the state alone; older ones, and points
+ * of games already won, are worked out again from the journal, so without one only those few can
+ * be. A match takes at most 65535 changes before it must be reset.
+ */
+class Game @JvmOverloads constructor(
+        private val journal: GameJournal? = null,
+        val rules: RuleSet = RuleSet.ELEVEN_POINT_SINGLES
+) {
     companion object {
-        private const val TOTAL_POINTS = 11
+        private const val HISTORY_MASK = (1 shl HISTORY_SIZE) - 1
+
+        private fun pack(host: Int, guest: Int, changes: Int, match: Int, gamesHost: Int, gamesGuest: Int,
+                         depth: Int, history: Int): Long =
+                (host.toLong() shl HOST_SHIFT) or
+                        (guest.toLong() shl GUEST_SHIFT) or
+                        (changes.toLong() shl CHANGES_SHIFT) or
+                        (match.toLong() shl GAME_SHIFT) or
+                        (gamesHost.toLong() shl GAMES_HOST_SHIFT) or
+                        (gamesGuest.toLong() shl GAMES_GUEST_SHIFT) or
+                        (depth.toLong() shl DEPTH_SHIFT) or
+                        (history.toLong() shl HISTORY_SHIFT)
+
+        private fun changes(packed: Long) = field(packed, CHANGES_SHIFT, MAX_CHANGES)
+
+        private fun matchNumber(packed: Long) = field(packed, GAME_SHIFT, GAME_MASK)
+    }
+
+    private val state = AtomicLong()
+
+    init {
+        if (journal != null) {
+            state.set(replay(journal))
+        }
     }
 
-    var scoreHost = 0
-    var scoreGuest = 0
-    var lastScoredPlayer: PlayerRole? = null
+    /**
+     * The match as it stands now.
+     */
+    val score: Score
+        get() = Score(state.get(), rules)
+
+    val scoreHost: Int
+        get() = score.scoreHost
+
+    val scoreGuest: Int
+        get() = score.scoreGuest
+
+    val lastScoredPlayer: PlayerRole?
+        get() = score.lastScoredPlayer
 
     /**
      * Tell who should serve next. For convention, host should always serve at the beginning of a game.
      */
-    fun whoShouldServeNext() = if (!isInDeuce()) {
-        if (((scoreHost + scoreGuest) / 2) % 2 == 0) PlayerRole.HOST else PlayerRole.GUEST
-    } else {
-        if ((scoreHost + scoreGuest) % 2 == 0) PlayerRole.HOST else PlayerRole.GUEST
-    }
+    fun whoShouldServeNext() = score.whoShouldServeNext()
 
-    fun hostScores() {
-        if (isGameOver()) return
-        scoreHost++
-        lastScoredPlayer = PlayerRole.HOST
-    }
+    fun isGameOver() = score.isGameOver()
 
-    fun guestScores() {
-        if (isGameOver()) return
-        scoreGuest++
-        lastScoredPlayer = PlayerRole.GUEST
-    }
+    fun isMatchOver() = score.isMatchOver()
+
+    /**
+     * Each change returns the score it led to, which may be newer than what [score] would give
+     * by the time the caller looks. A point after a game is won starts the next one.
+     */
+    fun hostScores(): Score = update(Event.HOST_POINT)
 
-    fun cancelLastPoint() {
-        if (lastScoredPlayer == PlayerRole.HOST) {
-            scoreHost--
-        } else if (lastScoredPlayer == PlayerRole.GUEST) {
-            scoreGuest--
+    fun guestScores(): Score = update(Event.GUEST_POINT)
+
+    /**
+     * Takes back the most recent point still standing; does nothing once none are left.
+     */
+    fun cancelLastPoint(): Score = update(Event.UNDO)
+
+    /**
+     * Starts a new match.
+     */
+    fun reset(): Score = update(Event.RESET)
+
+    private fun update(event: Event): Score {
+        while (true) {
+            val current = state.get()
+            val next = next(current, event)
+            if (next == current) {
+                return Score(current, rules)
+            }
+            if (state.compareAndSet(current, next)) {
+                journal?.write(matchNumber(next), changes(next) - 1, event, System.currentTimeMillis())
+                return Score(next, rules)
+            }
         }
     }
 
-    fun isGameOver(): Boolean {
-        //TODO remove duplicated code here and in isInDuece
-        val isPointsExceedTotalPoint = (scoreHost >= TOTAL_POINTS) || (scoreGuest >= TOTAL_POINTS)
-        return isPointsExceedTotalPoint && !isInDeuce()
+    private fun next(current: Long, event: Event): Long {
+        val changes = changes(current)
+        val match = matchNumber(current)
+        if (event == Event.RESET) {
+            return pack(0, 0, 1, (match + 1) and GAME_MASK, 0, 0, 0, 0)
+        }
+        if (changes == MAX_CHANGES) {
+            return current
+        }
+        val scored = if (event == Event.UNDO) undo(current, match, changes) else point(current, event)
+        if (scored == current) {
+            return current
+        }
+        return (scored and (MAX_CHANGES.toLong() shl CHANGES_SHIFT).inv()) or ((changes + 1).toLong() shl CHANGES_SHIFT)
     }
 
-    private fun isInDeuce(): Boolean {
-        val isPointsExceedTotalPoint = (scoreHost >= TOTAL_POINTS) || (scoreGuest >= TOTAL_POINTS)
-        return isPointsExceedTotalPoint && abs(scoreGuest - scoreHost) < 2
+    private fun point(current: Long, event: Event): Long {
+        var host = field(current, HOST_SHIFT, MAX_SCORE)
+        var guest = field(current, GUEST_SHIFT, MAX_SCORE)
+        var gamesHost = field(current, GAMES_HOST_SHIFT, GAMES_MASK)
+        var gamesGuest = field(current, GAMES_GUEST_SHIFT, GAMES_MASK)
+        val state = rules.stateOf(host, guest, gamesHost, gamesGuest)
+        if (rules.isMatchOver(state) || host == MAX_SCORE || guest == MAX_SCORE) {
+            return current
+        }
+        if (rules.isGameOver(state)) {
+            host = 0
+            guest = 0
+        }
+        val scorer: Int
+        val next: Int
+        if (event == Event.HOST_POINT) {
+            scorer = PlayerRole.HOST.ordinal
+            next = rules.nextOnHostPoint(state)
+            host++
+        } else {
+            scorer = PlayerRole.GUEST.ordinal
+            next = rules.nextOnGuestPoint(state)
+            guest++
+        }
+        if (rules.isGameOver(next)) {
+            if (host > guest) gamesHost++ else gamesGuest++
+        }
+        val depth = minOf(field(current, DEPTH_SHIFT, 0xF) + 1, HISTORY_SIZE)
+        val history = ((field(current, HISTORY_SHIFT, HISTORY_MASK) shl 1) or scorer) and HISTORY_MASK
+        return pack(host, guest, changes(current), matchNumber(current), gamesHost, gamesGuest, depth, history)
     }
 
-    fun reset() {
-        scoreGuest = 0
-        scoreHost = 0
-        lastScoredPlayer = null
+    private fun undo(current: Long, match: Int, changes: Int): Long {
+        var host = field(current, HOST_SHIFT, MAX_SCORE)
+        var guest = field(current, GUEST_SHIFT, MAX_SCORE)
+        var gamesHost = field(current, GAMES_HOST_SHIFT, GAMES_MASK)
+        var gamesGuest = field(current, GAMES_GUEST_SHIFT, GAMES_MASK)
+        var depth = field(current, DEPTH_SHIFT, 0xF)
+        if (host + guest == 0) {
+            return current
+        }
+        // The first point of a game follows the final score of the last one, which only the
+        // journal still knows.
+        if (depth == 0 || (host + guest == 1 && gamesHost + gamesGuest > 0)) {
+            val points = standingPoints(match, changes)?.takeIf { it.isNotEmpty() } ?: return current
+            var rebuilt = pack(0, 0, changes, match, 0, 0, 0, 0)
+            for (i in 0 until points.size - 1) {
+                rebuilt = point(rebuilt, if (points[i].toInt() == PlayerRole.HOST.ordinal) Event.HOST_POINT else Event.GUEST_POINT)
+            }
+            return rebuilt
+        }
+        val state = rules.stateOf(host, guest, gamesHost, gamesGuest)
+        var history = field(current, HISTORY_SHIFT, HISTORY_MASK)
+        val scorer = history and 1
+        history = history ushr 1
+        depth--
+        if (rules.isGameOver(state)) {
+            if (host > guest) gamesHost-- else gamesGuest--
+        }
+        if (scorer == PlayerRole.HOST.ordinal) host-- else guest--
+        return pack(host, guest, changes, match, gamesHost, gamesGuest, depth, history)
     }
 
-    override fun toString(): String {
-        return if (scoreGuest == 10 && scoreHost == 10) {
-            "Deuce."
-
-        } else if (isInDeuce()) {
-            if (scoreHost == scoreGuest) {
-                "Even."
-            } else {
-                if (scoreHost > scoreGuest) "Host's advantage." else "Guest's advantage."
+    /**
+     * Who won each point standing after the first [changes] records of [match], oldest first, or
+     * null without a journal to ask. A record may still be on its way from the thread that won
+     * its slot, so this waits for it.
+     */
+    private fun standingPoints(match: Int, changes: Int): ByteArray? {
+        val journal = journal ?: return null
+        val points = ByteArray(changes)
+        var count = 0
+        for (i in 0 until changes) {
+            var event = journal.eventAt(match, i)
+            while (event == null) {
+                if (journal.isBroken) {
+                    return null
+                }
+                Thread.yield()
+                event = journal.eventAt(match, i)
             }
+            when (event) {
+                Event.HOST_POINT -> points[count++] = PlayerRole.HOST.ordinal.toByte()
+                Event.GUEST_POINT -> points[count++] = PlayerRole.GUEST.ordinal.toByte()
+                Event.UNDO -> if (count > 0) count--
+                Event.RESET -> count = 0
+            }
+        }
+        return points.copyOf(count)
+    }
 
-        } else {
-            "Host $scoreHost to guest $scoreGuest."
+    private fun replay(journal: GameJournal): Long {
+        var packed = pack(0, 0, 0, journal.epoch and GAME_MASK, 0, 0, 0, 0)
+        var index = 0
+        journal.replay { event, _ ->
+            val next = if (event == Event.RESET) pack(0, 0, 0, matchNumber(packed), 0, 0, 0, 0) else next(packed, event)
+            packed = (next and (MAX_CHANGES.toLong() shl CHANGES_SHIFT).inv()) or ((++index).toLong() shl CHANGES_SHIFT)
         }
+        return packed
     }
 
+    override fun toString() = score.toString()
+
     enum class PlayerRole { HOST, GUEST }
-}
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+package com.sieong.pingpong
+
+import com.sieong.pingpong.Score.Companion.GAME_MASK
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Append-only log of everything that changed the score, in a memory-mapped file of fixed-width
+ * records, so the game can be rebuilt after the process dies.
+ *
+ * Writing a record is a store into the mapping, with no system call; the kernel owns the page from
+ * then on, so the record survives the app crashing or being killed. Only surviving power loss
+ * needs [sync]. Records go to the slot the writer names, so threads that have already agreed on
+ * the order of their events can write them without a lock. Each record carries a check word
+ * salted with the game's epoch, so a new game truncates the journal just by writing its first
+ * record, and stale records past the new end can never be mistaken for live ones.
+ *
+ * Callers name a game by its match number, which [Game] keeps in only [GAME_MASK] bits of its
+ * state and which wraps. The epoch in the header is a full 32-bit count, and a match number stands
+ * for the epoch nearest the latest one started with those low bits, so the game of the same number
+ * thousands of resets ago never salts a check word the same way.
+ */
+class GameJournal private constructor(private val file: RandomAccessFile) : Closeable {
+
+    enum class Event { HOST_POINT, GUEST_POINT, UNDO, RESET }
+
+    companion object {
+        private const val MAGIC = 0x50504a31 // "PPJ1"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 16
+        private const val EPOCH_OFFSET = 12
+        const val RECORD_SIZE = 16
+        private const val INITIAL_CAPACITY = 1024
+        private val EVENTS = Event.values()
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun open(path: File): GameJournal {
+            val file = RandomAccessFile(path, "rw")
+            try {
+                return GameJournal(file)
+            } catch (e: IOException) {
+                file.close()
+                throw e
+            }
+        }
+
+        private fun check(epoch: Int, type: Int, timeMs: Long): Int =
+                MAGIC xor (epoch * -0x61c88647) xor (type * 0x3243f6a9) xor timeMs.toInt() xor (timeMs ushr 32).toInt()
+    }
+
+    @Volatile
+    private lateinit var buffer: MappedByteBuffer
+    @Volatile
+    private var capacity = 0
+
+    /**
+     * Epoch of the game in the journal when it was opened.
+     */
+    val epoch: Int
+
+    // Epoch of the last game started, which match numbers are resolved against.
+    @Volatile
+    private var latestEpoch: Int
+
+    /**
+     * Records of that game, plus any appended since.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Set once the file could not grow; nothing is recorded from then on.
+     */
+    @Volatile
+    var isBroken = false
+        private set
+
+    init {
+        val fresh = file.length() < HEADER_SIZE
+        map(maxOf(INITIAL_CAPACITY, ((file.length() - HEADER_SIZE) / RECORD_SIZE).toInt()))
+        if (fresh) {
+            buffer.putInt(0, MAGIC)
+            buffer.putInt(4, VERSION)
+            buffer.putInt(8, RECORD_SIZE)
+            buffer.putInt(EPOCH_OFFSET, 0)
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+            throw IOException("Not a game journal")
+        }
+        epoch = buffer.getInt(EPOCH_OFFSET)
+        latestEpoch = epoch
+        // The journal ends at the first record that is not from this epoch, or was torn.
+        while (size < capacity && eventAt(epoch, size) != null) {
+            ++size
+        }
+    }
+
+    private fun map(records: Int) {
+        val mapped = file.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + records.toLong() * RECORD_SIZE)
+        mapped.order(ByteOrder.LITTLE_ENDIAN)
+        buffer = mapped
+        capacity = records
+    }
+
+    /**
+     * The full epoch of the game numbered [match]: the nearest to the latest one started, as a
+     * writer may still be finishing the game before it.
+     */
+    private fun epochOf(match: Int): Int {
+        val latest = latestEpoch
+        var delta = (match - latest) and GAME_MASK
+        if (delta > GAME_MASK / 2) {
+            delta -= GAME_MASK + 1
+        }
+        return latest + delta
+    }
+
+    /**
+     * The event in slot [index] of game [match], or null if that slot holds no valid record of it
+     * (yet).
+     */
+    fun eventAt(match: Int, index: Int): Event? {
+        val epoch = epochOf(match)
+        val mapped = buffer
+        val offset = HEADER_SIZE + index * RECORD_SIZE
+        if (offset + RECORD_SIZE > mapped.capacity()) {
+            return null
+        }
+        val timeMs = mapped.getLong(offset)
+        val type = mapped.getInt(offset + 8)
+        if (type !in EVENTS.indices || mapped.getInt(offset + 12) != check(epoch, type, timeMs)) {
+            return null
+        }
+        return EVENTS[type]
+    }
+
+    /**
+     * Calls [visitor] with every event of the current epoch, oldest first.
+     */
+    fun replay(visitor: (Event, Long) -> Unit) {
+        for (i in 0 until size) {
+            visitor(eventAt(epoch, i)!!, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE))
+        }
+    }
+
+    /**
+     * Appends to the game the journal was opened on. Single writer only.
+     */
+    fun append(event: Event, timeMs: Long) {
+        write(epoch, size++, event, timeMs)
+    }
+
+    /**
+     * Records [event] in slot [index] of game [match]. Writing slot 0 starts that game and ends
+     * the previous one. Safe to call from several threads as long as they write different slots.
+     */
+    fun write(match: Int, index: Int, event: Event, timeMs: Long) {
+        if (index >= capacity && !grow(index + 1)) {
+            return
+        }
+        val epoch = epochOf(match)
+        val mapped = buffer
+        val offset = HEADER_SIZE + index * RECORD_SIZE
+        val type = event.ordinal
+        mapped.putLong(offset, timeMs)
+        mapped.putInt(offset + 8, type)
+        // Written last: a record torn by a crash fails its check and simply is not there.
+        mapped.putInt(offset + 12, check(epoch, type, timeMs))
+        if (index == 0) {
+            start(epoch)
+        }
+    }
+
+    @Synchronized
+    private fun start(epoch: Int) {
+        if (epoch - latestEpoch > 0) {
+            latestEpoch = epoch
+            buffer.putInt(EPOCH_OFFSET, epoch)
+        }
+    }
+
+    @Synchronized
+    private fun grow(records: Int): Boolean {
+        if (isBroken) {
+            return false
+        }
+        if (records > capacity) {
+            try {
+                // The old mapping stays valid, and shares its pages with the new one, for writers
+                // still holding it.
+                map(maxOf(records, capacity * 2))
+            } catch (e: IOException) {
+                isBroken = true
+                return false
+            }
+        }
+        return true
+    }
+
+
+    /**
+     * Forces the records to storage, for durability across power loss as well.
+     */
+    fun sync() {
+        buffer.force()
+    }
+
+    override fun close() {
+        sync()
+        file.close()
+    }
+}
@@ -0,0 +1,170 @@
+package com.sieong.pingpong;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the recognition thread by the audio itself: it sleeps until a hop of new samples has been
+ * written to the {@link AudioRing}, so no window is evaluated twice and none waits on a fixed timer.
+ *
+ * <p>The capture thread calls {@link #onSamplesWritten()} after each write. That only reads two
+ * volatiles and, at most once per hop, unparks the recognition thread, so capture never blocks.
+ * Detection latency is then bounded by one hop plus one inference.
+ */
+public final class HopScheduler {
+    // Weight of the newest gap in the running average behind effectiveHopRateHz().
+    private static final float RATE_SMOOTHING = 0.1f;
+
+    private final AudioRing ring;
+    private final int sampleRate;
+    private volatile int hopLength;
+    private volatile Thread waiter;
+    private volatile Thread producer;
+    // End of the next window the recognition thread will take; see awaitConsumer().
+    private volatile long nextWindowEnd;
+    private volatile long wakeSequence = Long.MAX_VALUE;
+    private long lastWindowEnd = Long.MIN_VALUE;
+    private volatile float averageGap;
+    private volatile long windows;
+    private volatile long skippedHops;
+
+    public HopScheduler(AudioRing ring, int sampleRate, long hopMs) {
+        this.ring = ring;
+        this.sampleRate = sampleRate;
+        setHopMs(hopMs);
+    }
+
+    public void setHopMs(long hopMs) {
+        hopLength = (int) Math.max(1, sampleRate * hopMs / 1000);
+    }
+
+    public int hopLength() {
+        return hopLength;
+    }
+
+    /**
+     * Called by the capture thread after every write to the ring.
+     */
+    public void onSamplesWritten() {
+        final Thread thread = waiter;
+        if (thread != null && ring.writeSequence() >= wakeSequence) {
+            wakeSequence = Long.MAX_VALUE;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Blocks the recognition thread until at least one hop of audio has arrived since the last
+     * window it took. Returns false on timeout or interrupt, so the caller can check whether it
+     * should keep running.
+     */
+    public boolean awaitNextWindow(long timeoutMs) {
+        final long target = lastWindowEnd == Long.MIN_VALUE
+                ? ring.writeSequence() + hopLength
+                : lastWindowEnd + hopLength;
+        final long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        waiter = Thread.currentThread();
+        setNextWindowEnd(target);
+        try {
+            while (ring.writeSequence() < target) {
+                wakeSequence = target;
+                // Re-check after publishing the target, or a write in between could go unnoticed.
+                if (ring.writeSequence() >= target) {
+                    break;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.interrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            waiter = null;
+            wakeSequence = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Records that a window ending at the given sequence was taken for inference.
+     */
+    public void onWindowTaken(long endSequence) {
+        if (lastWindowEnd != Long.MIN_VALUE) {
+            final long gap = endSequence - lastWindowEnd;
+            final int hop = hopLength;
+            if (gap > hop) {
+                skippedHops += gap / hop - 1;
+            }
+            averageGap = averageGap == 0 ? gap : averageGap + RATE_SMOOTHING * (gap - averageGap);
+        }
+        lastWindowEnd = endSequence;
+        ++windows;
+        setNextWindowEnd(endSequence + hopLength);
+    }
+
+    /**
+     * For capture from sources that are not real time: blocks the capture thread until the
+     * recognition thread has taken the window that the audio written so far completes, so that
+     * reading in steps of at most {@link #samplesUntilNextWindow()} evaluates every hop. Returns
+     * false on timeout or interrupt.
+     */
+    public boolean awaitConsumer(long timeoutMs) {
+        final long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        producer = Thread.currentThread();
+        try {
+            while (ring.writeSequence() >= nextWindowEnd) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.interrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            producer = null;
+        }
+    }
+
+    /**
+     * Samples still to be written before the recognition thread's next window is complete.
+     */
+    public long samplesUntilNextWindow() {
+        return nextWindowEnd - ring.writeSequence();
+    }
+
+    private void setNextWindowEnd(long sequence) {
+        nextWindowEnd = sequence;
+        // Read after the write above; awaitConsumer() publishes itself before its check, so one of
+        // the two always sees the other.
+        final Thread thread = producer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * End of the last window taken, or Long.MIN_VALUE before the first. Recognition thread only.
+     */
+    public long lastWindowEnd() {
+        return lastWindowEnd;
+    }
+
+    /**
+     * How many windows per second of audio are actually evaluated. Lower than 1 / hop when
+     * inference cannot keep up.
+     */
+    public float effectiveHopRateHz() {
+        final float gap = averageGap;
+        return gap == 0 ? 0 : sampleRate / gap;
+    }
+
+    public long windows() {
+        return windows;
+    }
+
+    /**
+     * Hops that passed without a window of their own because inference was still busy.
+     */
+    public long skippedHops() {
+        return skippedHops;
+    }
+}
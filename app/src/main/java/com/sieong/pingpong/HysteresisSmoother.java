@@ -0,0 +1,76 @@
+package com.sieong.pingpong;
+
+/**
+ * Dual-threshold gate on top of another smoother. A label only reports a score once it rises to
+ * the high threshold, and keeps reporting until it falls below the low one; otherwise it reads as
+ * zero. It triggers once on rising to the high threshold and is only re-armed by falling below the
+ * low one, however long that takes, so a fast inner smoother can trigger early without chattering
+ * around a single threshold.
+ */
+public class HysteresisSmoother implements ScoreSmoother {
+    private final ScoreSmoother inner;
+    private final float highThreshold;
+    private final float lowThreshold;
+    private final boolean[] active;
+    private final boolean[] triggered;
+
+    public HysteresisSmoother(ScoreSmoother inner, int labelsCount, float highThreshold, float lowThreshold) {
+        if (lowThreshold > highThreshold) {
+            throw new IllegalArgumentException(
+                    "Low threshold " + lowThreshold + " is above high threshold " + highThreshold);
+        }
+        this.inner = inner;
+        this.highThreshold = highThreshold;
+        this.lowThreshold = lowThreshold;
+        active = new boolean[labelsCount];
+        triggered = new boolean[labelsCount];
+    }
+
+    @Override
+    public void add(float[] frame, long timeMs) {
+        inner.add(frame, timeMs);
+        for (int i = 0; i < active.length; ++i) {
+            final float score = inner.score(i);
+            if (active[i]) {
+                active[i] = score >= lowThreshold;
+                // A trigger nobody took in time lapses with the label.
+                triggered[i] &= active[i];
+            } else {
+                active[i] = score >= highThreshold;
+                triggered[i] = active[i];
+            }
+        }
+    }
+
+    @Override
+    public float score(int index) {
+        return active[index] ? inner.score(index) : 0.0f;
+    }
+
+    @Override
+    public boolean decidesTriggers() {
+        return true;
+    }
+
+    @Override
+    public boolean takeTrigger(int index) {
+        final boolean taken = triggered[index];
+        triggered[index] = false;
+        return taken;
+    }
+
+    @Override
+    public int size() {
+        return inner.size();
+    }
+
+    @Override
+    public long oldestTimeMs() {
+        return inner.oldestTimeMs();
+    }
+
+    @Override
+    public long newestTimeMs() {
+        return inner.newestTimeMs();
+    }
+}
@@ -0,0 +1,60 @@
+package com.sieong.pingpong;
+
+import java.io.Closeable;
+
+/**
+ * Runs the keyword model over the latest window of audio. Each engine owns its input tensors, so
+ * it decides how samples are laid out for the model, and how much of the window it actually needs
+ * to read: a streaming model only takes the audio it has not heard yet. Used from the recognition
+ * thread only.
+ */
+public interface InferenceEngine extends Closeable {
+    /**
+     * Builds engines for one model in a given configuration.
+     */
+    interface Factory {
+        /**
+         * Throws an unchecked exception if the configuration is not supported here, for instance
+         * a delegate this device lacks.
+         */
+        InferenceEngine create(EngineConfig config);
+    }
+
+    /**
+     * Copies the newest window out of the ring into the model input and returns the sequence just
+     * past its last sample.
+     */
+    long load(AudioRing ring);
+
+    /**
+     * Runs the model on the last window loaded and writes one score per label.
+     */
+    void run(float[] scores);
+
+    /**
+     * Most windows {@link #runBatch} scores at once; 1 when the model can neither batch nor step
+     * through windows in order, in which case the batch methods are never called.
+     */
+    default int maxBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Loads count windows for {@link #runBatch}, the first ending at firstEnd and each of the
+     * others one hop later. Returns false if any of them is no longer in the ring.
+     */
+    default boolean loadBatch(AudioRing ring, long firstEnd, int hopLength, int count) {
+        return false;
+    }
+
+    /**
+     * Runs the model over the windows last loaded with {@link #loadBatch}, writing the scores of
+     * window i to scores[i].
+     */
+    default void runBatch(int count, float[][] scores) {
+        throw new IllegalStateException("This engine does not batch");
+    }
+
+    @Override
+    void close();
+}
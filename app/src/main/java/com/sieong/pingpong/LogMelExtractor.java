@@ -0,0 +1,198 @@
+package com.sieong.pingpong;
+
+/**
+ * Streaming speech front end: turns captured PCM into log-mel energies, or MFCCs, one frame per
+ * step, appended to a {@link FeatureRing}. Each frame is computed once as its audio arrives, so a
+ * model that takes the last second of features never has the overlapping part recomputed.
+ *
+ * <p>Frames are Hann-windowed and zero-padded to a power of two for the FFT; the mel filters are
+ * triangular on the HTK mel scale, and MFCCs are the orthonormal DCT-II of the log energies. All
+ * tables and buffers are built up front, so processing audio allocates nothing.
+ */
+public final class LogMelExtractor {
+    private static final float LOG_FLOOR = 1e-6f;
+
+    private final int frameLength;
+    private final int frameStep;
+    private final int fftSize;
+    private final int melBins;
+    private final int mfccCount;
+    private final FeatureRing ring;
+    private final float[] window;
+    private final float[] frame;
+    private int filled;
+    // FFT scratch and tables.
+    private final float[] real;
+    private final float[] imaginary;
+    private final int[] bitReversed;
+    private final float[] cos;
+    private final float[] sin;
+    // Mel filter m covers FFT bins filterStart[m] .. filterStart[m] + filterWeights[m].length.
+    private final int[] filterStart;
+    private final float[][] filterWeights;
+    private final float[] logMel;
+    private final float[][] dct;
+    private final float[] features;
+
+    /**
+     * @param mfccCount 0 for log-mel energies, otherwise the number of cepstral coefficients
+     *                  kept, at most melBins.
+     * @param ringFrames frames the ring keeps, at least the most a model reads.
+     */
+    public LogMelExtractor(int sampleRate, int frameLength, int frameStep, int melBins, int mfccCount,
+                           float lowHz, float highHz, int ringFrames) {
+        if (frameStep <= 0 || frameStep > frameLength || mfccCount > melBins || highHz > sampleRate / 2.0f) {
+            throw new IllegalArgumentException("Bad front end configuration");
+        }
+        this.frameLength = frameLength;
+        this.frameStep = frameStep;
+        this.melBins = melBins;
+        this.mfccCount = mfccCount;
+        fftSize = Integer.highestOneBit(frameLength * 2 - 1);
+        ring = new FeatureRing(mfccCount > 0 ? mfccCount : melBins, ringFrames);
+
+        window = new float[frameLength];
+        for (int i = 0; i < frameLength; ++i) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / frameLength));
+        }
+        frame = new float[frameLength];
+        real = new float[fftSize];
+        imaginary = new float[fftSize];
+        bitReversed = new int[fftSize];
+        final int bits = Integer.numberOfTrailingZeros(fftSize);
+        for (int i = 0; i < fftSize; ++i) {
+            bitReversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new float[fftSize / 2];
+        sin = new float[fftSize / 2];
+        for (int i = 0; i < fftSize / 2; ++i) {
+            cos[i] = (float) Math.cos(2.0 * Math.PI * i / fftSize);
+            sin[i] = (float) -Math.sin(2.0 * Math.PI * i / fftSize);
+        }
+
+        filterStart = new int[melBins];
+        filterWeights = new float[melBins][];
+        final double lowMel = mel(lowHz);
+        final double highMel = mel(highHz);
+        final double binHz = (double) sampleRate / fftSize;
+        for (int m = 0; m < melBins; ++m) {
+            final double left = hz(lowMel + (highMel - lowMel) * m / (melBins + 1));
+            final double center = hz(lowMel + (highMel - lowMel) * (m + 1) / (melBins + 1));
+            final double right = hz(lowMel + (highMel - lowMel) * (m + 2) / (melBins + 1));
+            final int first = (int) Math.ceil(left / binHz);
+            final int last = Math.min(fftSize / 2, (int) Math.floor(right / binHz));
+            final float[] weights = new float[Math.max(0, last - first + 1)];
+            for (int k = first; k <= last; ++k) {
+                final double hz = k * binHz;
+                weights[k - first] = (float) Math.max(0.0,
+                        hz <= center ? (hz - left) / (center - left) : (right - hz) / (right - center));
+            }
+            filterStart[m] = first;
+            filterWeights[m] = weights;
+        }
+        logMel = new float[melBins];
+        dct = new float[mfccCount][melBins];
+        for (int i = 0; i < mfccCount; ++i) {
+            final double scale = Math.sqrt((i == 0 ? 1.0 : 2.0) / melBins);
+            for (int m = 0; m < melBins; ++m) {
+                dct[i][m] = (float) (scale * Math.cos(Math.PI * i * (m + 0.5) / melBins));
+            }
+        }
+        features = new float[ring.featureCount()];
+    }
+
+    private static double mel(double hz) {
+        return 2595.0 * Math.log10(1.0 + hz / 700.0);
+    }
+
+    private static double hz(double mel) {
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+
+    public FeatureRing features() {
+        return ring;
+    }
+
+    public int frameStep() {
+        return frameStep;
+    }
+
+    /**
+     * Takes the next block of audio, appending a frame to the ring for every step it completes.
+     * Blocks of any size give the same frames.
+     */
+    public void process(short[] in, int offset, int length) {
+        int index = offset;
+        final int end = offset + length;
+        while (index < end) {
+            final int count = Math.min(end - index, frameLength - filled);
+            for (int i = 0; i < count; ++i) {
+                frame[filled + i] = in[index + i] * PcmWindow.SCALE;
+            }
+            filled += count;
+            index += count;
+            if (filled == frameLength) {
+                computeFrame();
+                ring.write(features);
+                System.arraycopy(frame, frameStep, frame, 0, frameLength - frameStep);
+                filled = frameLength - frameStep;
+            }
+        }
+    }
+
+    private void computeFrame() {
+        for (int i = 0; i < fftSize; ++i) {
+            final int source = bitReversed[i];
+            real[i] = source < frameLength ? frame[source] * window[source] : 0.0f;
+            imaginary[i] = 0.0f;
+        }
+        fft();
+        for (int m = 0; m < melBins; ++m) {
+            final float[] weights = filterWeights[m];
+            final int first = filterStart[m];
+            float energy = 0.0f;
+            for (int k = 0; k < weights.length; ++k) {
+                final float re = real[first + k];
+                final float im = imaginary[first + k];
+                energy += weights[k] * (re * re + im * im);
+            }
+            logMel[m] = (float) Math.log(energy + LOG_FLOOR);
+        }
+        if (mfccCount == 0) {
+            System.arraycopy(logMel, 0, features, 0, melBins);
+            return;
+        }
+        for (int i = 0; i < mfccCount; ++i) {
+            final float[] basis = dct[i];
+            float sum = 0.0f;
+            for (int m = 0; m < melBins; ++m) {
+                sum += basis[m] * logMel[m];
+            }
+            features[i] = sum;
+        }
+    }
+
+    /**
+     * In-place radix-2 FFT of real/imaginary, whose input is already in bit-reversed order.
+     */
+    private void fft() {
+        for (int size = 2; size <= fftSize; size <<= 1) {
+            final int half = size >> 1;
+            final int stride = fftSize / size;
+            for (int start = 0; start < fftSize; start += size) {
+                for (int k = 0; k < half; ++k) {
+                    final float wr = cos[k * stride];
+                    final float wi = sin[k * stride];
+                    final int a = start + k;
+                    final int b = a + half;
+                    final float tr = real[b] * wr - imaginary[b] * wi;
+                    final float ti = real[b] * wi + imaginary[b] * wr;
+                    real[b] = real[a] - tr;
+                    imaginary[b] = imaginary[a] - ti;
+                    real[a] += tr;
+                    imaginary[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.sieong.pingpong;
 
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
@@ -10,6 +12,8 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Locale;
+
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
 
 public class MainActivity extends AppCompatActivity implements Referee.Listener {
@@ -17,6 +21,7 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
 
     private static final int REQUEST_RECORD_AUDIO = 13;
     private static final String TAG = MainActivity.class.getSimpleName();
+    private static final long STATISTICS_REFRESH_MS = 1000;
 
     private TextView hostScore;
     private TextView guestScore;
@@ -25,8 +30,20 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
     private Button scoreGuestButton;
     private Button restartButton;
     private TextView recognizerStatus;
+    private TextView winChances;
+    private TextView matchStats;
 
     private Referee referee;
+    // Touched on the main thread only.
+    private Score shownScore;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable statisticsRefresher = new Runnable() {
+        @Override
+        public void run() {
+            refreshStatistics(referee.getMatchStatistics());
+            handler.postDelayed(this, STATISTICS_REFRESH_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,6 +61,8 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
         whoShouldServing = findViewById(R.id.who_should_serve);
         restartButton = findViewById(R.id.restart);
         recognizerStatus = findViewById(R.id.recognizer_status);
+        winChances = findViewById(R.id.win_chances);
+        matchStats = findViewById(R.id.match_stats);
 
         scoreHostButton.setOnClickListener(v -> referee.hostScored());
         scoreGuestButton.setOnClickListener(v -> referee.guestScored());
@@ -51,7 +70,9 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
     }
 
     private void setupReferee() {
-        referee = new Referee(this);
+        // Shared with any previous instance of this activity, so a rotation keeps the game and
+        // does not load the model again.
+        referee = ((RefereeApplication) getApplication()).acquireReferee();
         referee.setListener(this);
         referee.setGameSummaryMode(true);
         turnOnRefereeVoiceCommand();
@@ -74,12 +95,21 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
     protected void onResume() {
         super.onResume();
         referee.setVoiceCommandMode(true);
+        handler.post(statisticsRefresher);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         referee.setVoiceCommandMode(false);
+        handler.removeCallbacks(statisticsRefresher);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        referee.setListener(null);
+        ((RefereeApplication) getApplication()).releaseReferee();
     }
 
     @Override
@@ -92,20 +122,25 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
     }
 
     @Override
-    public void onGameUpdated(@NotNull Game game) {
+    public void onGameUpdated(@NotNull Score score, @NotNull WinProbability.Chances chances) {
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                refreshUI(game);
+                // Updates from the buttons and the recognizer can arrive out of order.
+                if (shownScore == null || score.isNewerThan(shownScore)) {
+                    shownScore = score;
+                    refreshUI(score);
+                    refreshWinChances(chances);
+                }
             }
         });
     }
 
-    private void refreshUI(Game game) {
+    private void refreshUI(Score game) {
         hostScore.setText(String.valueOf(game.getScoreHost()));
         guestScore.setText(String.valueOf(game.getScoreGuest()));
 
-        if (game.isGameOver()) {
+        if (game.isMatchOver()) {
             whoShouldServing.setText("Game over");
             scoreGuestButton.setEnabled(false);
             scoreHostButton.setEnabled(false);
@@ -117,18 +152,68 @@ public class MainActivity extends AppCompatActivity implements Referee.Listener
         }
     }
 
+    private void refreshWinChances(WinProbability.Chances chances) {
+        final long game = Math.round(chances.getGame() * 100);
+        if (chances.getScore().getRules().getBestOf() == 1) {
+            winChances.setText(String.format(Locale.US, "Chance to win: host %d%%, guest %d%%", game, 100 - game));
+        } else {
+            final long match = Math.round(chances.getMatch() * 100);
+            winChances.setText(String.format(Locale.US, "Game: host %d%%, guest %d%%\nMatch: host %d%%, guest %d%%",
+                    game, 100 - game, match, 100 - match));
+        }
+    }
+
+    private void refreshStatistics(MatchStatistics.Snapshot stats) {
+        final Game.PlayerRole host = Game.PlayerRole.HOST;
+        final Game.PlayerRole guest = Game.PlayerRole.GUEST;
+        matchStats.setText(String.format(Locale.US,
+                "Won on serve: host %d/%d, guest %d/%d\n"
+                        + "Won on return: host %d/%d, guest %d/%d\n"
+                        + "Longest run: host %d, guest %d. Momentum: %+d\n"
+                        + "Time per point: %.1f s. By voice: %d, by button: %d",
+                stats.wonOnServe(host), stats.servePoints(host), stats.wonOnServe(guest), stats.servePoints(guest),
+                stats.wonOnReturn(host), stats.returnPoints(host), stats.wonOnReturn(guest), stats.returnPoints(guest),
+                stats.longestRun(host), stats.longestRun(guest), stats.getMomentum(),
+                stats.getAveragePointMs() / 1000.0, stats.getVoicePoints(), stats.getButtonPoints()));
+    }
+
     @Override
     public void onVoiceCommandModeStatus(@NotNull VoiceCommandModeStatus status) {
-        switch (status){
-            case ENABLED:
-                recognizerStatus.setText("Recognizer working...");
-                break;
-            case DISABLED:
-                recognizerStatus.setText("Recognizer disabled.");
-                break;
-            case PAUSED:
-                recognizerStatus.setText("Recognizer paused.");
-                break;
-        }
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                switch (status) {
+                    case ENABLED:
+                        recognizerStatus.setText("Recognizer working...");
+                        break;
+                    case DISABLED:
+                        recognizerStatus.setText("Recognizer disabled.");
+                        break;
+                    case PAUSED:
+                        recognizerStatus.setText("Recognizer paused.");
+                        break;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onEngineStatus(@NotNull EngineStatus status) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                switch (status) {
+                    case INITIALIZING:
+                        recognizerStatus.setText("Recognizer loading...");
+                        break;
+                    case READY:
+                        // The voice command status follows straight after.
+                        break;
+                    case FAILED:
+                        recognizerStatus.setText("Recognizer unavailable.");
+                        break;
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,447 @@
+package com.sieong.pingpong
+
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Append-only archive of finished matches, in three files under one directory.
+ *
+ * The data file holds one block per match, column by column: who won each point, one bit a point,
+ * then the point times as variable-length deltas, a byte or two each. The index file holds a
+ * fixed-width entry per match with its date, players, rules and totals, and for each player the
+ * entry of their previous match and of the one [SKIP_DISTANCE] matches back; the players file holds
+ * each player's latest entry. A player's matches thus form a chain from newest to oldest, and a
+ * query for a player over a date range jumps down the chain to the range, then walks just that
+ * stretch of it in the memory-mapped index, never touching the point data.
+ *
+ * Matches must be appended in order of start time. An entry only counts once the header says so,
+ * and the players' heads are moved to it after that, so a crash mid-append loses at most the match
+ * being appended; opening the archive puts right any heads that were left behind or ahead.
+ */
+class MatchArchive private constructor(
+        private val index: RandomAccessFile,
+        private val data: RandomAccessFile,
+        private val players: RandomAccessFile
+) : Closeable {
+    companion object {
+        const val INDEX_FILENAME = "matches.idx"
+        const val DATA_FILENAME = "matches.dat"
+        const val PLAYERS_FILENAME = "players.idx"
+
+        /**
+         * Player ids run from 0 to one less than this.
+         */
+        const val MAX_PLAYERS = 1 shl 16
+
+        private const val MAGIC = 0x50504131 // "PPA1"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 16
+        private const val COUNT_OFFSET = 8
+        private const val ENTRY_SIZE = 56
+        private const val SKIP_DISTANCE = 32
+        private const val INITIAL_CAPACITY = 1024
+
+        // Entry layout.
+        private const val START = 0
+        private const val DURATION = 8
+        private const val HOST = 12
+        private const val GUEST = 16
+        private const val HOST_PREVIOUS = 20
+        private const val GUEST_PREVIOUS = 24
+        private const val POINTS_HOST = 28
+        private const val POINTS_GUEST = 30
+        private const val GAMES_HOST = 32
+        private const val GAMES_GUEST = 33
+        private const val POINTS_TO_WIN = 34
+        private const val FORMAT = 35
+        private const val DATA_OFFSET = 36
+        private const val POINT_COUNT = 44
+        private const val HOST_SKIP = 48
+        private const val GUEST_SKIP = 52
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun open(directory: File): MatchArchive {
+            if (!directory.isDirectory && !directory.mkdirs()) {
+                throw IOException("Cannot create $directory")
+            }
+            val files = ArrayList<RandomAccessFile>()
+            try {
+                for (name in arrayOf(INDEX_FILENAME, DATA_FILENAME, PLAYERS_FILENAME)) {
+                    files.add(RandomAccessFile(File(directory, name), "rw"))
+                }
+                return MatchArchive(files[0], files[1], files[2])
+            } catch (e: IOException) {
+                for (file in files) {
+                    file.close()
+                }
+                throw e
+            }
+        }
+
+        private fun writeVarLong(out: ByteBuffer, value: Long) {
+            var rest = value
+            while (rest >= 0x80) {
+                out.put((rest or 0x80).toByte())
+                rest = rest ushr 7
+            }
+            out.put(rest.toByte())
+        }
+
+        private fun readVarLong(input: ByteBuffer): Long {
+            var value = 0L
+            var shift = 0
+            while (true) {
+                val b = input.get().toInt()
+                value = value or ((b and 0x7f).toLong() shl shift)
+                if (b and 0x80 == 0) {
+                    return value
+                }
+                shift += 7
+            }
+        }
+    }
+
+    /**
+     * Every point of a match: who won it, true for the host, and when, oldest first.
+     */
+    class Points(val hostWon: BooleanArray, val timesMs: LongArray)
+
+    /**
+     * Totals over a player's matches, from their side of the table.
+     */
+    class Summary(
+            val matches: Int,
+            val matchesWon: Int,
+            val gamesWon: Int,
+            val gamesLost: Int,
+            val pointsWon: Int,
+            val pointsLost: Int,
+            val durationMs: Long
+    )
+
+    private lateinit var entries: MappedByteBuffer
+    private val heads: MappedByteBuffer
+    private var points: MappedByteBuffer? = null
+    private var dataSize = data.length()
+    // Building a RuleSet compiles its tables, so each one read back is kept.
+    private val ruleSets = HashMap<Int, RuleSet>()
+
+    /**
+     * Matches in the archive; entries are numbered from 0 in the order they were appended.
+     */
+    @Volatile
+    var size = 0
+        private set
+
+    init {
+        val fresh = index.length() < HEADER_SIZE
+        mapEntries(maxOf(INITIAL_CAPACITY, ((index.length() - HEADER_SIZE) / ENTRY_SIZE).toInt()))
+        if (fresh) {
+            entries.putInt(0, MAGIC)
+            entries.putInt(4, VERSION)
+            entries.putInt(COUNT_OFFSET, 0)
+        } else if (entries.getInt(0) != MAGIC || entries.getInt(4) != VERSION) {
+            throw IOException("Not a match archive")
+        }
+        size = entries.getInt(COUNT_OFFSET)
+        heads = players.channel.map(FileChannel.MapMode.READ_WRITE, 0, MAX_PLAYERS * 4L)
+        heads.order(ByteOrder.LITTLE_ENDIAN)
+        repairHeads()
+    }
+
+    /**
+     * Heads past the count are left from an append that was cut short before the count was
+     * written, and heads behind the last entry from one cut short after it.
+     */
+    private fun repairHeads() {
+        for (player in 0 until MAX_PLAYERS) {
+            if (heads.getInt(player * 4) > size) {
+                heads.putInt(player * 4, head(player) + 1)
+            }
+        }
+        if (size > 0) {
+            val last = size - 1
+            for (player in intArrayOf(hostPlayer(last), guestPlayer(last))) {
+                if (heads.getInt(player * 4) - 1 < last) {
+                    heads.putInt(player * 4, last + 1)
+                }
+            }
+        }
+    }
+
+    /**
+     * [player]'s newest counted entry, or -1. A head past the count is stale and followed back
+     * down its chain, whose links always point to earlier entries.
+     */
+    private fun head(player: Int): Int {
+        var entry = heads.getInt(player * 4) - 1
+        while (entry >= size) {
+            val earlier = previous(entry, player)
+            entry = if (earlier < entry) earlier else -1
+        }
+        return entry
+    }
+
+    private fun mapEntries(capacity: Int) {
+        val mapped = index.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity.toLong() * ENTRY_SIZE)
+        mapped.order(ByteOrder.LITTLE_ENDIAN)
+        entries = mapped
+    }
+
+    private fun entryOffset(entry: Int) = HEADER_SIZE + entry * ENTRY_SIZE
+
+    /**
+     * Adds a finished match; returns its entry.
+     *
+     * @param startMs when the match started, no earlier than the last one appended.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun append(startMs: Long, hostPlayer: Int, guestPlayer: Int, rules: RuleSet,
+               gamesHost: Int, gamesGuest: Int, points: Points): Int {
+        require(hostPlayer in 0 until MAX_PLAYERS && guestPlayer in 0 until MAX_PLAYERS && hostPlayer != guestPlayer) {
+            "Players must be two different ids below $MAX_PLAYERS"
+        }
+        require(size == 0 || startMs >= startMs(size - 1)) { "Matches must be appended in order of start time" }
+        // What the entry has room for.
+        require(rules.pointsToWin <= 0xFF && rules.servesPerTurn <= 7 && rules.bestOf <= 0xF) {
+            "Rules out of range: to ${rules.pointsToWin}, ${rules.servesPerTurn} serves, best of ${rules.bestOf}"
+        }
+        require(gamesHost in 0..rules.gamesToWin && gamesGuest in 0..rules.gamesToWin) {
+            "Games $gamesHost to $gamesGuest out of range"
+        }
+        val count = points.hostWon.size
+        require(count <= 0xFFFF && points.timesMs.size == count) { "Points out of range" }
+
+        val block = ByteBuffer.allocate(4 + (count + 7) / 8 + count * 10).order(ByteOrder.LITTLE_ENDIAN)
+        block.putInt(count)
+        var pointsHost = 0
+        var bits = 0
+        for (i in 0 until count) {
+            if (points.hostWon[i]) {
+                bits = bits or (1 shl (i and 7))
+                pointsHost++
+            }
+            if (i and 7 == 7 || i == count - 1) {
+                block.put(bits.toByte())
+                bits = 0
+            }
+        }
+        var previous = startMs
+        for (time in points.timesMs) {
+            // The clock may have been set back mid-match; such a point counts as instant.
+            writeVarLong(block, maxOf(0L, time - previous))
+            previous = maxOf(previous, time)
+        }
+        block.flip()
+        val dataOffset = dataSize
+        while (block.hasRemaining()) {
+            data.channel.write(block, dataSize)
+            dataSize = dataOffset + block.position()
+        }
+
+        val entry = size
+        if (entryOffset(entry + 1) > entries.capacity()) {
+            mapEntries((entries.capacity() - HEADER_SIZE) / ENTRY_SIZE * 2)
+        }
+        val offset = entryOffset(entry)
+        entries.putLong(offset + START, startMs)
+        entries.putInt(offset + DURATION, minOf(Int.MAX_VALUE.toLong(), previous - startMs).toInt())
+        entries.putInt(offset + HOST, hostPlayer)
+        entries.putInt(offset + GUEST, guestPlayer)
+        entries.putInt(offset + HOST_PREVIOUS, head(hostPlayer))
+        entries.putInt(offset + GUEST_PREVIOUS, head(guestPlayer))
+        entries.putInt(offset + HOST_SKIP, stepsBack(entry, hostPlayer, SKIP_DISTANCE))
+        entries.putInt(offset + GUEST_SKIP, stepsBack(entry, guestPlayer, SKIP_DISTANCE))
+        entries.putShort(offset + POINTS_HOST, pointsHost.toShort())
+        entries.putShort(offset + POINTS_GUEST, (count - pointsHost).toShort())
+        entries.put(offset + GAMES_HOST, gamesHost.toByte())
+        entries.put(offset + GAMES_GUEST, gamesGuest.toByte())
+        entries.put(offset + POINTS_TO_WIN, rules.pointsToWin.toByte())
+        entries.put(offset + FORMAT, (rules.servesPerTurn shl 5 or (rules.bestOf shl 1) or if (rules.doubles) 1 else 0).toByte())
+        entries.putLong(offset + DATA_OFFSET, dataOffset)
+        entries.putInt(offset + POINT_COUNT, count)
+        entries.putInt(COUNT_OFFSET, entry + 1)
+        size = entry + 1
+        heads.putInt(hostPlayer * 4, entry + 1)
+        heads.putInt(guestPlayer * 4, entry + 1)
+        return entry
+    }
+
+    /**
+     * [player]'s match [steps] before [entry], or -1 if there are not that many.
+     */
+    private fun stepsBack(entry: Int, player: Int, steps: Int): Int {
+        var current = entry
+        for (i in 0 until steps) {
+            current = previous(current, player)
+            if (current < 0) {
+                break
+            }
+        }
+        return current
+    }
+
+    private fun previous(entry: Int, player: Int): Int {
+        val offset = entryOffset(entry)
+        return entries.getInt(offset + if (entries.getInt(offset + HOST) == player) HOST_PREVIOUS else GUEST_PREVIOUS)
+    }
+
+    private fun skip(entry: Int, player: Int): Int {
+        val offset = entryOffset(entry)
+        return entries.getInt(offset + if (entries.getInt(offset + HOST) == player) HOST_SKIP else GUEST_SKIP)
+    }
+
+    fun startMs(entry: Int) = entries.getLong(entryOffset(entry) + START)
+
+    fun durationMs(entry: Int) = entries.getInt(entryOffset(entry) + DURATION)
+
+    fun hostPlayer(entry: Int) = entries.getInt(entryOffset(entry) + HOST)
+
+    fun guestPlayer(entry: Int) = entries.getInt(entryOffset(entry) + GUEST)
+
+    fun gamesHost(entry: Int) = entries.get(entryOffset(entry) + GAMES_HOST).toInt()
+
+    fun gamesGuest(entry: Int) = entries.get(entryOffset(entry) + GAMES_GUEST).toInt()
+
+    fun pointsHost(entry: Int) = entries.getShort(entryOffset(entry) + POINTS_HOST).toInt() and 0xFFFF
+
+    fun pointsGuest(entry: Int) = entries.getShort(entryOffset(entry) + POINTS_GUEST).toInt() and 0xFFFF
+
+    /**
+     * The rules the match was played under, one instance per distinct set.
+     */
+    @Synchronized
+    fun rules(entry: Int): RuleSet {
+        val pointsToWin = entries.get(entryOffset(entry) + POINTS_TO_WIN).toInt() and 0xFF
+        val format = entries.get(entryOffset(entry) + FORMAT).toInt() and 0xFF
+        return ruleSets.getOrPut(pointsToWin shl 8 or format) {
+            RuleSet(pointsToWin, format ushr 5, (format shr 1) and 0xF, format and 1 != 0)
+        }
+    }
+
+    /**
+     * First entry starting at or after [timeMs], or [size] if none does.
+     */
+    fun firstStartingFrom(timeMs: Long): Int {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (startMs(middle) < timeMs) low = middle + 1 else high = middle
+        }
+        return low
+    }
+
+    /**
+     * Calls [visitor] with each of [player]'s matches starting in [fromMs, toMs), newest first.
+     */
+    fun forEachMatch(player: Int, fromMs: Long, toMs: Long, visitor: (Int) -> Unit) {
+        var entry = head(player)
+        // Everything jumped over starts no earlier than where the jump lands, so after the range.
+        while (entry >= 0) {
+            val farther = skip(entry, player)
+            if (farther < 0 || startMs(farther) < toMs) {
+                break
+            }
+            entry = farther
+        }
+        while (entry >= 0) {
+            val start = startMs(entry)
+            if (start < fromMs) {
+                return
+            }
+            if (start < toMs) {
+                visitor(entry)
+            }
+            entry = previous(entry, player)
+        }
+    }
+
+    /**
+     * Totals over [player]'s matches starting in [fromMs, toMs), from the index alone.
+     */
+    fun summarize(player: Int, fromMs: Long, toMs: Long): Summary {
+        var matches = 0
+        var matchesWon = 0
+        var gamesWon = 0
+        var gamesLost = 0
+        var pointsWon = 0
+        var pointsLost = 0
+        var durationMs = 0L
+        forEachMatch(player, fromMs, toMs) { entry ->
+            val host = hostPlayer(entry) == player
+            val won = if (host) gamesHost(entry) else gamesGuest(entry)
+            val lost = if (host) gamesGuest(entry) else gamesHost(entry)
+            matches++
+            if (won > lost) {
+                matchesWon++
+            }
+            gamesWon += won
+            gamesLost += lost
+            pointsWon += if (host) pointsHost(entry) else pointsGuest(entry)
+            pointsLost += if (host) pointsGuest(entry) else pointsHost(entry)
+            durationMs += durationMs(entry)
+        }
+        return Summary(matches, matchesWon, gamesWon, gamesLost, pointsWon, pointsLost, durationMs)
+    }
+
+    /**
+     * Decodes the points of one match straight from the mapped data file, which covers up to
+     * 2 GB of point data: some ten million matches.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun readPoints(entry: Int): Points {
+        val offset = entryOffset(entry)
+        val dataOffset = entries.getLong(offset + DATA_OFFSET)
+        val count = entries.getInt(offset + POINT_COUNT)
+        var mapped = points
+        if (mapped == null || mapped.capacity() < dataSize) {
+            mapped = data.channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize)
+            mapped.order(ByteOrder.LITTLE_ENDIAN)
+            points = mapped
+        }
+        val block = mapped!!.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        block.position(dataOffset.toInt() + 4)
+        val hostWon = BooleanArray(count)
+        var bits = 0
+        for (i in 0 until count) {
+            if (i and 7 == 0) {
+                bits = block.get().toInt()
+            }
+            hostWon[i] = bits and (1 shl (i and 7)) != 0
+        }
+        val timesMs = LongArray(count)
+        var time = startMs(entry)
+        for (i in 0 until count) {
+            time += readVarLong(block)
+            timesMs[i] = time
+        }
+        return Points(hostWon, timesMs)
+    }
+
+    /**
+     * Forces everything appended so far to storage.
+     */
+    @Synchronized
+    fun sync() {
+        data.channel.force(false)
+        entries.force()
+        heads.force()
+    }
+
+    override fun close() {
+        sync()
+        index.close()
+        data.close()
+        players.close()
+    }
+}
@@ -0,0 +1,175 @@
+package com.sieong.pingpong
+
+import com.sieong.pingpong.Game.PlayerRole
+
+/**
+ * Live statistics of a match, kept up to date point by point: points won on serve and on return,
+ * runs, momentum over the last [momentumWindow] points, time per point and how points were
+ * entered. Each point and each undo costs the same small, fixed amount of work whatever the length
+ * of the match, and an undo restores every figure exactly.
+ *
+ * Exact undo is what the per-point record is for: who served, who won, how it was entered, when,
+ * and the run figures it replaced, 12 bytes a point. Everything else is a fixed set of counters.
+ * After every change a new [Snapshot] is published, which readers take without a lock.
+ */
+class MatchStatistics @JvmOverloads constructor(val momentumWindow: Int = 10) {
+    companion object {
+        private const val WINNER = 1
+        private const val SERVER = 1 shl 1
+        private const val VOICE = 1 shl 2
+        private const val RUN_SIDE = 1 shl 3
+        private const val RUN_SHIFT = 4
+        private const val LONGEST_SHIFT = 18
+        private const val MAX_RUN = (1 shl 14) - 1
+    }
+
+    enum class Source { BUTTON, VOICE }
+
+    /**
+     * The figures at one moment, never changed once published.
+     */
+    class Snapshot internal constructor(
+            private val pointsWon: IntArray,
+            private val served: IntArray,
+            private val wonOnServe: IntArray,
+            private val longestRun: IntArray,
+            /** Who won the most recent point, or null before the first. */
+            val runSide: PlayerRole?,
+            val runLength: Int,
+            /** Host points minus guest points over the last momentumWindow points. */
+            val momentum: Int,
+            /** Mean time between consecutive points, or 0 before there are two. */
+            val averagePointMs: Long,
+            val voicePoints: Int,
+            val buttonPoints: Int
+    ) {
+        fun pointsWon(side: PlayerRole) = pointsWon[side.ordinal]
+
+        fun wonOnServe(side: PlayerRole) = wonOnServe[side.ordinal]
+
+        fun servePoints(side: PlayerRole) = served[side.ordinal]
+
+        fun wonOnReturn(side: PlayerRole) = pointsWon[side.ordinal] - wonOnServe[side.ordinal]
+
+        fun returnPoints(side: PlayerRole) = served[1 - side.ordinal]
+
+        fun longestRun(side: PlayerRole) = longestRun[side.ordinal]
+    }
+
+    private var records = IntArray(64)
+    private var times = LongArray(64)
+    private var count = 0
+    private val pointsWon = IntArray(2)
+    private val served = IntArray(2)
+    private val wonOnServe = IntArray(2)
+    private val longestRun = IntArray(2)
+    private var runSide = -1
+    private var runLength = 0
+    private var momentum = 0
+    private var totalPointMs = 0L
+    private var voicePoints = 0
+
+    @Volatile
+    var snapshot = publish()
+        private set
+
+    @Synchronized
+    fun onPoint(server: PlayerRole, winner: PlayerRole, source: Source, timeMs: Long) {
+        if (count == records.size) {
+            records = records.copyOf(count * 2)
+            times = times.copyOf(count * 2)
+        }
+        val side = winner.ordinal
+        records[count] = side or
+                (if (server == PlayerRole.GUEST) SERVER else 0) or
+                (if (source == Source.VOICE) VOICE else 0) or
+                (if (runSide == 1) RUN_SIDE else 0) or
+                (runLength shl RUN_SHIFT) or
+                (longestRun[side] shl LONGEST_SHIFT)
+        times[count] = timeMs
+        if (count > 0) {
+            totalPointMs += timeMs - times[count - 1]
+        }
+        count++
+
+        pointsWon[side]++
+        served[server.ordinal]++
+        if (server == winner) {
+            wonOnServe[side]++
+        }
+        runLength = if (runSide == side) minOf(runLength + 1, MAX_RUN) else 1
+        runSide = side
+        longestRun[side] = maxOf(longestRun[side], runLength)
+        momentum += sign(side)
+        if (count > momentumWindow) {
+            momentum -= sign(records[count - 1 - momentumWindow] and WINNER)
+        }
+        if (source == Source.VOICE) {
+            voicePoints++
+        }
+        snapshot = publish()
+    }
+
+    /**
+     * Takes back the most recent point; does nothing once none are left.
+     */
+    @Synchronized
+    fun onUndo() {
+        if (count == 0) {
+            return
+        }
+        val record = records[--count]
+        val side = record and WINNER
+        val server = if (record and SERVER != 0) 1 else 0
+        if (count > 0) {
+            totalPointMs -= times[count] - times[count - 1]
+        }
+        pointsWon[side]--
+        served[server]--
+        if (server == side) {
+            wonOnServe[side]--
+        }
+        runLength = (record ushr RUN_SHIFT) and MAX_RUN
+        runSide = if (runLength == 0) -1 else if (record and RUN_SIDE != 0) 1 else 0
+        longestRun[side] = (record ushr LONGEST_SHIFT) and MAX_RUN
+        momentum -= sign(side)
+        if (count >= momentumWindow) {
+            momentum += sign(records[count - momentumWindow] and WINNER)
+        }
+        if (record and VOICE != 0) {
+            voicePoints--
+        }
+        snapshot = publish()
+    }
+
+    @Synchronized
+    fun onReset() {
+        count = 0
+        pointsWon.fill(0)
+        served.fill(0)
+        wonOnServe.fill(0)
+        longestRun.fill(0)
+        runSide = -1
+        runLength = 0
+        momentum = 0
+        totalPointMs = 0
+        voicePoints = 0
+        snapshot = publish()
+    }
+
+    /**
+     * Every point standing, as the [MatchArchive] keeps them.
+     */
+    @Synchronized
+    fun points(): MatchArchive.Points {
+        val hostWon = BooleanArray(count) { records[it] and WINNER == PlayerRole.HOST.ordinal }
+        return MatchArchive.Points(hostWon, times.copyOf(count))
+    }
+
+    private fun sign(side: Int) = if (side == PlayerRole.HOST.ordinal) 1 else -1
+
+    private fun publish() = Snapshot(
+            pointsWon.copyOf(), served.copyOf(), wonOnServe.copyOf(), longestRun.copyOf(),
+            if (runSide < 0) null else PlayerRole.values()[runSide], runLength, momentum,
+            if (count > 1) totalPointMs / (count - 1) else 0, voicePoints, count - voicePoints)
+}
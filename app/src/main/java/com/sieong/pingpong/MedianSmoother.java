@@ -0,0 +1,80 @@
+package com.sieong.pingpong;
+
+/**
+ * Running median over the last few frames of each label. A single-frame spike, such as a ball
+ * click scoring high for one window, cannot move the median on its own.
+ */
+public class MedianSmoother implements ScoreSmoother {
+    private final int labelsCount;
+    private final int length;
+    private final float[] history;
+    private final long[] times;
+    private final float[] medians;
+    private final float[] scratch;
+    private int head;
+    private int count;
+
+    /**
+     * @param length how many recent frames the median is taken over, kept small as each frame costs
+     *               O(labels * length^2).
+     */
+    public MedianSmoother(int labelsCount, int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Median length " + length + " is not positive");
+        }
+        this.labelsCount = labelsCount;
+        this.length = length;
+        history = new float[length * labelsCount];
+        times = new long[length];
+        medians = new float[labelsCount];
+        scratch = new float[length];
+    }
+
+    @Override
+    public void add(float[] frame, long timeMs) {
+        final int index = (head + count) % length;
+        System.arraycopy(frame, 0, history, index * labelsCount, labelsCount);
+        times[index] = timeMs;
+        if (count < length) {
+            ++count;
+        } else {
+            head = (head + 1) % length;
+        }
+
+        for (int label = 0; label < labelsCount; ++label) {
+            // Insertion sort of the few values in the window.
+            for (int position = 0; position < count; ++position) {
+                final float value = history[((head + position) % length) * labelsCount + label];
+                int j = position - 1;
+                while (j >= 0 && scratch[j] > value) {
+                    scratch[j + 1] = scratch[j];
+                    --j;
+                }
+                scratch[j + 1] = value;
+            }
+            medians[label] = (count & 1) == 1
+                    ? scratch[count / 2]
+                    : (scratch[count / 2 - 1] + scratch[count / 2]) * 0.5f;
+        }
+    }
+
+    @Override
+    public float score(int index) {
+        return medians[index];
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long oldestTimeMs() {
+        return times[head];
+    }
+
+    @Override
+    public long newestTimeMs() {
+        return times[(head + count - 1) % length];
+    }
+}
@@ -0,0 +1,106 @@
+package com.sieong.pingpong;
+
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Audio kernels from native-lib: vectorized PCM to float conversion and per-block statistics.
+ *
+ * <p>Every method has a plain Java fallback with identical results, used when the library cannot
+ * be loaded (unit tests, the JVM replay tools) or when the output is not a direct buffer in native
+ * order.
+ */
+public final class NativeDsp {
+    /**
+     * Indexes into the array filled by {@link #blockStats}.
+     */
+    public static final int SUM_OF_SQUARES = 0;
+    public static final int PEAK = 1;
+    public static final int ZERO_CROSSINGS = 2;
+    public static final int BLOCK_STATS_LENGTH = 3;
+
+    private static final boolean LOADED = loadLibrary();
+
+    private NativeDsp() {
+    }
+
+    private static boolean loadLibrary() {
+        try {
+            System.loadLibrary("native-lib");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    public static boolean isLoaded() {
+        return LOADED;
+    }
+
+    /**
+     * Writes in[offset..offset+length) scaled by scale to out, starting at index 0. The buffer's
+     * position is left untouched.
+     */
+    public static void toFloat(short[] in, int offset, int length, FloatBuffer out, float scale) {
+        if (isNativeTarget(out) && nativePcm16ToFloat(in, offset, length, out, scale)) {
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            out.put(i, in[offset + i] * scale);
+        }
+    }
+
+    /**
+     * Like {@link #toFloat}, but reads length samples of ring from index start, wrapping around its
+     * end.
+     */
+    public static void ringToFloat(short[] ring, int start, int length, FloatBuffer out, float scale) {
+        if (isNativeTarget(out) && nativeRingExtract(ring, start, length, out, scale)) {
+            return;
+        }
+        final int firstLength = Math.min(length, ring.length - start);
+        for (int i = 0; i < firstLength; ++i) {
+            out.put(i, ring[start + i] * scale);
+        }
+        for (int i = firstLength; i < length; ++i) {
+            out.put(i, ring[i - firstLength] * scale);
+        }
+    }
+
+    /**
+     * Fills stats with the sum of squares, peak magnitude and number of sign changes of the block.
+     * previousNegative is the sign of the sample just before it, so crossings at block boundaries
+     * are counted exactly once.
+     */
+    public static void blockStats(short[] in, int offset, int length, boolean previousNegative, long[] stats) {
+        if (LOADED && nativeBlockStats(in, offset, length, previousNegative, stats)) {
+            return;
+        }
+        long sumOfSquares = 0;
+        int peak = 0;
+        int zeroCrossings = 0;
+        boolean negative = previousNegative;
+        for (int i = offset; i < offset + length; ++i) {
+            final int sample = in[i];
+            sumOfSquares += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+            if ((sample < 0) != negative) {
+                ++zeroCrossings;
+                negative = sample < 0;
+            }
+        }
+        stats[SUM_OF_SQUARES] = sumOfSquares;
+        stats[PEAK] = peak;
+        stats[ZERO_CROSSINGS] = zeroCrossings;
+    }
+
+    private static boolean isNativeTarget(FloatBuffer out) {
+        return LOADED && out.isDirect() && out.order() == ByteOrder.nativeOrder();
+    }
+
+    private static native boolean nativePcm16ToFloat(short[] in, int offset, int length, FloatBuffer out, float scale);
+
+    private static native boolean nativeRingExtract(short[] ring, int start, int length, FloatBuffer out, float scale);
+
+    private static native boolean nativeBlockStats(short[] in, int offset, int length, boolean previousNegative, long[] stats);
+}
@@ -0,0 +1,147 @@
+package com.sieong.pingpong;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Mono 16-bit PCM from a file, either WAV or headerless little-endian samples, played back at a
+ * multiple of real time or as fast as it is read.
+ */
+public final class PcmFileSource implements AudioSource {
+    private final File file;
+    private final int sampleRate;
+    private final AudioPacer pacer;
+    private final DataInputStream in;
+    private byte[] bytes = new byte[0];
+    private long samplesRead;
+
+    /**
+     * @param speed 1 for real time, 10 for ten times as fast, 0 for as fast as it is read.
+     */
+    public PcmFileSource(File file, int sampleRate, float speed) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        pacer = new AudioPacer(sampleRate, speed);
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            skipWavHeader();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int preferredReadLength() {
+        return sampleRate / 100;
+    }
+
+    @Override
+    public boolean isPaced() {
+        return pacer.isPaced();
+    }
+
+    @Override
+    public void start() {
+        pacer.start();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        if (bytes.length < length * 2) {
+            bytes = new byte[length * 2];
+        }
+        int byteCount = 0;
+        while (byteCount < length * 2) {
+            final int count = in.read(bytes, byteCount, length * 2 - byteCount);
+            if (count < 0) {
+                break;
+            }
+            byteCount += count;
+        }
+        final int sampleCount = byteCount / 2;
+        if (sampleCount == 0) {
+            return -1;
+        }
+        for (int i = 0; i < sampleCount; ++i) {
+            buffer[offset + i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+        }
+        samplesRead += sampleCount;
+        pacer.await(samplesRead);
+        return sampleCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Positions the stream at the first sample. Files without a RIFF header are taken as raw PCM.
+     */
+    private void skipWavHeader() throws IOException {
+        if (!file.getName().toLowerCase().endsWith(".wav")) {
+            return;
+        }
+        final byte[] id = new byte[4];
+        in.readFully(id);
+        if (!"RIFF".equals(new String(id, "US-ASCII"))) {
+            throw new IOException(file + " is not a RIFF file");
+        }
+        readIntLe(in);
+        in.readFully(id);
+        while (true) {
+            in.readFully(id);
+            final int size = readIntLe(in);
+            final String chunk = new String(id, "US-ASCII");
+            if ("data".equals(chunk)) {
+                return;
+            }
+            if ("fmt ".equals(chunk)) {
+                final int format = readShortLe(in);
+                final int channels = readShortLe(in);
+                final int fileSampleRate = readIntLe(in);
+                if (format != 1 || channels != 1 || fileSampleRate != sampleRate) {
+                    throw new IOException(file + " must be " + sampleRate + " Hz mono PCM");
+                }
+                skipFully(in, size - 8);
+            } else {
+                skipFully(in, size + (size & 1));
+            }
+        }
+    }
+
+    private static int readIntLe(InputStream in) throws IOException {
+        return readShortLe(in) | (readShortLe(in) << 16);
+    }
+
+    private static int readShortLe(InputStream in) throws IOException {
+        final int low = in.read();
+        final int high = in.read();
+        if ((low | high) < 0) {
+            throw new EOFException();
+        }
+        return low | (high << 8);
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.sieong.pingpong;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Converts windows of 16-bit PCM for the recognition model.
+ */
+public final class PcmWindow {
+    /**
+     * Scale that maps signed 16-bit samples onto [-1.0, 1.0].
+     */
+    public static final float SCALE = 1.0f / 32767.0f;
+
+    private PcmWindow() {
+    }
+
+    public static void toFloat(short[] in, float[] out) {
+        for (int i = 0; i < in.length; ++i) {
+            out[i] = in[i] * SCALE;
+        }
+    }
+
+    /**
+     * Converts straight into a tensor buffer, typically a direct one in native order so the
+     * interpreter can take it without another copy. The buffer's position is left untouched.
+     */
+    public static void toFloat(short[] in, FloatBuffer out) {
+        NativeDsp.toFloat(in, 0, in.length, out, SCALE);
+    }
+
+    /**
+     * Whether an int16 input quantized with {@code scale} and {@code zeroPoint} reads samples the
+     * way the float model does, so PCM can be copied in as recorded. A scale of zero means the
+     * tensor is not quantized at all and takes raw samples.
+     */
+    public static boolean isPcmQuantization(float scale, int zeroPoint) {
+        return zeroPoint == 0 && (scale == 0.0f || Math.abs(scale / SCALE - 1.0f) < 1e-3f);
+    }
+
+    /**
+     * Quantizes for an 8-bit input: each sample, taken as the float the float model would see,
+     * becomes {@code round(x / scale) + zeroPoint} clamped to [{@code min}, {@code max}]. Writes
+     * from index 0 and leaves the buffer's position untouched.
+     */
+    public static void quantize(short[] in, ByteBuffer out, float scale, int zeroPoint, int min, int max) {
+        final float factor = SCALE / scale;
+        for (int i = 0; i < in.length; ++i) {
+            out.put(i, (byte) clamp(Math.round(in[i] * factor) + zeroPoint, min, max));
+        }
+    }
+
+    /**
+     * As {@link #quantize(short[], ByteBuffer, float, int, int, int)}, for an int16 input whose
+     * quantization is not plain PCM.
+     */
+    public static void quantize(short[] in, ShortBuffer out, float scale, int zeroPoint) {
+        final float factor = SCALE / scale;
+        for (int i = 0; i < in.length; ++i) {
+            out.put(i, (short) clamp(Math.round(in[i] * factor) + zeroPoint, Short.MIN_VALUE, Short.MAX_VALUE));
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
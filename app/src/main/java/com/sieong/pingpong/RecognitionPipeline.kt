@@ -0,0 +1,488 @@
+package com.sieong.pingpong
+
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * The capture → inference → smoothing → dispatch path, free of Android so it runs the same on a
+ * device and on a plain JVM.
+ *
+ * Audio is read from an [AudioSource] on a capture thread into an [AudioRing]; a recognition
+ * thread runs the [InferenceEngine] once per hop, smooths the scores and turns detections into
+ * [CommandDispatcher.Action]s. Time is taken from the audio itself, so a file replayed faster than
+ * real time is smoothed exactly as it would be live.
+ *
+ * When [CATCH_UP_THRESHOLD_WINDOWS] or more windows are waiting and the engine can batch, the
+ * pending windows are scored in one batched invocation and fed to the smoother in order, so its
+ * input stays dense instead of losing the hops that passed during a slow inference.
+ */
+class RecognitionPipeline @JvmOverloads constructor(
+        private val labels: List<String>,
+        private val engine: InferenceEngine,
+        private val sampleRate: Int,
+        private val windowLength: Int,
+        private val listener: Listener,
+        bindings: Map<String, CommandDispatcher.Action> = CommandDispatcher.DEFAULT_BINDINGS) : Closeable {
+
+    companion object {
+        const val DEFAULT_HOP_MS: Long = 40
+        private const val AVERAGE_WINDOW_DURATION_MS: Long = 1000
+        private const val DETECTION_THRESHOLD = 0.40f
+        private const val SUPPRESSION_MS = 1500
+        private const val MINIMUM_COUNT = 3
+        private const val HOP_TIMEOUT_MS: Long = 250
+        private const val DEFAULT_VOICE_ACTIVITY_GATE = false
+        private const val SILENCE_LABEL = "_silence_"
+        private const val THREAD_JOIN_TIMEOUT_MS: Long = 1000
+        const val CATCH_UP_THRESHOLD_WINDOWS = 2
+        private val DEFAULT_SMOOTHING = Smoothing.BOXCAR
+    }
+
+    interface Listener {
+        /**
+         * Called on the recognition thread for every command that should change the game.
+         */
+        fun onAction(action: CommandDispatcher.Action)
+
+        /**
+         * The source could not be started or stopped delivering audio; capture has ended.
+         */
+        fun onCaptureFailed(e: IOException)
+
+        /**
+         * Writing the score trace failed; it has been stopped.
+         */
+        fun onScoreTraceFailed(e: IOException)
+    }
+
+    // A second of history lets a backlog of windows be read back for catch-up.
+    private val audioRing = AudioRing(windowLength, sampleRate / 10, sampleRate)
+    private val hopScheduler = HopScheduler(audioRing, sampleRate, DEFAULT_HOP_MS)
+    @Volatile
+    private var hopMs = DEFAULT_HOP_MS
+    @Volatile
+    private var smoothing = DEFAULT_SMOOTHING
+    private val voiceActivityDetector = VoiceActivityDetector(sampleRate)
+    @Volatile
+    private var voiceActivityGate = DEFAULT_VOICE_ACTIVITY_GATE
+    // Each loop runs for as long as the generation it was started in, so a thread that is being
+    // stopped can never keep going alongside its successor.
+    @Volatile
+    private var generation = 0
+    // Kept after a stop until they have actually exited: a capture thread stuck in a read still
+    // holds the source, and no other may be opened alongside it.
+    @Volatile
+    private var captureThread: Thread? = null
+    @Volatile
+    private var recognitionThread: Thread? = null
+    private var running = false
+    // While text to speech is talking, detections are thrown away and the audio is written to the
+    // ring as silence, so the windows after the unmute hold none of it and are heard at once.
+    @Volatile
+    private var muted = false
+    @Volatile
+    private var unmutedAtNanos = 0L
+    @Volatile
+    private var rearmPending = false
+    @Volatile
+    private var lastRearmLatencyNanos = 0L
+    @Volatile
+    private var maxRearmLatencyNanos = 0L
+    @Volatile
+    private lateinit var recognizeCommands: RecognizeCommands
+    private val commandDispatcher = CommandDispatcher(labels, bindings)
+    // Engines with a front end of their own, e.g. features, see the audio as it is captured.
+    private val audioTap = engine as? AudioTap
+    @Volatile
+    private var scoreTrace: ScoreTrace.Writer? = null
+    // Maps ring sequences to milliseconds; moved forward on every start so time never goes back.
+    @Volatile
+    private var clockStartMs = 0L
+    @Volatile
+    private var clockStartSequence = 0L
+    @Volatile
+    private var lastTimeMs = Long.MIN_VALUE
+    @Volatile
+    private var gatedWindows = 0L
+    @Volatile
+    private var batches = 0L
+    @Volatile
+    private var batchedWindows = 0L
+
+    init {
+        // Set up an object to smooth recognition results to increase accuracy.
+        setSmoothing(DEFAULT_SMOOTHING)
+    }
+
+    /**
+     * Pick how model scores are smoothed before detection, see [Smoothing].
+     */
+    fun setSmoothing(smoothing: Smoothing) {
+        this.smoothing = smoothing
+        // The recognition thread wakes with some jitter, so let results a little closer than a hop
+        // through.
+        val minimumTimeBetweenSamplesMs = hopMs / 2
+        recognizeCommands = RecognizeCommands(
+                labels,
+                smoothing.newSmoother(labels.size, AVERAGE_WINDOW_DURATION_MS, minimumTimeBetweenSamplesMs),
+                DETECTION_THRESHOLD,
+                SUPPRESSION_MS,
+                MINIMUM_COUNT,
+                minimumTimeBetweenSamplesMs)
+    }
+
+    /**
+     * How much new audio triggers the next inference. Shorter hops detect commands sooner at the
+     * cost of more inferences per second.
+     */
+    fun setHopMs(hopMs: Long) {
+        this.hopMs = hopMs
+        hopScheduler.setHopMs(hopMs)
+        setSmoothing(smoothing)
+    }
+
+    /**
+     * Skip the model for windows without any speech in them and feed the smoother silence instead.
+     * Off by default: turn it on only once replaying recorded matches with `--vad true` against
+     * `--vad false` and a `--truth` file shows no extra misses. The report counts commands the gate
+     * kept from the model in its gated column.
+     */
+    fun setVoiceActivityGate(enabled: Boolean) {
+        voiceActivityGate = enabled
+    }
+
+    /**
+     * Windows per second of audio actually evaluated; below 1000 / hop when inference falls behind.
+     */
+    val effectiveHopRate: Float
+        get() = hopScheduler.effectiveHopRateHz()
+
+    val windows: Long
+        get() = hopScheduler.windows()
+
+    /**
+     * Samples read from sources so far.
+     */
+    val capturedSamples: Long
+        get() = audioRing.writeSequence()
+
+    val skippedHops: Long
+        get() = hopScheduler.skippedHops()
+
+    /**
+     * Windows that skipped the model because the voice activity gate was closed.
+     */
+    val gatedWindowCount: Long
+        get() = gatedWindows
+
+    /**
+     * Batched invocations run to catch up, and the windows they covered.
+     */
+    val batchCount: Long
+        get() = batches
+
+    val batchedWindowCount: Long
+        get() = batchedWindows
+
+    val speechRatio: Float
+        get() = voiceActivityDetector.speechRatio()
+
+    /**
+     * Time from the end of the last utterance until voice commands were acted on again: a hop or
+     * so, as the muted audio is silence to the model rather than a window to wait out.
+     */
+    val lastRearmLatencyMs: Float
+        get() = lastRearmLatencyNanos / 1e6f
+
+    val maxRearmLatencyMs: Float
+        get() = maxRearmLatencyNanos / 1e6f
+
+    /**
+     * Record every model output to [file] so the session can be replayed offline, replacing any
+     * recording already in progress.
+     */
+    fun startScoreTrace(file: File) {
+        val writer = ScoreTrace.Writer(BufferedOutputStream(FileOutputStream(file)), labels)
+        scoreTrace?.close()
+        scoreTrace = writer
+    }
+
+    fun stopScoreTrace() {
+        scoreTrace?.close()
+        scoreTrace = null
+    }
+
+    fun mute() {
+        muted = true
+    }
+
+    fun unmute() {
+        if (!muted) {
+            return
+        }
+        unmutedAtNanos = System.nanoTime()
+        rearmPending = true
+        muted = false
+    }
+
+    val isMuted: Boolean
+        get() = muted
+
+    /**
+     * Starts capturing from [source] and recognizing, unless already running. The pipeline closes
+     * the source when capture ends, or straight away if it refuses to start: returns false when the
+     * threads of an earlier run have still not exited after a further wait, as the old capture
+     * thread may be blocked in a read on the same device.
+     */
+    @Synchronized
+    fun start(source: AudioSource): Boolean {
+        if (running) {
+            source.close()
+            return true
+        }
+        val recognitionExited = join(recognitionThread)
+        val captureExited = join(captureThread)
+        if (!recognitionExited || !captureExited) {
+            source.close()
+            return false
+        }
+        val startedGeneration = generation
+        clockStartSequence = audioRing.writeSequence()
+        clockStartMs = maxOf(System.currentTimeMillis(), lastTimeMs + 1)
+        val capture = Thread(Runnable { capture(source, startedGeneration) }, "Referee-capture")
+        val recognition = Thread(Runnable { recognize(startedGeneration) }, "Referee-recognition")
+        captureThread = capture
+        recognitionThread = recognition
+        running = true
+        capture.start()
+        recognition.start()
+        return true
+    }
+
+    /**
+     * Stops both threads and waits for them, returning false if either did not finish in time. A
+     * thread that did not is remembered, and [start] waits for it again.
+     */
+    @Synchronized
+    fun stop(): Boolean {
+        running = false
+        ++generation
+        val recognition = recognitionThread
+        val capture = captureThread
+        recognition?.interrupt()
+        capture?.interrupt()
+        // The capture loop notices within one read and releases the source before returning.
+        val recognitionExited = join(recognition)
+        val captureExited = join(capture)
+        if (recognitionExited) {
+            recognitionThread = null
+        }
+        if (captureExited) {
+            captureThread = null
+        }
+        return recognitionExited && captureExited
+    }
+
+    /**
+     * Stops recognition and the score trace and releases the engine. An engine whose recognition
+     * thread did not stop in time is left open rather than freed under that thread.
+     */
+    @Synchronized
+    override fun close() {
+        val stopped = stop()
+        stopScoreTrace()
+        if (stopped) {
+            engine.close()
+        }
+    }
+
+    /**
+     * Waits for capture to end on its own, which only happens once a finite source runs dry.
+     */
+    fun awaitCaptureFinished(timeoutMs: Long): Boolean {
+        val thread = captureThread ?: return true
+        thread.join(timeoutMs)
+        return !thread.isAlive
+    }
+
+    private fun join(thread: Thread?): Boolean {
+        if (thread == null || !thread.isAlive || thread === Thread.currentThread()) {
+            // Stopped from its own loop, e.g. by a listener; it exits once the callback returns.
+            return true
+        }
+        try {
+            thread.join(THREAD_JOIN_TIMEOUT_MS)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        return !thread.isAlive
+    }
+
+    private fun capture(source: AudioSource, startedGeneration: Int) {
+        try {
+            source.use {
+                source.start()
+                val buffer = ShortArray(source.preferredReadLength())
+                // Without a clock to keep to, read no further than the window recognition is
+                // waiting for, so every hop is evaluated however fast the source is.
+                val lockstep = !source.isPaced
+                // Loop, gathering audio data and copying it to a round-robin buffer.
+                while (generation == startedGeneration) {
+                    var length = buffer.size
+                    if (lockstep) {
+                        if (!hopScheduler.awaitConsumer(HOP_TIMEOUT_MS)) {
+                            continue
+                        }
+                        length = minOf(length.toLong(), hopScheduler.samplesUntilNextWindow()).toInt()
+                    }
+                    val mutedBefore = muted
+                    val numberRead = source.read(buffer, 0, length)
+                    if (numberRead < 0) {
+                        break
+                    }
+                    if (mutedBefore || muted) {
+                        // Part of the read may be our own voice.
+                        buffer.fill(0, 0, numberRead)
+                    }
+                    // The recognition thread snapshots the ring without ever holding up this thread.
+                    if (numberRead > 0) {
+                        audioRing.write(buffer, 0, numberRead)
+                        audioTap?.onAudio(buffer, 0, numberRead)
+                        voiceActivityDetector.process(buffer, 0, numberRead)
+                        hopScheduler.onSamplesWritten()
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            if (generation == startedGeneration) {
+                listener.onCaptureFailed(e)
+            }
+        }
+    }
+
+    private fun recognize(startedGeneration: Int) {
+        val outputScores = FloatArray(labels.size)
+        val silenceScores = FloatArray(labels.size)
+        labels.indexOf(SILENCE_LABEL).takeIf { it >= 0 }?.let { silenceScores[it] = 1.0f }
+        val maxBatchSize = engine.maxBatchSize()
+        val batchScores = Array(maxBatchSize) { FloatArray(labels.size) }
+        // Loop, grabbing recorded data and running the recognition model on it.
+        while (generation == startedGeneration) {
+            // Sleep until the capture thread has written a hop of new audio, so the same window
+            // is never evaluated twice.
+            if (!hopScheduler.awaitNextWindow(HOP_TIMEOUT_MS)) {
+                continue
+            }
+            if (maxBatchSize > 1 && catchUp(maxBatchSize, batchScores, silenceScores)) {
+                continue
+            }
+            // The capture thread places data in this round-robin buffer, so take a consistent
+            // copy of the latest window straight into the model input.
+            val windowEnd = engine.load(audioRing)
+            hopScheduler.onWindowTaken(windowEnd)
+            val mutedWindow = muted
+            if (mutedWindow) {
+                // Keep the smoother fed with silence, so it stays full and picks up again on the
+                // first window after the unmute.
+                silenceScores.copyInto(outputScores)
+            } else if (isGated(windowEnd)) {
+                // Nothing but silence and clicks in the window, so spare the model and tell the
+                // smoother it heard silence.
+                silenceScores.copyInto(outputScores)
+                ++gatedWindows
+            } else {
+                // Run the model.
+                engine.run(outputScores)
+            }
+            processScores(outputScores, windowEnd, mutedWindow)
+        }
+    }
+
+    private fun isGated(windowEnd: Long): Boolean {
+        return voiceActivityGate && !voiceActivityDetector.isSpeechWithin(windowEnd, windowLength)
+    }
+
+    /**
+     * Scores the hops that built up behind the last window in one batch, newest last, if there
+     * are enough of them and they are still in the ring. Returns false to fall back to taking
+     * just the latest window.
+     */
+    private fun catchUp(maxBatchSize: Int, batchScores: Array<FloatArray>, silenceScores: FloatArray): Boolean {
+        val lastWindowEnd = hopScheduler.lastWindowEnd()
+        if (lastWindowEnd == Long.MIN_VALUE) {
+            return false
+        }
+        val hopLength = hopScheduler.hopLength()
+        val pendingWindows = (audioRing.writeSequence() - lastWindowEnd) / hopLength
+        if (pendingWindows < CATCH_UP_THRESHOLD_WINDOWS) {
+            return false
+        }
+        // Further behind than one batch covers, the oldest hops are given up on.
+        val count = minOf(pendingWindows, maxBatchSize.toLong()).toInt()
+        val firstEnd = lastWindowEnd + (pendingWindows - count + 1) * hopLength
+        if (!engine.loadBatch(audioRing, firstEnd, hopLength, count)) {
+            return false
+        }
+        val mutedWindows = muted
+        var anyHeard = false
+        for (i in 0 until count) {
+            val windowEnd = firstEnd + i.toLong() * hopLength
+            anyHeard = anyHeard || !mutedWindows && !isGated(windowEnd)
+        }
+        if (anyHeard) {
+            engine.runBatch(count, batchScores)
+            ++batches
+            batchedWindows += count
+        }
+        for (i in 0 until count) {
+            val windowEnd = firstEnd + i.toLong() * hopLength
+            hopScheduler.onWindowTaken(windowEnd)
+            val scores = batchScores[i]
+            if (mutedWindows) {
+                silenceScores.copyInto(scores)
+            } else if (!anyHeard || isGated(windowEnd)) {
+                silenceScores.copyInto(scores)
+                ++gatedWindows
+            }
+            processScores(scores, windowEnd, mutedWindows)
+        }
+        return true
+    }
+
+    private fun processScores(scores: FloatArray, windowEnd: Long, mutedWindow: Boolean) {
+        // Use the smoother to figure out if we've had a real recognition event.
+        val currentTime = clockStartMs + (windowEnd - clockStartSequence) * 1000 / sampleRate
+        lastTimeMs = currentTime
+        try {
+            scoreTrace?.write(scores, currentTime)
+        } catch (e: IOException) {
+            stopScoreTrace()
+            listener.onScoreTraceFailed(e)
+        }
+        val result = recognizeCommands.processLatestResults(scores, currentTime)
+        if (mutedWindow) {
+            return
+        }
+        if (rearmPending) {
+            // The first window after the unmute, within a hop of it.
+            rearmPending = false
+            recordRearmLatency(System.nanoTime() - unmutedAtNanos)
+        }
+        commandDispatcher.dispatch(result, currentTime)?.let { listener.onAction(it) }
+    }
+
+    private fun recordRearmLatency(latencyNanos: Long) {
+        lastRearmLatencyNanos = latencyNanos
+        maxRearmLatencyNanos = maxOf(maxRearmLatencyNanos, latencyNanos)
+    }
+
+    override fun toString(): String {
+        return "windows=$windows skippedHops=$skippedHops gatedWindows=$gatedWindows " +
+                "batches=$batches batchedWindows=$batchedWindows " +
+                "speechRatio=$speechRatio effectiveHopRate=$effectiveHopRate " +
+                "rearmLatencyMs=$lastRearmLatencyMs maxRearmLatencyMs=$maxRearmLatencyMs"
+    }
+}
@@ -16,31 +16,33 @@
 
 package com.sieong.pingpong;
 
-import android.util.Log;
-import android.util.Pair;
-
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
 import java.util.List;
 
 /**
  * Reads in results from an instantaneous audio recognition model and smoothes them over time.
+ *
+ * <p>The smoothing itself is delegated to a {@link ScoreSmoother}; by default a boxcar average over
+ * the averaging window. Each call costs O(labels) and does not allocate once the smoother has
+ * reached its working size.
  */
 public class RecognizeCommands {
     private static final String SILENCE_LABEL = "_silence_";
-    private static final long MINIMUM_TIME_FRACTION = 4;
+    private static final String UNKNOWN_LABEL = "_unknown_";
     // Configuration settings.
     private List<String> labels = new ArrayList<String>();
-    private long averageWindowDurationMs;
     private float detectionThreshold;
     private int suppressionMs;
     private int minimumCount;
     private long minimumTimeBetweenSamplesMs;
     // Working variables.
-    private Deque<Pair<Long, float[]>> previousResults = new ArrayDeque<Pair<Long, float[]>>();
-    private String previousTopLabel;
+    private final ScoreSmoother smoother;
+    private final RecognitionResult result;
+    // Index of the silence label, or -1 if the model has none.
+    private final int silenceIndex;
+    // Index of the unknown-word label, or -1 if the model has none.
+    private final int unknownIndex;
+    private int previousTopIndex;
     private int labelsCount;
     private long previousTopLabelTime;
     private float previousTopLabelScore;
@@ -52,18 +54,46 @@ public class RecognizeCommands {
             int inSuppressionMS,
             int inMinimumCount,
             long inMinimumTimeBetweenSamplesMS) {
+        // Results closer together than the minimum gap are dropped, so the window can only hold
+        // about this many of them.
+        this(inLabels,
+                new BoxcarSmoother(
+                        inLabels.size(),
+                        inAverageWindowDurationMs,
+                        (int) (inAverageWindowDurationMs / Math.max(1, inMinimumTimeBetweenSamplesMS)) + 2),
+                inDetectionThreshold,
+                inSuppressionMS,
+                inMinimumCount,
+                inMinimumTimeBetweenSamplesMS);
+    }
+
+    public RecognizeCommands(
+            List<String> inLabels,
+            ScoreSmoother inSmoother,
+            float inDetectionThreshold,
+            int inSuppressionMS,
+            int inMinimumCount,
+            long inMinimumTimeBetweenSamplesMS) {
         labels = inLabels;
-        averageWindowDurationMs = inAverageWindowDurationMs;
+        smoother = inSmoother;
         detectionThreshold = inDetectionThreshold;
         suppressionMs = inSuppressionMS;
         minimumCount = inMinimumCount;
         labelsCount = inLabels.size();
-        previousTopLabel = SILENCE_LABEL;
+        silenceIndex = inLabels.indexOf(SILENCE_LABEL);
+        unknownIndex = inLabels.indexOf(UNKNOWN_LABEL);
+        previousTopIndex = silenceIndex;
+        result = new RecognitionResult(silenceIndex, SILENCE_LABEL, 0.0f, false);
         previousTopLabelTime = Long.MIN_VALUE;
         previousTopLabelScore = 0.0f;
         minimumTimeBetweenSamplesMs = inMinimumTimeBetweenSamplesMS;
     }
 
+    /**
+     * Folds the latest model output into the smoother and decides whether it amounts to a new
+     * command. The returned result is reused by the next call, so copy out anything that must
+     * outlive it.
+     */
     public RecognitionResult processLatestResults(float[] currentResults, long currentTimeMS) {
         if (currentResults.length != labelsCount) {
             throw new RuntimeException(
@@ -73,127 +103,106 @@ public class RecognizeCommands {
                             + currentResults.length);
         }
 
-        if ((!previousResults.isEmpty()) && (currentTimeMS < previousResults.getFirst().first)) {
+        if ((smoother.size() > 0) && (currentTimeMS < smoother.oldestTimeMs())) {
             throw new RuntimeException(
                     "You must feed results in increasing time order, but received a timestamp of "
                             + currentTimeMS
                             + " that was earlier than the previous one of "
-                            + previousResults.getFirst().first);
+                            + smoother.oldestTimeMs());
         }
 
-        int howManyResults = previousResults.size();
         // Ignore any results that are coming in too frequently.
-        if (howManyResults > 1) {
-            final long timeSinceMostRecent = currentTimeMS - previousResults.getLast().first;
+        if (smoother.size() > 1) {
+            final long timeSinceMostRecent = currentTimeMS - smoother.newestTimeMs();
             if (timeSinceMostRecent < minimumTimeBetweenSamplesMs) {
-                return new RecognitionResult(previousTopLabel, previousTopLabelScore, false);
+                return result.set(previousTopIndex, previousTopLabel(), previousTopLabelScore, false);
             }
         }
 
-        // Add the latest results to the head of the queue.
-        previousResults.addLast(new Pair<Long, float[]>(currentTimeMS, currentResults));
-
-        // Prune any earlier results that are too old for the averaging window.
-        final long timeLimit = currentTimeMS - averageWindowDurationMs;
-        while (previousResults.getFirst().first < timeLimit) {
-            previousResults.removeFirst();
-        }
-
-        howManyResults = previousResults.size();
+        smoother.add(currentResults, currentTimeMS);
 
         // If there are too few results, assume the result will be unreliable and
         // bail.
-        final long earliestTime = previousResults.getFirst().first;
-        final long samplesDuration = currentTimeMS - earliestTime;
-
-        Log.v("Number of Results: ", String.valueOf(howManyResults));
-
-        Log.v(
-                "Duration < WD/FRAC?",
-                String.valueOf((samplesDuration < (averageWindowDurationMs / MINIMUM_TIME_FRACTION))));
-
-        if ((howManyResults < minimumCount)
-            //        || (samplesDuration < (averageWindowDurationMs / MINIMUM_TIME_FRACTION))
-        ) {
-            Log.v("RecognizeResult", "Too few results");
-            return new RecognitionResult(previousTopLabel, 0.0f, false);
+        if (smoother.size() < minimumCount) {
+            return result.set(previousTopIndex, previousTopLabel(), 0.0f, false);
         }
 
-        // Calculate the average score across all the results in the window.
-        float[] averageScores = new float[labelsCount];
-        for (Pair<Long, float[]> previousResult : previousResults) {
-            final float[] scoresTensor = previousResult.second;
-            int i = 0;
-            while (i < scoresTensor.length) {
-                averageScores[i] += scoresTensor[i] / howManyResults;
-                ++i;
+        int currentTopIndex = 0;
+        float currentTopScore = smoother.score(0);
+        for (int i = 1; i < labelsCount; ++i) {
+            final float score = smoother.score(i);
+            if (score > currentTopScore) {
+                currentTopScore = score;
+                currentTopIndex = i;
             }
         }
 
-        // Sort the averaged results in descending score order.
-        ScoreForSorting[] sortedAverageScores = new ScoreForSorting[labelsCount];
-        for (int i = 0; i < labelsCount; ++i) {
-            sortedAverageScores[i] = new ScoreForSorting(averageScores[i], i);
-        }
-        Arrays.sort(sortedAverageScores);
-
-        // See if the latest top score is enough to trigger a detection.
-        final int currentTopIndex = sortedAverageScores[0].index;
-        final String currentTopLabel = labels.get(currentTopIndex);
-        final float currentTopScore = sortedAverageScores[0].score;
         // If we've recently had another label trigger, assume one that occurs too
         // soon afterwards is a bad result.
         long timeSinceLastTop;
-        if (previousTopLabel.equals(SILENCE_LABEL) || (previousTopLabelTime == Long.MIN_VALUE)) {
+        if ((previousTopIndex == silenceIndex) || (previousTopLabelTime == Long.MIN_VALUE)) {
             timeSinceLastTop = Long.MAX_VALUE;
         } else {
             timeSinceLastTop = currentTimeMS - previousTopLabelTime;
         }
+
+        if (smoother.decidesTriggers()) {
+            // The smoother's trigger stands in for the detection threshold, not for suppression.
+            // Silence and unknown words take theirs without it ever counting as a command, and a
+            // trigger taken too soon after the last command is spent, so it cannot fire late.
+            final boolean triggered = smoother.takeTrigger(currentTopIndex);
+            final boolean isNewCommand = triggered
+                    && currentTopIndex != silenceIndex
+                    && currentTopIndex != unknownIndex
+                    && timeSinceLastTop > suppressionMs;
+            if (isNewCommand) {
+                previousTopIndex = currentTopIndex;
+                previousTopLabelTime = currentTimeMS;
+                previousTopLabelScore = currentTopScore;
+            }
+            return result.set(currentTopIndex, labels.get(currentTopIndex), currentTopScore, isNewCommand);
+        }
+
+        // See if the latest top score is enough to trigger a detection.
         boolean isNewCommand;
         if ((currentTopScore > detectionThreshold) && (timeSinceLastTop > suppressionMs)) {
-            previousTopLabel = currentTopLabel;
+            previousTopIndex = currentTopIndex;
             previousTopLabelTime = currentTimeMS;
             previousTopLabelScore = currentTopScore;
             isNewCommand = true;
         } else {
             isNewCommand = false;
         }
-        return new RecognitionResult(currentTopLabel, currentTopScore, isNewCommand);
+        return result.set(currentTopIndex, labels.get(currentTopIndex), currentTopScore, isNewCommand);
+    }
+
+    private String previousTopLabel() {
+        return previousTopIndex < 0 ? SILENCE_LABEL : labels.get(previousTopIndex);
     }
 
     /**
      * Holds information about what's been recognized.
      */
     public static class RecognitionResult {
-        public final String foundCommand;
-        public final float score;
-        public final boolean isNewCommand;
+        /**
+         * Index of {@link #foundCommand} in the labels, or -1 for the initial silence of a model
+         * without a silence label. Lets callers act on a result without comparing strings.
+         */
+        public int labelIndex;
+        public String foundCommand;
+        public float score;
+        public boolean isNewCommand;
+
+        public RecognitionResult(int inLabelIndex, String inFoundCommand, float inScore, boolean inIsNewCommand) {
+            set(inLabelIndex, inFoundCommand, inScore, inIsNewCommand);
+        }
 
-        public RecognitionResult(String inFoundCommand, float inScore, boolean inIsNewCommand) {
+        RecognitionResult set(int inLabelIndex, String inFoundCommand, float inScore, boolean inIsNewCommand) {
+            labelIndex = inLabelIndex;
             foundCommand = inFoundCommand;
             score = inScore;
             isNewCommand = inIsNewCommand;
-        }
-    }
-
-    private static class ScoreForSorting implements Comparable<ScoreForSorting> {
-        public final float score;
-        public final int index;
-
-        public ScoreForSorting(float inScore, int inIndex) {
-            score = inScore;
-            index = inIndex;
-        }
-
-        @Override
-        public int compareTo(ScoreForSorting other) {
-            if (this.score > other.score) {
-                return -1;
-            } else if (this.score < other.score) {
-                return 1;
-            } else {
-                return 0;
-            }
+            return this;
         }
     }
 }
@@ -2,65 +2,91 @@ package com.sieong.pingpong
 
 import android.content.Context
 import android.content.res.AssetManager
-import android.media.AudioFormat
-import android.media.AudioRecord
-import android.media.MediaRecorder
-import android.os.Process
+import android.os.Build
+import android.os.SystemClock
 import android.speech.tts.TextToSpeech
 import android.speech.tts.TextToSpeech.OnInitListener
 import android.speech.tts.UtteranceProgressListener
 import android.util.Log
 import com.sieong.pingpong.Game.PlayerRole
-import com.sieong.pingpong.RecognizeCommands.RecognitionResult
-import org.tensorflow.lite.Interpreter
 import java.io.BufferedReader
+import java.io.Closeable
+import java.io.File
 import java.io.FileInputStream
 import java.io.IOException
 import java.io.InputStreamReader
 import java.nio.MappedByteBuffer
 import java.nio.channels.FileChannel
 import java.util.*
-import java.util.concurrent.locks.ReentrantLock
-import kotlin.math.max
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
-class Referee(context: Context) {
+/**
+ * Holds the game, the recognizer and the speech engine. Building one loads the model, so the app
+ * shares a single instance across activities, see [RefereeApplication].
+ */
+class Referee(context: Context) : Closeable {
 
     companion object {
         private val TAG = Referee::class.java.canonicalName
         private const val SAMPLE_RATE = 16000
         private const val SAMPLE_DURATION_MS = 1000
         private const val RECORDING_LENGTH = (SAMPLE_RATE * SAMPLE_DURATION_MS / 1000)
-        private const val AVERAGE_WINDOW_DURATION_MS: Long = 1000
-        private const val DETECTION_THRESHOLD = 0.40f
-        private const val SUPPRESSION_MS = 1500
-        private const val MINIMUM_COUNT = 3
-        private const val MINIMUM_TIME_BETWEEN_SAMPLES_MS: Long = 30
         private const val LABEL_FILENAME = "file:///android_asset/conv_actions_labels.txt"
         private const val MODEL_FILENAME = "file:///android_asset/conv_actions_frozen.tflite"
+        // Builds of the same model used instead when bundled, in order of preference: a stateful
+        // streaming one that only hears each hop once, then a post-training quantized one.
+        private const val STREAMING_MODEL_FILENAME = "file:///android_asset/conv_actions_streaming.tflite"
+        private const val QUANTIZED_MODEL_FILENAME = "file:///android_asset/conv_actions_quant.tflite"
+        // Read from the files directory if present, else from assets.
+        private const val BINDINGS_FILENAME = "command_bindings.txt"
+        private const val JOURNAL_FILENAME = "game.journal"
+        private const val ARCHIVE_DIRECTORY = "archive"
     }
 
-    private val recordingBuffer = ShortArray(RECORDING_LENGTH)
-    private var recordingOffset = 0
-    private var shouldContinue = true
-    private var shouldContinueRecognition = true
-    private var recordingThread: Thread? = null
-    private var recognitionThread: Thread? = null
     private val labels = mutableListOf<String>()
     private val displayedLabels = mutableListOf<String>()
-    private lateinit var recognizeCommands: RecognizeCommands
-    private var tfLite: Interpreter? = null
-    private val recordingBufferLock = ReentrantLock()
-
-    private var game = Game()
+    // Null until the engine has been loaded, tuned and warmed up off the main thread.
+    @Volatile
+    private var pipeline: RecognitionPipeline? = null
+    // Pipeline settings made while it was still being built, applied in order once it is.
+    private val pendingSettings = mutableListOf<(RecognitionPipeline) -> Unit>()
+    private val initExecutor: ExecutorService = Executors.newSingleThreadExecutor { Thread(it, "Referee-init") }
+
+    // Every point goes to the journal, so a game in progress outlives the process.
+    private val journal = openJournal(context)
+    private val game = Game(journal)
+    private val winProbability = WinProbability(game.rules)
+    private val statistics = MatchStatistics()
+    // Each finished match goes here when the next one starts.
+    private val archive = openArchive(context)
+    // Nobody picks players yet, so every match is between the same two.
+    private var hostPlayer = 1
+    private var guestPlayer = 2
     private var listener: Listener? = null
+    @Volatile
     private var voiceCommandMode = false
     private var gameSummaryMode = false
     private var textToSpeech: TextToSpeech? = null
-    private var lastScoreTimestamp: Long = -1
+    private var textToSpeechReady = false
+    @Volatile
+    private var closed = false
+
+    /**
+     * Where loading the model has got to. Only [Listener.EngineStatus.READY] recognizes commands.
+     */
+    @Volatile
+    var engineStatus = Listener.EngineStatus.INITIALIZING
+        private set
 
     init {
-        setupTensorFlowLite(context)
-        initTextToSpeech(context)
+        // Outlives any one activity, so never holds on to one.
+        val appContext = context.applicationContext
+        initTextToSpeech(appContext)
+        // Reading the model, tuning the interpreter and its first inference take long enough to
+        // stall the first frame, so they happen on a thread of their own.
+        initExecutor.execute { setupTensorFlowLite(appContext) }
+        initExecutor.shutdown()
     }
 
     private fun initTextToSpeech(context: Context) {
@@ -71,62 +97,182 @@ class Referee(context: Context) {
                 textToSpeech?.setOnUtteranceProgressListener(object : UtteranceProgressListener() {
                     override fun onStart(utteranceId: String) {
                         Log.d(TAG, "UtteranceProgressListener: onStart")
-                        if (voiceCommandMode) {
-                            toggleVoiceCommandMode(false)
-                        }
+                        mute()
                     }
 
                     override fun onDone(utteranceId: String) {
                         Log.d(TAG, "UtteranceProgressListener: onDone")
-                        if (voiceCommandMode) {
-                            toggleVoiceCommandMode(true)
-                        }
+                        unmute()
                     }
 
                     override fun onError(utteranceId: String) {
                         Log.d(TAG, "UtteranceProgressListener: onError")
+                        unmute()
                     }
                 })
-                speak("Initialization finished.")
+                synchronized(this) {
+                    textToSpeechReady = true
+                }
+                announceReady()
             }
         })
     }
 
+    /**
+     * Says so once both the speech engine and the recognizer are up, whichever comes last.
+     */
+    private fun announceReady() {
+        synchronized(this) {
+            if (!textToSpeechReady || pipeline == null) {
+                return
+            }
+        }
+        speak("Initialization finished.")
+    }
+
     private fun setupTensorFlowLite(context: Context) {
+        val newPipeline = try {
+            createPipeline(context)
+        } catch (e: Exception) {
+            Log.e(TAG, "setupTensorFlowLite - could not load the model", e)
+            setEngineStatus(Listener.EngineStatus.FAILED)
+            return
+        }
+        synchronized(this) {
+            if (closed) {
+                newPipeline.close()
+                return
+            }
+            pendingSettings.forEach { it(newPipeline) }
+            pendingSettings.clear()
+            pipeline = newPipeline
+            // Voice commands asked for while loading start now.
+            if (voiceCommandMode) {
+                newPipeline.start(AudioRecordSource(SAMPLE_RATE))
+            }
+        }
+        setEngineStatus(Listener.EngineStatus.READY)
+        notifyVoiceCommandModeStatus()
+        announceReady()
+    }
+
+    private fun openJournal(context: Context): GameJournal? = try {
+        GameJournal.open(File(context.applicationContext.filesDir, JOURNAL_FILENAME))
+    } catch (e: IOException) {
+        Log.e(TAG, "openJournal - keeping the score in memory only", e)
+        null
+    }
+
+    private fun openArchive(context: Context): MatchArchive? = try {
+        MatchArchive.open(File(context.applicationContext.filesDir, ARCHIVE_DIRECTORY))
+    } catch (e: IOException) {
+        Log.e(TAG, "openArchive - matches will not be kept", e)
+        null
+    }
+
+    @Throws(IOException::class)
+    private fun createPipeline(context: Context): RecognitionPipeline {
         // Load the labels for the model, but only display those that don't start 
         // with an underscore.
         val actualLabelFilename = LABEL_FILENAME.split("file:///android_asset/").dropLastWhile { it.isEmpty() }.toTypedArray()[1]
         Log.i(TAG, "Reading labels from: $actualLabelFilename")
-        val br: BufferedReader?
-        try {
-            br = BufferedReader(InputStreamReader(context.assets.open(actualLabelFilename)))
-            var line: String = ""
-            while (br.readLine()?.also { line = it } != null) {
-                labels.add(line)
-                if (line[0] != '_') {
-                    displayedLabels.add(line.substring(0, 1).toUpperCase() + line.substring(1))
-                }
+        val br = BufferedReader(InputStreamReader(context.assets.open(actualLabelFilename)))
+        var line: String = ""
+        while (br.readLine()?.also { line = it } != null) {
+            labels.add(line)
+            if (line[0] != '_') {
+                displayedLabels.add(line.substring(0, 1).toUpperCase() + line.substring(1))
             }
-            br.close()
-        } catch (e: IOException) {
-            throw RuntimeException("Problem reading label file!", e)
         }
-        // Set up an object to smooth recognition results to increase accuracy.
-        recognizeCommands = RecognizeCommands(
-                labels,
-                AVERAGE_WINDOW_DURATION_MS,
-                DETECTION_THRESHOLD,
-                SUPPRESSION_MS,
-                MINIMUM_COUNT,
-                MINIMUM_TIME_BETWEEN_SAMPLES_MS)
-        val actualModelFilename = MODEL_FILENAME.split("file:///android_asset/").dropLastWhile { it.isEmpty() }.toTypedArray()[1]
-        try {
-            tfLite = Interpreter(loadModelFile(context.assets, actualModelFilename))
+        br.close()
+        val actualModelFilename = chooseModelFile(context.assets)
+        Log.i(TAG, "Loading model from: $actualModelFilename")
+        val factory = TfLiteEngineFactory(
+                loadModelFile(context.assets, actualModelFilename), RECORDING_LENGTH, SAMPLE_RATE, labels.size)
+        // Times the interpreter set-ups on first run and keeps the fastest for this device.
+        val tuner = EngineTuner(factory, SharedPreferencesTuningStore(context),
+                "$actualModelFilename@${Build.FINGERPRINT}", RECORDING_LENGTH, SAMPLE_RATE, labels.size)
+        val tuning = tuner.select(EngineConfig.candidates(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1))
+        Log.i(TAG, "Inference engine: ${tuning.config} " +
+                tuning.timingsNanos.entries.joinToString { "${it.key}=${it.value / 1000} us" })
+        val bindings = try {
+            warmUp(tuning.engine)
+            loadBindings(context)
         } catch (e: Exception) {
-            throw RuntimeException(e)
+            // Nothing owns the engine until the pipeline is built, so release the interpreter and
+            // its delegate here.
+            tuning.engine.close()
+            throw e
+        }
+        Log.i(TAG, "Command bindings: $bindings")
+        return RecognitionPipeline(labels, tuning.engine, SAMPLE_RATE, RECORDING_LENGTH, object : RecognitionPipeline.Listener {
+            override fun onAction(action: CommandDispatcher.Action) {
+                Log.v(TAG, "recognize - $action")
+                when (action) {
+                    CommandDispatcher.Action.HOST_POINT -> hostScored(MatchStatistics.Source.VOICE)
+                    CommandDispatcher.Action.GUEST_POINT -> guestScored(MatchStatistics.Source.VOICE)
+                    CommandDispatcher.Action.UNDO -> cancelLastPoint()
+                    CommandDispatcher.Action.RESTART -> restartGame()
+                    CommandDispatcher.Action.ANNOUNCE_SCORE -> announceGameStatus()
+                }
+            }
+
+            override fun onCaptureFailed(e: IOException) {
+                Log.e(TAG, "record - capture failed", e)
+            }
+
+            override fun onScoreTraceFailed(e: IOException) {
+                Log.e(TAG, "recognize - score trace failed, stopping it", e)
+            }
+        }, bindings)
+    }
+
+    /**
+     * A venue can remap words by dropping its own bindings file into the files directory; one that
+     * cannot be read or names words the model does not know is ignored in favour of the bundled
+     * file.
+     */
+    @Throws(IOException::class)
+    private fun loadBindings(context: Context): Map<String, CommandDispatcher.Action> {
+        val override = File(context.filesDir, BINDINGS_FILENAME)
+        if (override.exists()) {
+            try {
+                val bindings = InputStreamReader(FileInputStream(override)).use { CommandDispatcher.readBindings(it) }
+                val unknown = bindings.keys.filterNot { it in labels }
+                if (unknown.isEmpty()) {
+                    return bindings
+                }
+                Log.e(TAG, "loadBindings - ignoring $override, not labels of the model: $unknown")
+            } catch (e: IOException) {
+                Log.e(TAG, "loadBindings - ignoring $override", e)
+            } catch (e: IllegalArgumentException) {
+                Log.e(TAG, "loadBindings - ignoring $override", e)
+            }
         }
-        tfLite?.resizeInput(0, intArrayOf(RECORDING_LENGTH, 1))
-        tfLite?.resizeInput(1, intArrayOf(1))
+        return InputStreamReader(context.assets.open(BINDINGS_FILENAME)).use { CommandDispatcher.readBindings(it) }
+    }
+
+    /**
+     * Runs the engine once on silence, so tensor allocation and delegate preparation are paid for
+     * here rather than on the first command. A stored tuning skips the timing runs that would
+     * otherwise have done it.
+     */
+    private fun warmUp(engine: InferenceEngine) {
+        val start = System.nanoTime()
+        engine.load(AudioRing(RECORDING_LENGTH, RECORDING_LENGTH))
+        engine.run(FloatArray(labels.size))
+        Log.i(TAG, "Warm-up inference: ${(System.nanoTime() - start) / 1000} us")
+    }
+
+    /**
+     * The cheapest model the build ships: streaming, else quantized, else the float model.
+     */
+    @Throws(IOException::class)
+    private fun chooseModelFile(assets: AssetManager): String {
+        val bundled = assets.list("")?.toSet() ?: emptySet()
+        val filenames = listOf(STREAMING_MODEL_FILENAME, QUANTIZED_MODEL_FILENAME, MODEL_FILENAME)
+                .map { it.split("file:///android_asset/").dropLastWhile { part -> part.isEmpty() }.toTypedArray()[1] }
+        return filenames.firstOrNull { it in bundled } ?: filenames.last()
     }
 
     @Throws(IOException::class)
@@ -139,33 +285,163 @@ class Referee(context: Context) {
         return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength)
     }
 
+    /**
+     * Pick how model scores are smoothed before detection, see [Smoothing].
+     */
+    fun setSmoothing(smoothing: Smoothing) {
+        withPipeline { it.setSmoothing(smoothing) }
+    }
+
+    /**
+     * How much new audio triggers the next inference. Shorter hops detect commands sooner at the
+     * cost of more inferences per second.
+     */
+    fun setHopMs(hopMs: Long) {
+        withPipeline { it.setHopMs(hopMs) }
+    }
+
+    /**
+     * Skip the model for windows without any speech in them and feed the smoother silence instead.
+     */
+    fun setVoiceActivityGate(enabled: Boolean) {
+        withPipeline { it.setVoiceActivityGate(enabled) }
+    }
+
+    /**
+     * Applies [setting] now if the pipeline is up, or as soon as it is.
+     */
+    private fun withPipeline(setting: (RecognitionPipeline) -> Unit) {
+        synchronized(this) {
+            val current = pipeline
+            if (current == null) {
+                pendingSettings.add(setting)
+                return
+            }
+            setting(current)
+        }
+    }
+
+    /**
+     * Windows per second of audio actually evaluated; below 1000 / hop when inference falls behind.
+     */
+    val effectiveHopRate: Float
+        get() = pipeline?.effectiveHopRate ?: 0.0f
+
+    /**
+     * Record every model output to [file] so the session can be replayed offline, replacing any
+     * recording already in progress. Starts with the pipeline if that is still loading.
+     */
+    fun startScoreTrace(file: File) {
+        withPipeline { it.startScoreTrace(file) }
+    }
+
+    fun stopScoreTrace() {
+        withPipeline { it.stopScoreTrace() }
+    }
+
+    /**
+     * Time from the end of the last utterance until voice commands were acted on again.
+     */
+    val lastRearmLatencyMs: Float
+        get() = pipeline?.lastRearmLatencyMs ?: 0.0f
+
+    val maxRearmLatencyMs: Float
+        get() = pipeline?.maxRearmLatencyMs ?: 0.0f
+
+    /**
+     * Turning voice commands on before the engine is ready remembers the request; recognition
+     * starts as soon as loading finishes, unless it has been turned off again by then.
+     */
     fun setVoiceCommandMode(mode: Boolean) {
-        voiceCommandMode = mode
-        toggleVoiceCommandMode(mode)
+        synchronized(this) {
+            voiceCommandMode = mode
+            val current = pipeline ?: return@synchronized
+            if (mode) {
+                if (!current.start(AudioRecordSource(SAMPLE_RATE))) {
+                    // The last capture thread still has the microphone; leave voice commands off
+                    // rather than open it twice.
+                    Log.w(TAG, "setVoiceCommandMode - audio threads of the last run still alive")
+                    voiceCommandMode = false
+                }
+            } else {
+                if (!current.stop()) {
+                    Log.w(TAG, "setVoiceCommandMode - audio threads did not stop in time")
+                }
+                Log.v(TAG, "End recognition: $current")
+            }
+        }
+        notifyVoiceCommandModeStatus()
     }
 
     fun setGameSummaryMode(mode: Boolean) {
         gameSummaryMode = mode
     }
 
-    fun setListener(l: Listener) {
+    /**
+     * Also brings [l] up to date with the game and the recognizer, which may have been running
+     * long before it was attached. Pass null to detach, e.g. when the activity goes away.
+     */
+    fun setListener(l: Listener?) {
         listener = l
+        if (l != null) {
+            val score = game.score
+            l.onGameUpdated(score, winProbability.chances(score))
+            l.onEngineStatus(engineStatus)
+            notifyVoiceCommandModeStatus()
+        }
+    }
+
+    private fun setEngineStatus(status: Listener.EngineStatus) {
+        engineStatus = status
+        listener?.onEngineStatus(status)
     }
 
-    fun hostScored() {
-        game.hostScores()
-        listener?.onGameUpdated(game)
+    /**
+     * The match statistics as of the last change, cheap enough to poll.
+     */
+    val matchStatistics: MatchStatistics.Snapshot
+        get() = statistics.snapshot
+
+    @JvmOverloads
+    fun hostScored(source: MatchStatistics.Source = MatchStatistics.Source.BUTTON) {
+        scored(PlayerRole.HOST, source)
+    }
+
+    @JvmOverloads
+    fun guestScored(source: MatchStatistics.Source = MatchStatistics.Source.BUTTON) {
+        scored(PlayerRole.GUEST, source)
+    }
+
+    private fun scored(winner: PlayerRole, source: MatchStatistics.Source) {
+        val before = game.score
+        val score = if (winner == PlayerRole.HOST) game.hostScores() else game.guestScores()
+        if (score.isNewerThan(before)) {
+            // Should the other thread score in between, the serve is a point out, which an
+            // estimate can stand.
+            winProbability.onPoint(before.whoShouldServeNext(), winner)
+            statistics.onPoint(before.whoShouldServeNext(), winner, source, SystemClock.elapsedRealtime())
+        }
+        notifyGameUpdated(score)
         if (gameSummaryMode) {
-            announceGameStatus()
+            announceGameStatus(score)
         }
     }
 
-    private fun announceGameStatus() {
-        var message = game.toString()
-        message += if (game.isGameOver()) {
-            "Game is over."
-        } else {
-            if (game.whoShouldServeNext() === PlayerRole.HOST) "Host serves." else "Guest serves."
+    private fun notifyGameUpdated(score: Score) {
+        val l = listener ?: return
+        l.onGameUpdated(score, winProbability.chances(score))
+    }
+
+    private fun announceGameStatus(score: Score = game.score) {
+        var message = score.toString()
+        if (score.rules.bestOf > 1) {
+            message += "Games ${score.gamesHost} to ${score.gamesGuest}."
+        }
+        message += when {
+            score.isMatchOver() && score.rules.bestOf > 1 -> "Match is over."
+            score.isGameOver() -> "Game is over."
+            score.whoShouldServeNext() === PlayerRole.HOST -> "Host serves."
+            else -> "Guest serves."
         }
         speak(message)
     }
@@ -175,239 +451,126 @@ class Referee(context: Context) {
         textToSpeech?.speak(words, TextToSpeech.QUEUE_FLUSH, null, utteranceId)
     }
 
-    fun guestScored() {
-        game.guestScores()
-        listener?.onGameUpdated(game)
-        if (gameSummaryMode) {
-            announceGameStatus()
-        }
-    }
-
     fun cancelLastPoint() {
-        game.cancelLastPoint()
-        listener?.onGameUpdated(game)
+        val before = game.score
+        val score = game.cancelLastPoint()
+        if (score.isNewerThan(before)) {
+            winProbability.onUndo()
+            statistics.onUndo()
+        }
+        notifyGameUpdated(score)
         if (gameSummaryMode) {
             speak("Revert last point.")
-            announceGameStatus()
+            announceGameStatus(score)
         }
     }
 
+    /**
+     * Who the following matches are archived under, see [MatchArchive].
+     */
+    fun setPlayers(host: Int, guest: Int) {
+        require(host != guest) { "Players must differ" }
+        hostPlayer = host
+        guestPlayer = guest
+    }
+
     fun restartGame() {
-        game.reset()
-        listener?.onGameUpdated(game)
+        archiveMatch()
+        val score = game.reset()
+        winProbability.onReset()
+        statistics.onReset()
+        notifyGameUpdated(score)
         if (gameSummaryMode) {
             speak("Game restarted.")
         }
     }
 
-    private fun toggleVoiceCommandMode(toggle: Boolean) {
-        if (!voiceCommandMode) {
-            Log.e(TAG, " toggleVoiceCommandMode: voiceCommandMode is disabled so no need to toggle")
+    /**
+     * Keeps the points the statistics have seen, if the match was played out; one abandoned or
+     * restarted by mistake would count as lost for both players. A match restored from the journal
+     * after a restart is archived from that point on.
+     */
+    private fun archiveMatch() {
+        val current = archive ?: return
+        val score = game.score
+        if (!score.isMatchOver()) {
             return
         }
-
-        if (toggle) {
-            startRecording()
-            startRecognition()
-
-        } else {
-            stopRecognition()
-            stopRecording()
-        }
-
-        if (voiceCommandMode && toggle) {
-            listener?.onVoiceCommandModeStatus(Listener.VoiceCommandModeStatus.ENABLED)
-
-        } else if (voiceCommandMode && !toggle) {
-            listener?.onVoiceCommandModeStatus(Listener.VoiceCommandModeStatus.PAUSED)
-
-        } else if (!voiceCommandMode && !toggle) {
-            listener?.onVoiceCommandModeStatus(Listener.VoiceCommandModeStatus.DISABLED)
-        }
-    }
-
-    @Synchronized
-    fun startRecording() {
-        Log.v(TAG, "startRecording")
-        if (recordingThread != null) {
+        val points = statistics.points()
+        if (points.timesMs.isEmpty()) {
             return
         }
-        shouldContinue = true
-        recordingThread = Thread(Runnable { record() })
-        recordingThread?.start()
-    }
-
-    private fun record() {
-        Log.v(TAG, "record 1")
-        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO)
-        // Estimate the buffer size we'll need for this device.
-        var bufferSize = AudioRecord.getMinBufferSize(
-                SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT)
-        if (bufferSize == AudioRecord.ERROR || bufferSize == AudioRecord.ERROR_BAD_VALUE) {
-            bufferSize = SAMPLE_RATE * 2
+        // Point times are on the clock since boot; the archive wants dates.
+        val toWallClock = System.currentTimeMillis() - SystemClock.elapsedRealtime()
+        for (i in points.timesMs.indices) {
+            points.timesMs[i] += toWallClock
         }
-        val audioBuffer = ShortArray(bufferSize / 2)
-        val record = AudioRecord(
-                MediaRecorder.AudioSource.DEFAULT,
-                SAMPLE_RATE,
-                AudioFormat.CHANNEL_IN_MONO,
-                AudioFormat.ENCODING_PCM_16BIT,
-                bufferSize)
-        if (record.state != AudioRecord.STATE_INITIALIZED) {
-            Log.e(TAG, "Audio Record can't initialize!")
-            return
-        }
-        record.startRecording()
-        Log.v(TAG, "record 2")
-        // Loop, gathering audio data and copying it to a round-robin buffer.
-        while (shouldContinue) {
-            val numberRead = record.read(audioBuffer, 0, audioBuffer.size)
-            val maxLength: Int = recordingBuffer.size
-            val newRecordingOffset: Int = recordingOffset + numberRead
-            val secondCopyLength = max(0, newRecordingOffset - maxLength)
-            val firstCopyLength = numberRead - secondCopyLength
-            // We store off all the data for the recognition thread to access. The ML
-            // thread will copy out of this buffer into its own, while holding the
-            // lock, so this should be thread safe.
-            recordingBufferLock.lock()
-            try {
-                System.arraycopy(audioBuffer, 0, recordingBuffer, recordingOffset, firstCopyLength)
-                System.arraycopy(audioBuffer, firstCopyLength, recordingBuffer, 0, secondCopyLength)
-                recordingOffset = newRecordingOffset % maxLength
-            } finally {
-                recordingBufferLock.unlock()
-            }
+        try {
+            current.append(points.timesMs[0], hostPlayer, guestPlayer, score.rules, score.gamesHost, score.gamesGuest, points)
+        } catch (e: IOException) {
+            Log.e(TAG, "archiveMatch - match not kept", e)
+        } catch (e: IllegalArgumentException) {
+            // The clock was set back since the last match.
+            Log.e(TAG, "archiveMatch - match not kept", e)
         }
-        record.stop()
-        record.release()
     }
 
-    @Synchronized
-    fun startRecognition() {
-        Log.v(TAG, "startRecognition")
-        if (recognitionThread != null) {
-            return
-        }
-        shouldContinueRecognition = true
-        recognitionThread = Thread(Runnable { recognize() })
-        recognitionThread?.start()
-    }
-
-    private fun recognize() {
-        Log.v(TAG, "recognize")
-        val inputBuffer = ShortArray(RECORDING_LENGTH)
-        val floatInputBuffer = Array(RECORDING_LENGTH) { FloatArray(1) }
-        val outputScores = Array(1) { FloatArray(labels.size) }
-        val sampleRateList = intArrayOf(SAMPLE_RATE)
-        // Loop, grabbing recorded data and running the recognition model on it.
-        while (shouldContinueRecognition) {
-            // The recording thread places data in this round-robin buffer, so lock to
-            // make sure there's no writing happening and then copy it to our own
-            // local version.
-            recordingBufferLock.lock()
-            try {
-                val maxLength: Int = recordingBuffer.size
-                val firstCopyLength: Int = maxLength - recordingOffset
-                val secondCopyLength: Int = recordingOffset
-                System.arraycopy(recordingBuffer, recordingOffset, inputBuffer, 0, firstCopyLength)
-                System.arraycopy(recordingBuffer, 0, inputBuffer, firstCopyLength, secondCopyLength)
-            } finally {
-                recordingBufferLock.unlock()
-            }
-            // We need to feed in float values between -1.0f and 1.0f, so divide the
-            // signed 16-bit inputs.
-            for (i in 0 until RECORDING_LENGTH) {
-                floatInputBuffer[i][0] = inputBuffer[i] / 32767.0f
-            }
-            val inputArray = arrayOf(floatInputBuffer, sampleRateList)
-            val outputMap: MutableMap<Int, Any> = HashMap()
-            outputMap[0] = outputScores
-            // Run the model.
-            tfLite?.runForMultipleInputsOutputs(inputArray, outputMap)
-            // Use the smoother to figure out if we've had a real recognition event.
-            val currentTime = System.currentTimeMillis()
-            val result: RecognitionResult = recognizeCommands.processLatestResults(outputScores[0], currentTime)
-
-            // If we do have a new command, highlight the right list entry.
-            if (!result.foundCommand.startsWith("_") && result.isNewCommand) {
-                var labelIndex = -1
-                for (i in labels.indices) {
-                    if (labels[i] == result.foundCommand) {
-                        labelIndex = i
-                    }
-                }
-                Log.v(TAG, "recognize - new command index=" + (labelIndex - 2))
-                when (labelIndex - 2) {
-                    0 -> {
-                        Log.d(TAG, "recognize - Yes")
-                        if (!isTooSoonForAnotherScore()) {
-                            hostScored()
-                            lastScoreTimestamp = System.currentTimeMillis()
-                        } else {
-                            Log.d(TAG, " recognize- Too soon for another score. Ignoring.")
-                        }
-                    }
-                    1 -> Log.d(TAG, "recognize - No")
-                    2 -> Log.d(TAG, "recognize - Up")
-                    3 -> Log.d(TAG, "recognize - Down")
-                    4 -> Log.d(TAG, "recognize - Left")
-                    5 -> Log.d(TAG, "recognize - Right")
-                    6 -> Log.d(TAG, "recognize - On")
-                    7 -> Log.d(TAG, "recognize - Off")
-                    8 -> {
-                        Log.d(TAG, "recognize - Stop")
-                        cancelLastPoint()
-                    }
-                    9 -> {
-                        Log.d(TAG, "recognize - Go")
-                        if (!isTooSoonForAnotherScore()) {
-                            guestScored()
-                            lastScoreTimestamp = System.currentTimeMillis()
-                        } else {
-                            Log.d(TAG, " recognize- Too soon for another score. Ignoring.")
-                        }
-                    }
-                }
-            }
-
-            try { // We don't need to run too frequently, so snooze for a bit.
-                Thread.sleep(MINIMUM_TIME_BETWEEN_SAMPLES_MS)
-            } catch (e: InterruptedException) { // Ignore
-            }
+    /**
+     * Stops recognition, frees the interpreter and the speech engine and syncs the game journal
+     * and the match archive. A model still loading is freed as soon as it is done.
+     */
+    override fun close() {
+        listener = null
+        synchronized(this) {
+            closed = true
+            pendingSettings.clear()
+            pipeline?.close()
+            pipeline = null
         }
-        Log.v(TAG, "End recognition")
+        textToSpeech?.shutdown()
+        textToSpeech = null
+        journal?.close()
+        archive?.close()
     }
 
-    private fun isTooSoonForAnotherScore(): Boolean {
-        val now = System.currentTimeMillis()
-        val duration = now - lastScoreTimestamp
-        Log.d(TAG, " isTooSoonForAnotherScore - duration = $duration")
-        return duration < 6000
+    private fun mute() {
+        val current = pipeline ?: return
+        current.mute()
+        notifyVoiceCommandModeStatus()
     }
 
-    @Synchronized
-    fun stopRecording() {
-        if (recordingThread == null) {
+    private fun unmute() {
+        val current = pipeline ?: return
+        if (!current.isMuted) {
             return
         }
-        shouldContinue = false
-        recordingThread = null
+        current.unmute()
+        notifyVoiceCommandModeStatus()
     }
 
-    @Synchronized
-    fun stopRecognition() {
-        if (recognitionThread == null) {
-            return
-        }
-        shouldContinueRecognition = false
-        recognitionThread = null
+    private fun notifyVoiceCommandModeStatus() {
+        val current = pipeline
+        listener?.onVoiceCommandModeStatus(when {
+            !voiceCommandMode -> Listener.VoiceCommandModeStatus.DISABLED
+            current == null || current.isMuted -> Listener.VoiceCommandModeStatus.PAUSED
+            else -> Listener.VoiceCommandModeStatus.ENABLED
+        })
     }
 
+    /**
+     * Callbacks come from whichever thread caused them: the main thread, the engine loader, the
+     * recognizer or the speech engine.
+     */
     interface Listener {
-        fun onGameUpdated(game: Game)
+        fun onGameUpdated(score: Score, chances: WinProbability.Chances)
         fun onVoiceCommandModeStatus(status: VoiceCommandModeStatus)
+        fun onEngineStatus(status: EngineStatus)
         enum class VoiceCommandModeStatus {
             ENABLED, DISABLED, PAUSED
         }
+
+        enum class EngineStatus {
+            INITIALIZING, READY, FAILED
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.sieong.pingpong
+
+import android.app.Application
+
+/**
+ * Keeps one [Referee], and with it the interpreter, labels, speech engine and game in progress,
+ * alive across activity restarts such as rotation.
+ */
+class RefereeApplication : Application() {
+
+    companion object {
+        // Long enough for an activity to be destroyed and created again.
+        private const val REFEREE_GRACE_MS: Long = 5000
+    }
+
+    private val referee = SharedResource(REFEREE_GRACE_MS, { Referee(this) })
+
+    /**
+     * The shared referee; pair with [releaseReferee].
+     */
+    fun acquireReferee(): Referee = referee.acquire()
+
+    fun releaseReferee() {
+        referee.release()
+    }
+}
@@ -0,0 +1,199 @@
+package com.sieong.pingpong
+
+import com.sieong.pingpong.Game.PlayerRole
+
+/**
+ * How a match is played: points to win a game, serves per turn, best of how many games, singles
+ * or doubles. The rules are compiled up front into tables over every state a match can be in, so
+ * a [Game] answers who serves, who receives, whether it is over and what to announce with array
+ * lookups, and moves to its next state with one more.
+ *
+ * A state is the point score within the game together with the games won. Scores in a game past
+ * deuce repeat with a period of four points, so the long tail of deuce folds into a handful of
+ * states and the tables stay small: a few hundred entries for a single game to 11.
+ *
+ * Games are won by two clear points once a side reaches [pointsToWin]; from deuce the serve
+ * changes after every point. In doubles the order of service follows the usual rotation, with
+ * the pair that received first serving first in the next game. The swap of receiver when ends
+ * change in the deciding game is not modelled.
+ */
+class RuleSet @JvmOverloads constructor(
+        val pointsToWin: Int,
+        val servesPerTurn: Int,
+        val bestOf: Int = 1,
+        val doubles: Boolean = false
+) {
+    companion object {
+        @JvmField
+        val ELEVEN_POINT_SINGLES = RuleSet(11, 2)
+
+        @JvmField
+        val TWENTY_ONE_POINT_SINGLES = RuleSet(21, 5)
+
+        /**
+         * Most games a side can need to win, bounded by the bits [Score] keeps for it.
+         */
+        const val MAX_GAMES_TO_WIN = 7
+
+        private const val GAME_OVER = 1
+        private const val MATCH_OVER = 2
+        // Past deuce: lead of -2 to 2, times points played since deuce modulo 4.
+        private const val DEUCE_STATES = 5 * 4
+        private val PLAYERS = Player.values()
+        private val PHRASES = Phrase.values()
+        // Order of service in doubles, for games the host and the guest serve first.
+        private val HOST_ROTATION = arrayOf(Player.HOST, Player.GUEST, Player.HOST_PARTNER, Player.GUEST_PARTNER)
+        private val GUEST_ROTATION = arrayOf(Player.GUEST, Player.HOST, Player.GUEST_PARTNER, Player.HOST_PARTNER)
+    }
+
+    enum class Player(val side: PlayerRole) {
+        HOST(PlayerRole.HOST), GUEST(PlayerRole.GUEST), HOST_PARTNER(PlayerRole.HOST), GUEST_PARTNER(PlayerRole.GUEST)
+    }
+
+    /**
+     * What to announce for a state, beyond the bare score.
+     */
+    enum class Phrase { SCORE, DEUCE, EVEN, HOST_ADVANTAGE, GUEST_ADVANTAGE }
+
+    val gamesToWin = bestOf / 2 + 1
+
+    private val deuceLength = 2 * (pointsToWin - 1)
+    private val gridSize = pointsToWin + 1
+    private val pointStates = gridSize * gridSize + DEUCE_STATES
+
+    /**
+     * Number of states in the tables.
+     */
+    val stateCount: Int
+
+    private val nextOnHost: IntArray
+    private val nextOnGuest: IntArray
+    private val flags: ByteArray
+    private val servers: ByteArray
+    private val receivers: ByteArray
+    private val phrases: ByteArray
+
+    init {
+        require(pointsToWin >= 2 && servesPerTurn >= 1 && deuceLength % servesPerTurn == 0) {
+            "Serves must change exactly at deuce"
+        }
+        require(bestOf % 2 == 1 && gamesToWin <= MAX_GAMES_TO_WIN) { "Matches are best of an odd number, up to 13" }
+        stateCount = pointStates * (gamesToWin + 1) * (gamesToWin + 1)
+        nextOnHost = IntArray(stateCount)
+        nextOnGuest = IntArray(stateCount)
+        flags = ByteArray(stateCount)
+        servers = ByteArray(stateCount)
+        receivers = ByteArray(stateCount)
+        phrases = ByteArray(stateCount)
+        for (gamesHost in 0..gamesToWin) {
+            for (gamesGuest in 0..gamesToWin) {
+                for (point in 0 until pointStates) {
+                    compile(point, gamesHost, gamesGuest)
+                }
+            }
+        }
+    }
+
+    /**
+     * The state for a score within the current game and the games won so far. A game just won
+     * keeps its final score, already counted in the games, until the next point starts a new one.
+     */
+    fun stateOf(host: Int, guest: Int, gamesHost: Int, gamesGuest: Int): Int {
+        val point = if (host <= pointsToWin && guest <= pointsToWin) {
+            host * gridSize + guest
+        } else {
+            gridSize * gridSize + (host - guest + 2) * 4 + ((host + guest - deuceLength) and 3)
+        }
+        return (gamesHost * (gamesToWin + 1) + gamesGuest) * pointStates + point
+    }
+
+    fun nextOnHostPoint(state: Int) = nextOnHost[state]
+
+    fun nextOnGuestPoint(state: Int) = nextOnGuest[state]
+
+    fun isGameOver(state: Int) = flags[state].toInt() and GAME_OVER != 0
+
+    fun isMatchOver(state: Int) = flags[state].toInt() and MATCH_OVER != 0
+
+    fun server(state: Int) = PLAYERS[servers[state].toInt()]
+
+    fun receiver(state: Int) = PLAYERS[receivers[state].toInt()]
+
+    fun phrase(state: Int) = PHRASES[phrases[state].toInt()]
+
+    private fun compile(point: Int, gamesHost: Int, gamesGuest: Int) {
+        val state = (gamesHost * (gamesToWin + 1) + gamesGuest) * pointStates + point
+        // Work from any score that folds into this state; a lead and count past deuce that
+        // disagree in parity can never happen and stay inert.
+        var host: Int
+        var guest: Int
+        if (point < gridSize * gridSize) {
+            host = point / gridSize
+            guest = point % gridSize
+        } else {
+            val lead = (point - gridSize * gridSize) / 4 - 2
+            val played = (point - gridSize * gridSize) % 4
+            guest = pointsToWin - 1 + (played - lead) / 2 + 2
+            host = guest + lead
+            if ((played - lead) and 1 != 0) {
+                nextOnHost[state] = state
+                nextOnGuest[state] = state
+                return
+            }
+        }
+        val gameOver = isWon(host, guest)
+        val matchOver = gamesHost == gamesToWin || gamesGuest == gamesToWin
+        flags[state] = ((if (gameOver) GAME_OVER else 0) or (if (matchOver) MATCH_OVER else 0)).toByte()
+        phrases[state] = when {
+            gameOver -> Phrase.SCORE
+            host == pointsToWin - 1 && guest == pointsToWin - 1 -> Phrase.DEUCE
+            maxOf(host, guest) < pointsToWin -> Phrase.SCORE
+            host == guest -> Phrase.EVEN
+            host > guest -> Phrase.HOST_ADVANTAGE
+            else -> Phrase.GUEST_ADVANTAGE
+        }.ordinal.toByte()
+
+        // Once a game is won, the next to serve is whoever starts the next game.
+        val gameIndex = gamesHost + gamesGuest
+        val played = if (gameOver) 0 else host + guest
+        val turn = if (played < deuceLength) played / servesPerTurn else deuceLength / servesPerTurn + played - deuceLength
+        val server: Player
+        val receiver: Player
+        if (doubles) {
+            val rotation = if (gameIndex % 2 == 0) HOST_ROTATION else GUEST_ROTATION
+            server = rotation[turn % 4]
+            receiver = rotation[(turn + 1) % 4]
+        } else {
+            val hostServes = (gameIndex + turn) % 2 == 0
+            server = if (hostServes) Player.HOST else Player.GUEST
+            receiver = if (hostServes) Player.GUEST else Player.HOST
+        }
+        servers[state] = server.ordinal.toByte()
+        receivers[state] = receiver.ordinal.toByte()
+
+        if (matchOver) {
+            nextOnHost[state] = state
+            nextOnGuest[state] = state
+            return
+        }
+        if (gameOver) {
+            host = 0
+            guest = 0
+        }
+        nextOnHost[state] = after(host + 1, guest, gamesHost, gamesGuest)
+        nextOnGuest[state] = after(host, guest + 1, gamesHost, gamesGuest)
+    }
+
+    private fun after(host: Int, guest: Int, gamesHost: Int, gamesGuest: Int): Int {
+        if (!isWon(host, guest)) {
+            return stateOf(host, guest, gamesHost, gamesGuest)
+        }
+        return if (host > guest) {
+            stateOf(host, guest, gamesHost + 1, gamesGuest)
+        } else {
+            stateOf(host, guest, gamesHost, gamesGuest + 1)
+        }
+    }
+
+    private fun isWon(host: Int, guest: Int) = maxOf(host, guest) >= pointsToWin && Math.abs(host - guest) >= 2
+}
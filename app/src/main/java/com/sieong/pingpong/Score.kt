@@ -0,0 +1,99 @@
+package com.sieong.pingpong
+
+import com.sieong.pingpong.Game.PlayerRole
+
+/**
+ * Immutable snapshot of a [Game], wrapping the single long the game keeps its whole state in, read
+ * through the game's [rules]. It is safe to hand to another thread, and two snapshots can be
+ * ordered by [isNewerThan] when updates arrive out of order.
+ *
+ * Layout, from the low bits: host score (9), guest score (9), changes made in this match (16),
+ * match number (12), games won by the host (3) and the guest (3), points on the undo stack (4),
+ * the undo stack itself (8), one bit per point with the most recent lowest.
+ */
+class Score internal constructor(internal val packed: Long, val rules: RuleSet) {
+    companion object {
+        internal const val SCORE_BITS = 9
+        internal const val MAX_SCORE = (1 shl SCORE_BITS) - 1
+        internal const val HOST_SHIFT = 0
+        internal const val GUEST_SHIFT = HOST_SHIFT + SCORE_BITS
+        internal const val CHANGES_SHIFT = GUEST_SHIFT + SCORE_BITS
+        internal const val MAX_CHANGES = 0xFFFF
+        internal const val GAME_SHIFT = CHANGES_SHIFT + 16
+        internal const val GAME_MASK = 0xFFF
+        internal const val GAMES_HOST_SHIFT = GAME_SHIFT + 12
+        internal const val GAMES_GUEST_SHIFT = GAMES_HOST_SHIFT + 3
+        internal const val GAMES_MASK = 0x7
+        internal const val DEPTH_SHIFT = GAMES_GUEST_SHIFT + 3
+        internal const val HISTORY_SHIFT = DEPTH_SHIFT + 4
+        internal const val HISTORY_SIZE = 64 - HISTORY_SHIFT
+        private const val VERSION_BITS = 16 + 12
+
+        internal fun field(packed: Long, shift: Int, mask: Int) = (packed ushr shift).toInt() and mask
+    }
+
+    val scoreHost: Int
+        get() = field(packed, HOST_SHIFT, MAX_SCORE)
+
+    val scoreGuest: Int
+        get() = field(packed, GUEST_SHIFT, MAX_SCORE)
+
+    val gamesHost: Int
+        get() = field(packed, GAMES_HOST_SHIFT, GAMES_MASK)
+
+    val gamesGuest: Int
+        get() = field(packed, GAMES_GUEST_SHIFT, GAMES_MASK)
+
+    /**
+     * Where the match stands in the tables of [rules].
+     */
+    val state: Int
+        get() = rules.stateOf(scoreHost, scoreGuest, gamesHost, gamesGuest)
+
+    /**
+     * Who won the most recent point still standing, or null when none is, or when it is too far
+     * back to be kept here.
+     */
+    val lastScoredPlayer: PlayerRole?
+        get() = when {
+            field(packed, DEPTH_SHIFT, 0xF) == 0 -> null
+            field(packed, HISTORY_SHIFT, 1) == PlayerRole.HOST.ordinal -> PlayerRole.HOST
+            else -> PlayerRole.GUEST
+        }
+
+    /**
+     * Goes up by one with every change, new matches included; wraps, so compare with
+     * [isNewerThan].
+     */
+    val version: Int
+        get() = field(packed, CHANGES_SHIFT, (1 shl VERSION_BITS) - 1)
+
+    fun isNewerThan(other: Score) = (version - other.version) shl (32 - VERSION_BITS) > 0
+
+    /**
+     * Tell who should serve next. For convention, host should always serve at the beginning of a game.
+     */
+    fun whoShouldServeNext() = server().side
+
+    fun server() = rules.server(state)
+
+    fun receiver() = rules.receiver(state)
+
+    fun isGameOver() = rules.isGameOver(state)
+
+    fun isMatchOver() = rules.isMatchOver(state)
+
+    override fun toString(): String {
+        return when (rules.phrase(state)) {
+            RuleSet.Phrase.DEUCE -> "Deuce."
+            RuleSet.Phrase.EVEN -> "Even."
+            RuleSet.Phrase.HOST_ADVANTAGE -> "Host's advantage."
+            RuleSet.Phrase.GUEST_ADVANTAGE -> "Guest's advantage."
+            RuleSet.Phrase.SCORE -> "Host $scoreHost to guest $scoreGuest."
+        }
+    }
+
+    override fun equals(other: Any?) = other is Score && other.packed == packed && other.rules === rules
+
+    override fun hashCode() = packed.hashCode()
+}
@@ -0,0 +1,53 @@
+package com.sieong.pingpong;
+
+/**
+ * Turns the per-frame label scores of the recognition model into smoothed scores that
+ * {@link RecognizeCommands} picks its top label from.
+ *
+ * <p>Implementations keep constant memory and must not allocate in {@link #add}.
+ */
+public interface ScoreSmoother {
+    /**
+     * Folds in the scores of one frame. Frames arrive in increasing time order and the array may be
+     * reused by the caller after this returns.
+     */
+    void add(float[] scores, long timeMs);
+
+    /**
+     * Smoothed score of the label at the given index, as of the last {@link #add}.
+     */
+    float score(int index);
+
+    /**
+     * Number of frames currently backing the smoothed scores.
+     */
+    int size();
+
+    /**
+     * Timestamp of the oldest frame still backing the smoothed scores.
+     */
+    long oldestTimeMs();
+
+    /**
+     * Timestamp of the most recently added frame.
+     */
+    long newestTimeMs();
+
+    /**
+     * Whether {@link #takeTrigger} decides when a label is a new command, in place of the
+     * detection threshold of {@link RecognizeCommands}. Its suppression time still applies, and
+     * silence and unknown words never count.
+     */
+    default boolean decidesTriggers() {
+        return false;
+    }
+
+    /**
+     * Whether the label at the given index has triggered since its trigger was last taken. Taking
+     * it clears it, so each trigger is a new command once, even if it came before there were
+     * enough frames to report it.
+     */
+    default boolean takeTrigger(int index) {
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package com.sieong.pingpong;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary recording of timestamped model score vectors, so recognition can be replayed
+ * offline against exactly what the model produced on device.
+ *
+ * <p>Layout, big-endian: magic, version, label count, the labels as modified UTF-8, then one record
+ * per inference made of the milliseconds since the previous record followed by one float per label.
+ */
+public final class ScoreTrace {
+    private static final int MAGIC = 0x50505354; // "PPST"
+    private static final short VERSION = 1;
+
+    private ScoreTrace() {
+    }
+
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int labelsCount;
+        private long previousTimeMs = Long.MIN_VALUE;
+        private boolean closed;
+
+        public Writer(OutputStream stream, List<String> labels) throws IOException {
+            out = new DataOutputStream(stream);
+            labelsCount = labels.size();
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(labelsCount);
+            for (String label : labels) {
+                out.writeUTF(label);
+            }
+        }
+
+        public synchronized void write(float[] scores, long timeMs) throws IOException {
+            if (closed) {
+                return;
+            }
+            if (scores.length != labelsCount) {
+                throw new IllegalArgumentException(
+                        "Expected " + labelsCount + " scores but got " + scores.length);
+            }
+            final long delta = previousTimeMs == Long.MIN_VALUE ? timeMs : timeMs - previousTimeMs;
+            previousTimeMs = timeMs;
+            out.writeLong(delta);
+            for (float score : scores) {
+                out.writeFloat(score);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final List<String> labels;
+        private long timeMs;
+        private boolean first = true;
+
+        public Reader(InputStream stream) throws IOException {
+            in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a score trace");
+            }
+            final short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported score trace version " + version);
+            }
+            final int labelsCount = in.readShort();
+            final List<String> readLabels = new ArrayList<>(labelsCount);
+            for (int i = 0; i < labelsCount; ++i) {
+                readLabels.add(in.readUTF());
+            }
+            labels = Collections.unmodifiableList(readLabels);
+        }
+
+        public List<String> labels() {
+            return labels;
+        }
+
+        /**
+         * Reads the next record into scores, returning false at the end of the trace.
+         */
+        public boolean next(float[] scores) throws IOException {
+            final long delta;
+            try {
+                delta = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            timeMs = first ? delta : timeMs + delta;
+            first = false;
+            for (int i = 0; i < scores.length; ++i) {
+                scores[i] = in.readFloat();
+            }
+            return true;
+        }
+
+        /**
+         * Timestamp of the record last read by {@link #next}.
+         */
+        public long timeMs() {
+            return timeMs;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
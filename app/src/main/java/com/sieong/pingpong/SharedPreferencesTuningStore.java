@@ -0,0 +1,27 @@
+package com.sieong.pingpong;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps tuning results in the app's private shared preferences.
+ */
+public final class SharedPreferencesTuningStore implements TuningStore {
+    private static final String PREFERENCES_NAME = "engine_tuning";
+
+    private final SharedPreferences preferences;
+
+    public SharedPreferencesTuningStore(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String get(String key) {
+        return preferences.getString(key, null);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        preferences.edit().putString(key, value).apply();
+    }
+}
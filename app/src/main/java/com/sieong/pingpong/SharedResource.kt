@@ -0,0 +1,72 @@
+package com.sieong.pingpong
+
+import java.io.Closeable
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * One instance of something expensive, shared by everyone holding a reference and closed once the
+ * last of them has let go for [graceMs]. The grace period lets a user that is torn down and
+ * recreated straight away, like an activity on rotation, pick up the same instance again.
+ */
+class SharedResource<T : Closeable> @JvmOverloads constructor(
+        private val graceMs: Long,
+        private val factory: () -> T,
+        private val scheduler: ScheduledExecutorService = defaultScheduler()) {
+
+    companion object {
+        private fun defaultScheduler(): ScheduledExecutorService {
+            val executor = ScheduledThreadPoolExecutor(1) { runnable ->
+                Thread(runnable, "SharedResource-close").apply { isDaemon = true }
+            }
+            executor.removeOnCancelPolicy = true
+            return executor
+        }
+    }
+
+    private var instance: T? = null
+    private var references = 0
+    private var pendingClose: ScheduledFuture<*>? = null
+
+    /**
+     * The shared instance, created if there is none. Every call needs a matching [release].
+     */
+    @Synchronized
+    fun acquire(): T {
+        pendingClose?.cancel(false)
+        pendingClose = null
+        val current = instance ?: factory().also { instance = it }
+        ++references
+        return current
+    }
+
+    @Synchronized
+    fun release() {
+        check(references > 0) { "release() without acquire()" }
+        if (--references > 0) {
+            return
+        }
+        pendingClose = scheduler.schedule({ closeIfUnused() }, graceMs, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * References currently held, not counting any instance waiting out its grace period.
+     */
+    @get:Synchronized
+    val referenceCount: Int
+        get() = references
+
+    private fun closeIfUnused() {
+        val unused = synchronized(this) {
+            if (references > 0 || instance == null) {
+                return
+            }
+            pendingClose = null
+            instance.also { instance = null }
+        }
+        // Outside the lock, so a slow close does not hold up the next acquire.
+        unused?.close()
+    }
+}
@@ -0,0 +1,30 @@
+package com.sieong.pingpong
+
+/**
+ * How model scores are smoothed before detection. The boxcar average is the most robust but needs
+ * about half of its window to agree; the others trade some robustness for latency.
+ */
+enum class Smoothing {
+    BOXCAR, EMA, HYSTERESIS, MEDIAN;
+
+    companion object {
+        private const val EMA_TIME_CONSTANT_MS: Long = 150
+        private const val HYSTERESIS_TIME_CONSTANT_MS: Long = 60
+        private const val HYSTERESIS_HIGH_THRESHOLD = 0.60f
+        private const val HYSTERESIS_LOW_THRESHOLD = 0.20f
+        private const val MEDIAN_LENGTH = 5
+    }
+
+    fun newSmoother(labelsCount: Int, averageWindowDurationMs: Long, minimumTimeBetweenSamplesMs: Long): ScoreSmoother =
+            when (this) {
+                BOXCAR -> BoxcarSmoother(labelsCount, averageWindowDurationMs,
+                        (averageWindowDurationMs / minimumTimeBetweenSamplesMs.coerceAtLeast(1)).toInt() + 2)
+                EMA -> EmaSmoother(labelsCount, EMA_TIME_CONSTANT_MS)
+                HYSTERESIS -> HysteresisSmoother(
+                        EmaSmoother(labelsCount, HYSTERESIS_TIME_CONSTANT_MS),
+                        labelsCount,
+                        HYSTERESIS_HIGH_THRESHOLD,
+                        HYSTERESIS_LOW_THRESHOLD)
+                MEDIAN -> MedianSmoother(labelsCount, MEDIAN_LENGTH)
+            }
+}
@@ -0,0 +1,166 @@
+package com.sieong.pingpong;
+
+import java.util.Arrays;
+
+/**
+ * Base for stateful streaming models, which take a short step of audio per call and carry what
+ * they have heard so far in state between calls, instead of re-reading a whole window every hop.
+ *
+ * <p>The engine keeps its own cursor into the ring. Loading stages everything after the cursor in
+ * whole steps, and running feeds those steps to the model in order, so the scores of a window
+ * cover all of the audio up to it even when the pipeline skipped the model for some hops. After a
+ * gap longer than the staging area, e.g. a long stretch of gated silence or a stopped recording,
+ * the state is cleared and primed again from the last {@code primeLength} samples. So it is when
+ * loading from another ring than last time, or from one whose sequence went back, as after the
+ * timing and warm-up runs on rings of their own.
+ *
+ * <p>Catching up is not a single batched invocation here but the same steps run back to back, so
+ * {@link #runBatch} reports the scores as they were after the last step of each window.
+ */
+public abstract class StreamingInferenceEngine implements InferenceEngine {
+    /**
+     * Most windows taken at once when catching up.
+     */
+    public static final int MAX_BATCH_SIZE = 8;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final int stepLength;
+    private final short[] staged;
+    private final float[] lastScores;
+    // Steps staged for each window of the last loadBatch, counted from the start of the staging.
+    private final int[] windowSteps = new int[MAX_BATCH_SIZE];
+    // The ring the cursor points into; the cursor means nothing in any other.
+    private AudioRing ring;
+    private long consumedEnd = NONE;
+    private long stagedStart;
+    private int stagedSteps;
+    private boolean resetPending;
+    private long steps;
+    private long resets;
+
+    /**
+     * @param stepLength  samples the model takes per call.
+     * @param primeLength samples fed after a reset; at most the ring's longest read, and best the
+     *                    span the model's state can remember.
+     */
+    protected StreamingInferenceEngine(int stepLength, int primeLength, int labelCount) {
+        if (stepLength <= 0 || primeLength < stepLength) {
+            throw new IllegalArgumentException("Step of " + stepLength + " samples with " + primeLength + " to prime");
+        }
+        this.stepLength = stepLength;
+        staged = new short[primeLength - primeLength % stepLength];
+        lastScores = new float[labelCount];
+    }
+
+    /**
+     * Clears the model's state, as if it had heard nothing yet.
+     */
+    protected abstract void resetState();
+
+    /**
+     * Feeds in[offset..offset + stepLength) to the model, advancing its state, and writes the
+     * scores it reports now.
+     */
+    protected abstract void step(short[] in, int offset, float[] scores);
+
+    public final int stepLength() {
+        return stepLength;
+    }
+
+    /**
+     * Model calls made so far, and how many times the state had to be primed from scratch.
+     */
+    public final long steps() {
+        return steps;
+    }
+
+    public final long resets() {
+        return resets;
+    }
+
+    @Override
+    public long load(AudioRing ring) {
+        final long end = ring.writeSequence();
+        stage(ring, end);
+        return end;
+    }
+
+    @Override
+    public void run(float[] scores) {
+        runStaged(stagedSteps);
+        System.arraycopy(lastScores, 0, scores, 0, lastScores.length);
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public boolean loadBatch(AudioRing ring, long firstEnd, int hopLength, int count) {
+        if (!stage(ring, firstEnd + (long) (count - 1) * hopLength)) {
+            return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            final long windowEnd = firstEnd + (long) i * hopLength;
+            final long windowSteps = Math.max(0, windowEnd - stagedStart) / stepLength;
+            this.windowSteps[i] = (int) Math.min(windowSteps, stagedSteps);
+        }
+        return true;
+    }
+
+    @Override
+    public void runBatch(int count, float[][] scores) {
+        for (int i = 0; i < count; ++i) {
+            runStaged(windowSteps[i]);
+            System.arraycopy(lastScores, 0, scores[i], 0, lastScores.length);
+        }
+    }
+
+    /**
+     * Copies the whole steps between the cursor and end out of the ring. Returns false, with
+     * nothing staged, if the ring no longer holds them.
+     */
+    private boolean stage(AudioRing ring, long end) {
+        if (ring != this.ring || consumedEnd != NONE && end < consumedEnd) {
+            this.ring = ring;
+            consumedEnd = NONE;
+        }
+        long start = consumedEnd;
+        resetPending = start == NONE || end - start > staged.length;
+        if (resetPending) {
+            start = end - staged.length;
+        }
+        final int count = (int) Math.max(0, (end - start) / stepLength);
+        stagedStart = start;
+        stagedSteps = 0;
+        if (count > 0 && !ring.read(start + (long) count * stepLength, staged, 0, count * stepLength)) {
+            consumedEnd = NONE;
+            return false;
+        }
+        stagedSteps = count;
+        return true;
+    }
+
+    /**
+     * Runs the staged steps up to, not including, step {@code until}. Steps already run since the
+     * last load are not repeated.
+     */
+    private void runStaged(int until) {
+        if (resetPending) {
+            resetState();
+            // Nothing heard before the reset may be reported, not even if nothing is staged.
+            Arrays.fill(lastScores, 0.0f);
+            ++resets;
+            resetPending = false;
+            // Nothing before the staging area counts once the state is cleared.
+            consumedEnd = stagedStart;
+        }
+        int next = (int) ((consumedEnd - stagedStart) / stepLength);
+        for (; next < until; ++next) {
+            step(staged, next * stepLength, lastScores);
+            ++steps;
+        }
+        consumedEnd = Math.max(consumedEnd, stagedStart + (long) until * stepLength);
+    }
+}
@@ -0,0 +1,109 @@
+package com.sieong.pingpong;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Generated audio for soak tests: a low noise floor, a voiced burst every few seconds and a sharp
+ * click, like a ball on the table, several times a second. The same seed gives the same audio.
+ */
+public final class SyntheticAudioSource implements AudioSource {
+    public static final long BURST_PERIOD_MS = 3000;
+    public static final long BURST_LENGTH_MS = 400;
+    public static final long CLICK_PERIOD_MS = 700;
+    private static final float NOISE_AMPLITUDE = 100.0f;
+    private static final float BURST_AMPLITUDE = 6000.0f;
+    private static final float BURST_FUNDAMENTAL_HZ = 150.0f;
+    private static final float CLICK_AMPLITUDE = 12000.0f;
+    private static final long CLICK_LENGTH_MS = 3;
+
+    private final int sampleRate;
+    private final long totalSamples;
+    private final AudioPacer pacer;
+    private long seed;
+    private long sequence;
+
+    /**
+     * @param durationMs how much audio to generate, or Long.MAX_VALUE to run until closed.
+     * @param speed      1 for real time, 10 for ten times as fast, 0 for as fast as it is read.
+     */
+    public SyntheticAudioSource(int sampleRate, long durationMs, float speed, long seed) {
+        this.sampleRate = sampleRate;
+        totalSamples = durationMs == Long.MAX_VALUE ? Long.MAX_VALUE : durationMs * sampleRate / 1000;
+        pacer = new AudioPacer(sampleRate, speed);
+        this.seed = seed == 0 ? 1 : seed;
+    }
+
+    /**
+     * Whether the sample at the given position is inside a voiced burst. Bursts start half a
+     * period in.
+     */
+    public boolean isBurst(long sample) {
+        final long timeMs = sample * 1000 / sampleRate;
+        final long phase = (timeMs + BURST_PERIOD_MS / 2) % BURST_PERIOD_MS;
+        return timeMs >= BURST_PERIOD_MS / 2 && phase < BURST_LENGTH_MS;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int preferredReadLength() {
+        return sampleRate / 100;
+    }
+
+    @Override
+    public boolean isPaced() {
+        return pacer.isPaced();
+    }
+
+    @Override
+    public void start() {
+        pacer.start();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws InterruptedIOException {
+        final int count = (int) Math.min(length, totalSamples - sequence);
+        if (count <= 0) {
+            return -1;
+        }
+        final long burstPeriod = BURST_PERIOD_MS * sampleRate / 1000;
+        final long burstLength = BURST_LENGTH_MS * sampleRate / 1000;
+        final long clickPeriod = CLICK_PERIOD_MS * sampleRate / 1000;
+        final long clickLength = CLICK_LENGTH_MS * sampleRate / 1000;
+        for (int i = 0; i < count; ++i) {
+            final long s = sequence + i;
+            float sample = NOISE_AMPLITUDE * nextNoise();
+            if (isBurst(s)) {
+                // A few harmonics under a raised-cosine envelope, roughly a sung vowel.
+                final long position = (s + burstPeriod / 2) % burstPeriod;
+                final double envelope = 0.5 - 0.5 * Math.cos(2 * Math.PI * position / burstLength);
+                final double phase = 2 * Math.PI * BURST_FUNDAMENTAL_HZ * s / sampleRate;
+                sample += (float) (BURST_AMPLITUDE * envelope
+                        * (0.6 * Math.sin(phase) + 0.3 * Math.sin(2 * phase) + 0.1 * Math.sin(3 * phase)));
+            }
+            final long clickPosition = s % clickPeriod;
+            if (clickPosition < clickLength) {
+                sample += CLICK_AMPLITUDE * (1.0f - (float) clickPosition / clickLength) * nextNoise();
+            }
+            buffer[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+        sequence += count;
+        pacer.await(sequence);
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Uniform in [-1, 1), from a xorshift generator so runs are reproducible.
+    private float nextNoise() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (seed >>> 40) / (float) (1L << 23) - 1.0f;
+    }
+}
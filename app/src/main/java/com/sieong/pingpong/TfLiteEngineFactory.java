@@ -0,0 +1,83 @@
+package com.sieong.pingpong;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Creates interpreters for one model in any {@link EngineConfig}, wrapped in the engine that suits
+ * the model: a {@link TfLiteStreamingEngine} for a stateful streaming model, a
+ * {@link TfLiteFeatureEngine} for one that takes a spectrogram, a {@link TfLiteInferenceEngine}
+ * for one that takes a whole window of samples.
+ */
+public final class TfLiteEngineFactory implements InferenceEngine.Factory {
+    // Front end for feature models, as in the TensorFlow speech commands training scripts: 30 ms
+    // frames every 20 ms over 40 mel bands from 20 Hz to 4 kHz. A model with 40 features per frame
+    // takes the log energies; one with fewer takes that many MFCCs.
+    private static final int FEATURE_FRAME_MS = 30;
+    private static final int FEATURE_STEP_MS = 20;
+    private static final int MEL_BINS = 40;
+    private static final float LOW_HZ = 20.0f;
+    private static final float HIGH_HZ = 4000.0f;
+
+    private final ByteBuffer model;
+    private final int windowLength;
+    private final int sampleRate;
+    private final int labelCount;
+
+    public TfLiteEngineFactory(ByteBuffer model, int windowLength, int sampleRate, int labelCount) {
+        this.model = model;
+        this.windowLength = windowLength;
+        this.sampleRate = sampleRate;
+        this.labelCount = labelCount;
+    }
+
+    @Override
+    public InferenceEngine create(EngineConfig config) {
+        final Interpreter.Options options = new Interpreter.Options().setNumThreads(config.getThreads());
+        switch (config.getDelegate()) {
+            case XNNPACK:
+                options.setUseXNNPACK(true);
+                break;
+            case NNAPI:
+                options.setUseNNAPI(true);
+                break;
+            default:
+                break;
+        }
+        final Interpreter interpreter = new Interpreter(model, options);
+        try {
+            return wrap(interpreter);
+        } catch (RuntimeException e) {
+            // The tuner moves on to the next candidate, so free this one's native memory now.
+            interpreter.close();
+            throw e;
+        }
+    }
+
+    private InferenceEngine wrap(Interpreter interpreter) {
+        if (TfLiteStreamingEngine.isStreamingModel(interpreter)) {
+            return new TfLiteStreamingEngine(interpreter, windowLength, labelCount);
+        }
+        final int[] shape = interpreter.getInputTensor(0).shape();
+        final int featureCount = featureCount(shape, windowLength);
+        if (featureCount > 0) {
+            final LogMelExtractor extractor = new LogMelExtractor(sampleRate,
+                    sampleRate * FEATURE_FRAME_MS / 1000, sampleRate * FEATURE_STEP_MS / 1000,
+                    MEL_BINS, featureCount == MEL_BINS ? 0 : featureCount, LOW_HZ, HIGH_HZ, shape[1]);
+            return new TfLiteFeatureEngine(interpreter, extractor, labelCount);
+        }
+        return new TfLiteInferenceEngine(interpreter, windowLength, sampleRate, labelCount);
+    }
+
+    /**
+     * Features per frame for a spectrogram input, [1, frames, features] or [1, frames, features, 1];
+     * 0 for a window of samples, [1, samples] or [batch, samples, 1].
+     */
+    static int featureCount(int[] inputShape, int windowLength) {
+        if (inputShape == null || inputShape.length < 3 || inputShape[1] == windowLength) {
+            return 0;
+        }
+        return inputShape[2];
+    }
+}
@@ -0,0 +1,74 @@
+package com.sieong.pingpong;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A keyword model over features rather than samples: float32 [1, frames, features] or
+ * [1, frames, features, 1] in, one score per label out. The capture thread runs the
+ * {@link LogMelExtractor} as audio arrives, so loading a window only copies the newest frames.
+ */
+public final class TfLiteFeatureEngine implements InferenceEngine, AudioTap {
+    private final Interpreter interpreter;
+    private final LogMelExtractor extractor;
+    private final int frameCount;
+    private final FloatBuffer featureInputBuffer;
+    private final ByteBuffer featureInput;
+    private final ByteBuffer scoresOutput;
+    private final FloatBuffer scoresOutputBuffer;
+
+    /**
+     * @param extractor front end producing frames of exactly the model's feature count.
+     */
+    public TfLiteFeatureEngine(Interpreter interpreter, LogMelExtractor extractor, int labelCount) {
+        final int[] shape = interpreter.getInputTensor(0).shape();
+        if (interpreter.getInputTensor(0).dataType() != DataType.FLOAT32
+                || interpreter.getOutputTensor(0).dataType() != DataType.FLOAT32) {
+            throw new IllegalArgumentException("Feature models must take and return float32");
+        }
+        if (shape[2] != extractor.features().featureCount()) {
+            throw new IllegalArgumentException("Model takes " + shape[2] + " features per frame, front end gives "
+                    + extractor.features().featureCount());
+        }
+        this.interpreter = interpreter;
+        this.extractor = extractor;
+        frameCount = shape[1];
+        featureInput = ByteBuffer.allocateDirect(frameCount * shape[2] * 4).order(ByteOrder.nativeOrder());
+        featureInputBuffer = featureInput.asFloatBuffer();
+        scoresOutput = ByteBuffer.allocateDirect(labelCount * 4).order(ByteOrder.nativeOrder());
+        scoresOutputBuffer = scoresOutput.asFloatBuffer();
+    }
+
+    @Override
+    public void onAudio(short[] samples, int offset, int length) {
+        extractor.process(samples, offset, length);
+    }
+
+    /**
+     * Copies the newest frames into the model input. The frames trail the ring by less than a
+     * frame, too little to matter for the timestamp, so the ring's own position is returned.
+     */
+    @Override
+    public long load(AudioRing ring) {
+        final long end = ring.writeSequence();
+        extractor.features().snapshot(featureInputBuffer, frameCount);
+        return end;
+    }
+
+    @Override
+    public void run(float[] scores) {
+        scoresOutput.rewind();
+        interpreter.run(featureInput, scoresOutput);
+        scoresOutputBuffer.rewind();
+        scoresOutputBuffer.get(scores);
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
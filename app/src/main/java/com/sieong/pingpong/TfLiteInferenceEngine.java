@@ -0,0 +1,314 @@
+package com.sieong.pingpong;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The speech commands model: a window of samples, plus the sample rate if the model takes it, in;
+ * one score per label out.
+ *
+ * <p>The input is fed in whatever type the model declares: floats in [-1, 1] for a float model,
+ * the recorded 16-bit samples as they are for an int16 model quantized like PCM, and samples
+ * quantized with the model's scale and zero point for int8, uint8 or any other int16 model.
+ * Quantized scores are dequantized on the way out.
+ *
+ * <p>Models exported with a leading batch dimension, [batch, samples] or [batch, samples, 1], can
+ * also score several windows in one invocation. The bundled model takes a bare [samples, 1], so it
+ * only ever runs one window at a time.
+ */
+public final class TfLiteInferenceEngine implements InferenceEngine {
+    /**
+     * Largest batch used to catch up with a backlog of windows.
+     */
+    public static final int MAX_BATCH_SIZE = 8;
+
+    private enum InputFormat {
+        FLOAT32(4),
+        // int16 that means the same as recorded PCM; copied without conversion.
+        PCM16(2),
+        QUANTIZED16(2),
+        QUANTIZED8(1);
+
+        final int bytesPerSample;
+
+        InputFormat(int bytesPerSample) {
+            this.bytesPerSample = bytesPerSample;
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final int windowLength;
+    private final int labelCount;
+    // Input shape with the batch size in front, or null when the model has no batch dimension.
+    private final int[] batchShape;
+    private final InputFormat inputFormat;
+    private final float inputScale;
+    private final int inputZeroPoint;
+    private final int inputMin;
+    private final int inputMax;
+    private final DataType outputType;
+    private final int outputBytesPerScore;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    // Samples staged for any input that is not float, null for a float model.
+    private final short[] pcmWindow;
+    // The input tensor viewed as FloatBuffer, ShortBuffer or ByteBuffer to suit the input format.
+    private final Buffer inputView;
+    private final ByteBuffer scoresOutput;
+    private final Object[] inputArray;
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+    private int inputBatchSize = 1;
+    // Allocated the first time the recognizer falls behind.
+    private ByteBuffer batchInput;
+    private Buffer[] batchWindows;
+    private ByteBuffer batchOutput;
+    // The interpreter wants buffers exactly the size of the tensor, so views of the batch buffers
+    // for every batch size, indexed by size - 1.
+    private Object[][] batchInputArrays;
+    private ByteBuffer[] batchOutputs;
+    private final Map<Integer, Object> batchOutputMap = new HashMap<>();
+
+    public TfLiteInferenceEngine(Interpreter interpreter, int windowLength, int sampleRate, int labelCount) {
+        this.interpreter = interpreter;
+        this.windowLength = windowLength;
+        this.labelCount = labelCount;
+        final Tensor inputTensor = interpreter.getInputTensor(0);
+        final int[] shape = inputTensor.shape();
+        if (shape != null && shape.length >= 2 && shape[1] == windowLength) {
+            batchShape = shape.clone();
+            batchShape[0] = 1;
+            interpreter.resizeInput(0, batchShape);
+        } else {
+            batchShape = null;
+            interpreter.resizeInput(0, new int[]{windowLength, 1});
+        }
+        final boolean takesSampleRate = interpreter.getInputTensorCount() > 1;
+        if (takesSampleRate) {
+            interpreter.resizeInput(1, new int[]{1});
+        }
+
+        final DataType inputType = inputTensor.dataType();
+        final Tensor.QuantizationParams inputQuantization = inputTensor.quantizationParams();
+        inputScale = inputQuantization == null ? 0.0f : inputQuantization.getScale();
+        inputZeroPoint = inputQuantization == null ? 0 : inputQuantization.getZeroPoint();
+        switch (inputType) {
+            case FLOAT32:
+                inputFormat = InputFormat.FLOAT32;
+                break;
+            case INT16:
+                inputFormat = PcmWindow.isPcmQuantization(inputScale, inputZeroPoint)
+                        ? InputFormat.PCM16 : InputFormat.QUANTIZED16;
+                break;
+            case INT8:
+            case UINT8:
+                if (inputScale == 0.0f) {
+                    throw new IllegalArgumentException(inputType + " model input without quantization parameters");
+                }
+                inputFormat = InputFormat.QUANTIZED8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported model input type " + inputType);
+        }
+        inputMin = inputType == DataType.UINT8 ? 0 : (inputType == DataType.INT8 ? Byte.MIN_VALUE : Short.MIN_VALUE);
+        inputMax = inputType == DataType.UINT8 ? 255 : (inputType == DataType.INT8 ? Byte.MAX_VALUE : Short.MAX_VALUE);
+        pcmWindow = inputFormat == InputFormat.FLOAT32 ? null : new short[windowLength];
+
+        final Tensor outputTensor = interpreter.getOutputTensor(0);
+        outputType = outputTensor.dataType();
+        switch (outputType) {
+            case FLOAT32:
+                outputBytesPerScore = 4;
+                break;
+            case INT16:
+                outputBytesPerScore = 2;
+                break;
+            case INT8:
+            case UINT8:
+                outputBytesPerScore = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported model output type " + outputType);
+        }
+        final Tensor.QuantizationParams outputQuantization = outputTensor.quantizationParams();
+        outputScale = outputQuantization == null || outputQuantization.getScale() == 0.0f
+                ? 1.0f : outputQuantization.getScale();
+        outputZeroPoint = outputQuantization == null ? 0 : outputQuantization.getZeroPoint();
+
+        // Tensors are direct buffers in native order, allocated once, so the interpreter copies
+        // them as flat memory and inference allocates nothing.
+        final ByteBuffer input = ByteBuffer.allocateDirect(windowLength * inputFormat.bytesPerSample)
+                .order(ByteOrder.nativeOrder());
+        inputView = view(input);
+        final ByteBuffer sampleRateInput = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+        sampleRateInput.putInt(0, sampleRate);
+        scoresOutput = ByteBuffer.allocateDirect(labelCount * outputBytesPerScore).order(ByteOrder.nativeOrder());
+        inputArray = takesSampleRate ? new Object[]{input, sampleRateInput} : new Object[]{input};
+        outputMap.put(0, scoresOutput);
+    }
+
+    @Override
+    public long load(AudioRing ring) {
+        if (inputFormat == InputFormat.FLOAT32) {
+            // We need to feed in float values between -1.0f and 1.0f, so the copy divides the
+            // signed 16-bit inputs.
+            return ring.snapshot((FloatBuffer) inputView, windowLength, PcmWindow.SCALE);
+        }
+        final long end = ring.snapshot(pcmWindow);
+        encode(pcmWindow, inputView);
+        return end;
+    }
+
+    @Override
+    public void run(float[] scores) {
+        resizeBatch(1);
+        scoresOutput.rewind();
+        interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+        decodeScores(scoresOutput, 0, scores);
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchShape == null ? 1 : MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public boolean loadBatch(AudioRing ring, long firstEnd, int hopLength, int count) {
+        allocateBatch();
+        for (int i = 0; i < count; ++i) {
+            final long end = firstEnd + (long) i * hopLength;
+            if (inputFormat == InputFormat.FLOAT32) {
+                if (!ring.read(end, (FloatBuffer) batchWindows[i], windowLength, PcmWindow.SCALE)) {
+                    return false;
+                }
+            } else {
+                if (!ring.read(end, pcmWindow)) {
+                    return false;
+                }
+                encode(pcmWindow, batchWindows[i]);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void runBatch(int count, float[][] scores) {
+        resizeBatch(count);
+        final ByteBuffer output = batchOutputs[count - 1];
+        output.rewind();
+        batchOutputMap.put(0, output);
+        interpreter.runForMultipleInputsOutputs(batchInputArrays[count - 1], batchOutputMap);
+        for (int i = 0; i < count; ++i) {
+            decodeScores(batchOutput, i * labelCount, scores[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+
+    private Buffer view(ByteBuffer bytes) {
+        switch (inputFormat) {
+            case FLOAT32:
+                return bytes.asFloatBuffer();
+            case PCM16:
+            case QUANTIZED16:
+                return bytes.asShortBuffer();
+            default:
+                return bytes;
+        }
+    }
+
+    private void encode(short[] pcm, Buffer view) {
+        switch (inputFormat) {
+            case PCM16:
+                final ShortBuffer shorts = (ShortBuffer) view;
+                shorts.clear();
+                shorts.put(pcm);
+                break;
+            case QUANTIZED16:
+                PcmWindow.quantize(pcm, (ShortBuffer) view, inputScale, inputZeroPoint);
+                break;
+            case QUANTIZED8:
+                PcmWindow.quantize(pcm, (ByteBuffer) view, inputScale, inputZeroPoint, inputMin, inputMax);
+                break;
+            default:
+                throw new IllegalStateException("Float input is converted straight from the ring");
+        }
+    }
+
+    /**
+     * Copies the scores starting at score {@code first} of {@code output}, dequantizing them if
+     * the model's output is quantized.
+     */
+    private void decodeScores(ByteBuffer output, int first, float[] scores) {
+        switch (outputType) {
+            case FLOAT32:
+                for (int i = 0; i < labelCount; ++i) {
+                    scores[i] = output.getFloat((first + i) * 4);
+                }
+                break;
+            case INT16:
+                for (int i = 0; i < labelCount; ++i) {
+                    scores[i] = (output.getShort((first + i) * 2) - outputZeroPoint) * outputScale;
+                }
+                break;
+            case INT8:
+                for (int i = 0; i < labelCount; ++i) {
+                    scores[i] = (output.get(first + i) - outputZeroPoint) * outputScale;
+                }
+                break;
+            default:
+                for (int i = 0; i < labelCount; ++i) {
+                    scores[i] = ((output.get(first + i) & 0xff) - outputZeroPoint) * outputScale;
+                }
+                break;
+        }
+    }
+
+    private void resizeBatch(int batchSize) {
+        if (batchShape == null || batchSize == inputBatchSize) {
+            return;
+        }
+        batchShape[0] = batchSize;
+        interpreter.resizeInput(0, batchShape);
+        inputBatchSize = batchSize;
+    }
+
+    private void allocateBatch() {
+        if (batchInput != null) {
+            return;
+        }
+        final int windowBytes = windowLength * inputFormat.bytesPerSample;
+        batchInput = ByteBuffer.allocateDirect(MAX_BATCH_SIZE * windowBytes).order(ByteOrder.nativeOrder());
+        batchWindows = new Buffer[MAX_BATCH_SIZE];
+        for (int i = 0; i < MAX_BATCH_SIZE; ++i) {
+            batchWindows[i] = view(slice(batchInput, i * windowBytes, windowBytes));
+        }
+        final int scoresBytes = labelCount * outputBytesPerScore;
+        batchOutput = ByteBuffer.allocateDirect(MAX_BATCH_SIZE * scoresBytes).order(ByteOrder.nativeOrder());
+        batchInputArrays = new Object[MAX_BATCH_SIZE][];
+        batchOutputs = new ByteBuffer[MAX_BATCH_SIZE];
+        for (int i = 0; i < MAX_BATCH_SIZE; ++i) {
+            batchInputArrays[i] = inputArray.clone();
+            batchInputArrays[i][0] = slice(batchInput, 0, (i + 1) * windowBytes);
+            batchOutputs[i] = slice(batchOutput, 0, (i + 1) * scoresBytes);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,121 @@
+package com.sieong.pingpong;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streaming keyword model: one step of float samples in [-1, 1] as input 0, [1, step] or
+ * [1, step, 1], plus its state tensors as inputs 1..n; the scores as output 0 and the updated state
+ * as outputs 1..n, in the same order as the state inputs.
+ *
+ * <p>The state lives in two sets of direct buffers used in turn: one is the input of a call while
+ * the other receives its output, and they swap for the next call, so state is never copied.
+ */
+public final class TfLiteStreamingEngine extends StreamingInferenceEngine {
+    private final Interpreter interpreter;
+    private final int labelCount;
+    private final ByteBuffer stepInput;
+    private final FloatBuffer stepInputBuffer;
+    private final ByteBuffer scoresOutput;
+    // Indexed by parity: the state read by a call and the state it writes, swapped after each call.
+    private final ByteBuffer[][] states;
+    private final Object[][] inputArrays = new Object[2][];
+    private final List<Map<Integer, Object>> outputMaps = new ArrayList<>(2);
+    private int parity;
+
+    /**
+     * Whether the model carries state from call to call, which is how the streaming exporters lay
+     * out their models: every input after the audio comes back out as an output.
+     */
+    public static boolean isStreamingModel(Interpreter interpreter) {
+        return interpreter.getOutputTensorCount() > 1
+                && interpreter.getInputTensorCount() == interpreter.getOutputTensorCount();
+    }
+
+    public TfLiteStreamingEngine(Interpreter interpreter, int primeLength, int labelCount) {
+        super(stepLength(interpreter.getInputTensor(0)), primeLength, labelCount);
+        this.interpreter = interpreter;
+        this.labelCount = labelCount;
+        if (interpreter.getInputTensor(0).dataType() != DataType.FLOAT32
+                || interpreter.getOutputTensor(0).dataType() != DataType.FLOAT32) {
+            throw new IllegalArgumentException("Streaming models must take and return float32");
+        }
+        stepInput = ByteBuffer.allocateDirect(stepLength() * 4).order(ByteOrder.nativeOrder());
+        stepInputBuffer = stepInput.asFloatBuffer();
+        scoresOutput = ByteBuffer.allocateDirect(labelCount * 4).order(ByteOrder.nativeOrder());
+
+        final int stateCount = interpreter.getInputTensorCount() - 1;
+        states = new ByteBuffer[2][stateCount];
+        for (int i = 0; i < stateCount; ++i) {
+            final int bytes = interpreter.getInputTensor(i + 1).numBytes();
+            if (interpreter.getOutputTensor(i + 1).numBytes() != bytes) {
+                throw new IllegalArgumentException("State output " + (i + 1) + " does not match its input");
+            }
+            states[0][i] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            states[1][i] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        for (int p = 0; p < 2; ++p) {
+            final Object[] inputs = new Object[stateCount + 1];
+            inputs[0] = stepInput;
+            final Map<Integer, Object> outputs = new HashMap<>();
+            outputs.put(0, scoresOutput);
+            for (int i = 0; i < stateCount; ++i) {
+                inputs[i + 1] = states[p][i];
+                outputs.put(i + 1, states[1 - p][i]);
+            }
+            inputArrays[p] = inputs;
+            outputMaps.add(outputs);
+        }
+    }
+
+    private static int stepLength(Tensor input) {
+        final int[] shape = input.shape();
+        if (shape == null || shape.length < 2) {
+            throw new IllegalArgumentException("Streaming model input needs a [1, step] shape");
+        }
+        return shape[1];
+    }
+
+    @Override
+    protected void resetState() {
+        for (ByteBuffer[] set : states) {
+            for (ByteBuffer state : set) {
+                for (int i = 0; i < state.capacity(); ++i) {
+                    state.put(i, (byte) 0);
+                }
+            }
+        }
+        parity = 0;
+    }
+
+    @Override
+    protected void step(short[] in, int offset, float[] scores) {
+        NativeDsp.toFloat(in, offset, stepLength(), stepInputBuffer, PcmWindow.SCALE);
+        for (ByteBuffer state : states[parity]) {
+            state.rewind();
+        }
+        for (ByteBuffer state : states[1 - parity]) {
+            state.rewind();
+        }
+        scoresOutput.rewind();
+        interpreter.runForMultipleInputsOutputs(inputArrays[parity], outputMaps.get(parity));
+        parity ^= 1;
+        for (int i = 0; i < labelCount; ++i) {
+            scores[i] = scoresOutput.getFloat(i * 4);
+        }
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,13 @@
+package com.sieong.pingpong;
+
+/**
+ * Remembers the outcome of engine tuning between runs.
+ */
+public interface TuningStore {
+    /**
+     * The value stored under key, or null if there is none.
+     */
+    String get(String key);
+
+    void put(String key, String value);
+}
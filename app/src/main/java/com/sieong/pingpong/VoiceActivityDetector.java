@@ -0,0 +1,104 @@
+package com.sieong.pingpong;
+
+/**
+ * Cheap streaming voice activity detector that decides whether a window of audio is worth running
+ * the keyword model on.
+ *
+ * <p>It is fed on the capture thread as samples arrive and works in 10 ms frames: short-term energy
+ * against an adaptive noise floor, plus the zero-crossing rate to turn away broadband clicks. A
+ * frame counts as speech only after a few loud, low-crossing frames in a row, so a ball hitting the
+ * table does not open the gate on its own.
+ */
+public final class VoiceActivityDetector {
+    private static final int FRAME_MS = 10;
+    // Speech must be this many times the noise floor's energy (about +8 dB).
+    private static final float ENERGY_RATIO = 6.0f;
+    // Mean square energy below which nothing counts as speech, whatever the floor.
+    private static final float MINIMUM_SPEECH_ENERGY = 200.0f * 200.0f;
+    private static final float MINIMUM_NOISE_FLOOR = 30.0f * 30.0f;
+    // Voiced speech crosses zero far less often than clicks and hiss do.
+    private static final float MAXIMUM_SPEECH_ZERO_CROSSING_RATE = 0.30f;
+    private static final int MINIMUM_SPEECH_FRAMES = 3;
+    // The floor drops quickly into quiet passages and creeps up slowly, so speech barely lifts it.
+    private static final float FLOOR_FALL_RATE = 0.20f;
+    private static final float FLOOR_RISE_RATE = 0.005f;
+
+    private final int frameLength;
+    private long sequence;
+    private int frameCount;
+    private long frameSumOfSquares;
+    private int frameZeroCrossings;
+    private boolean previousNegative;
+    private final long[] blockStats = new long[NativeDsp.BLOCK_STATS_LENGTH];
+    private float noiseFloor = MINIMUM_NOISE_FLOOR;
+    private int consecutiveSpeechFrames;
+    private volatile long lastSpeechSequence = Long.MIN_VALUE;
+    private volatile long speechFrames;
+    private volatile long frames;
+
+    public VoiceActivityDetector(int sampleRate) {
+        frameLength = sampleRate * FRAME_MS / 1000;
+    }
+
+    /**
+     * Feeds the samples that were just written to the audio ring. Capture thread only.
+     */
+    public void process(short[] samples, int offset, int length) {
+        while (length > 0) {
+            final int blockLength = Math.min(length, frameLength - frameCount);
+            NativeDsp.blockStats(samples, offset, blockLength, previousNegative, blockStats);
+            frameSumOfSquares += blockStats[NativeDsp.SUM_OF_SQUARES];
+            frameZeroCrossings += (int) blockStats[NativeDsp.ZERO_CROSSINGS];
+            previousNegative = samples[offset + blockLength - 1] < 0;
+            sequence += blockLength;
+            frameCount += blockLength;
+            offset += blockLength;
+            length -= blockLength;
+            if (frameCount == frameLength) {
+                endFrame();
+            }
+        }
+    }
+
+    private void endFrame() {
+        final float energy = (float) ((double) frameSumOfSquares / frameLength);
+        final float zeroCrossingRate = (float) frameZeroCrossings / frameLength;
+        frameCount = 0;
+        frameSumOfSquares = 0;
+        frameZeroCrossings = 0;
+
+        final boolean loud = energy > noiseFloor * ENERGY_RATIO && energy > MINIMUM_SPEECH_ENERGY;
+        if (loud && zeroCrossingRate < MAXIMUM_SPEECH_ZERO_CROSSING_RATE) {
+            if (++consecutiveSpeechFrames >= MINIMUM_SPEECH_FRAMES) {
+                lastSpeechSequence = sequence;
+                ++speechFrames;
+            }
+        } else {
+            consecutiveSpeechFrames = 0;
+        }
+
+        final float rate = energy < noiseFloor ? FLOOR_FALL_RATE : FLOOR_RISE_RATE;
+        noiseFloor = Math.max(MINIMUM_NOISE_FLOOR, noiseFloor + rate * (energy - noiseFloor));
+        ++frames;
+    }
+
+    /**
+     * Whether any speech was heard in the window of the given length ending at endSequence, counted
+     * in samples since this detector was created.
+     */
+    public boolean isSpeechWithin(long endSequence, int length) {
+        return lastSpeechSequence >= endSequence - length;
+    }
+
+    public float noiseFloor() {
+        return noiseFloor;
+    }
+
+    /**
+     * Share of frames classified as speech so far.
+     */
+    public float speechRatio() {
+        final long total = frames;
+        return total == 0 ? 0 : (float) speechFrames / total;
+    }
+}
@@ -0,0 +1,64 @@
+#include <stdio.h>
+#include <stdlib.h>
+
+#include "dsp.h"
+
+static int failures;
+
+#define CHECK(condition) do { \
+    if (!(condition)) { \
+        fprintf(stderr, "%s:%d: check failed: %s\n", __FILE__, __LINE__, #condition); \
+        ++failures; \
+    } \
+} while (0)
+
+static void vectorizedConversion_matchesScalarForAllLengths(void) {
+    int16_t in[67];
+    float expected[67];
+    float actual[67];
+    for (int i = 0; i < 67; ++i) {
+        in[i] = (int16_t) (rand() - RAND_MAX / 2);
+    }
+    in[0] = -32768;
+    in[1] = 32767;
+    for (size_t count = 0; count <= 67; ++count) {
+        dsp_pcm16_to_float_scalar(in, expected, count, 1.0f / 32767.0f);
+        dsp_pcm16_to_float(in, actual, count, 1.0f / 32767.0f);
+        for (size_t i = 0; i < count; ++i) {
+            CHECK(actual[i] == expected[i]);
+        }
+    }
+}
+
+static void blockStats_countsCrossingsAcrossBlocks(void) {
+    const int16_t in[] = {100, -200, -300, 0, 400, -32768};
+    dsp_block_stats stats;
+    dsp_block_stats_compute(in, 6, 1, &stats);
+    CHECK(stats.sum_of_squares == 100LL * 100 + 200 * 200 + 300 * 300 + 400 * 400 + 32768LL * 32768);
+    CHECK(stats.peak == 32768);
+    CHECK(stats.zero_crossings == 4);
+
+    dsp_block_stats_compute(in, 3, 0, &stats);
+    CHECK(stats.zero_crossings == 1);
+    dsp_block_stats_compute(in + 3, 3, in[2] < 0, &stats);
+    CHECK(stats.zero_crossings == 2);
+}
+
+static void ringExtract_wrapsAroundTheEnd(void) {
+    const int16_t ring[] = {4, 5, 6, 0, 1, 2, 3};
+    float out[5];
+    dsp_ring_extract(ring, 7, 5, 5, out, 1.0f);
+    CHECK(out[0] == 2 && out[1] == 3 && out[2] == 4 && out[3] == 5 && out[4] == 6);
+    dsp_ring_extract(ring, 7, 3, 4, out, 0.5f);
+    CHECK(out[0] == 0 && out[1] == 0.5f && out[3] == 1.5f);
+}
+
+int main(void) {
+    vectorizedConversion_matchesScalarForAllLengths();
+    blockStats_countsCrossingsAcrossBlocks();
+    ringExtract_wrapsAroundTheEnd();
+    if (failures == 0) {
+        printf("dsp_test: all checks passed\n");
+    }
+    return failures == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+}
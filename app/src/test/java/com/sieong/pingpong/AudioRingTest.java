@@ -0,0 +1,93 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AudioRingTest {
+    private static final int WINDOW = 16000;
+    private static final int MAX_WRITE = 1600;
+
+    @Test
+    public void snapshotBeforeWindowIsFull_startsWithSilence() {
+        AudioRing ring = new AudioRing(8, 4);
+        ring.write(new short[]{1, 2, 3}, 0, 3);
+        short[] out = new short[8];
+        assertEquals(3, ring.snapshot(out));
+        assertArrayEquals(new short[]{0, 0, 0, 0, 0, 1, 2, 3}, out);
+    }
+
+    @Test
+    public void longWrites_wrapAndKeepTheLatestSamples() {
+        AudioRing ring = new AudioRing(8, 4);
+        short[] samples = new short[37];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) i;
+        }
+        ring.write(samples, 0, samples.length);
+        short[] out = new short[8];
+        assertEquals(37, ring.snapshot(out));
+        assertArrayEquals(new short[]{29, 30, 31, 32, 33, 34, 35, 36}, out);
+        assertEquals(37, ring.readSequence());
+    }
+
+    /**
+     * Runs a capture-like writer against a snapshotting reader. Every sample carries its own
+     * sequence number, so a torn snapshot shows up as a break in the numbering.
+     */
+    @Test(timeout = 30000)
+    public void concurrentWriterAndReader_neverTearSnapshots() throws Exception {
+        final AudioRing ring = new AudioRing(WINDOW, MAX_WRITE);
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                short[] chunk = new short[4 * MAX_WRITE];
+                long sequence = 0;
+                while (running.get()) {
+                    int length = 1 + random.nextInt(chunk.length);
+                    for (int i = 0; i < length; ++i) {
+                        chunk[i] = (short) (sequence + i);
+                    }
+                    ring.write(chunk, 0, length);
+                    sequence += length;
+                    // Far faster than real time, but slow enough for the reader to get a window out.
+                    long until = System.nanoTime() + length * 5L;
+                    while (System.nanoTime() < until) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+
+        short[] window = new short[WINDOW];
+        int snapshots = 0;
+        writer.start();
+        try {
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (System.nanoTime() < deadline) {
+                long end = ring.snapshot(window);
+                long start = end - WINDOW;
+                for (int i = 0; i < WINDOW; ++i) {
+                    long sequence = start + i;
+                    short expected = sequence < 0 ? 0 : (short) sequence;
+                    if (window[i] != expected) {
+                        fail("Torn snapshot ending at " + end + ": sample " + i + " was " + window[i]
+                                + ", expected " + expected);
+                    }
+                }
+                ++snapshots;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue("reader made progress", snapshots > 100);
+        assertTrue("writer wrapped the ring many times", ring.writeSequence() > 100L * WINDOW);
+    }
+}
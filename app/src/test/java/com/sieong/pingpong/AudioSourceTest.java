@@ -0,0 +1,77 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class AudioSourceTest {
+
+    @Test
+    public void pcmFileSource_skipsWavHeaderAndReadsLittleEndianSamples() throws IOException {
+        File file = File.createTempFile("source", ".wav");
+        file.deleteOnExit();
+        short[] samples = {0, 1, -1, 32767, -32768};
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBytes("RIFF");
+            writeIntLe(out, 36 + samples.length * 2);
+            out.writeBytes("WAVE");
+            out.writeBytes("fmt ");
+            writeIntLe(out, 16);
+            writeShortLe(out, 1);
+            writeShortLe(out, 1);
+            writeIntLe(out, 16000);
+            writeIntLe(out, 32000);
+            writeShortLe(out, 2);
+            writeShortLe(out, 16);
+            out.writeBytes("data");
+            writeIntLe(out, samples.length * 2);
+            for (short sample : samples) {
+                writeShortLe(out, sample);
+            }
+        }
+
+        try (PcmFileSource source = new PcmFileSource(file, 16000, 0)) {
+            assertFalse(source.isPaced());
+            source.start();
+            short[] buffer = new short[4];
+            assertEquals(4, source.read(buffer, 0, 4));
+            assertArrayEquals(new short[]{0, 1, -1, 32767}, buffer);
+            assertEquals(1, source.read(buffer, 0, 4));
+            assertEquals(-32768, buffer[0]);
+            assertEquals(-1, source.read(buffer, 0, 4));
+        }
+    }
+
+    @Test
+    public void syntheticSource_isReproducibleAndEnds() throws IOException {
+        short[] first = new short[16000];
+        short[] second = new short[16000];
+        try (SyntheticAudioSource a = new SyntheticAudioSource(16000, 1500, 0, 42);
+             SyntheticAudioSource b = new SyntheticAudioSource(16000, 1500, 0, 42)) {
+            assertEquals(16000, a.read(first, 0, first.length));
+            for (int offset = 0; offset < second.length; offset += 160) {
+                assertEquals(160, b.read(second, offset, 160));
+            }
+            assertArrayEquals(first, second);
+            assertEquals(8000, a.read(first, 0, first.length));
+            assertEquals(-1, a.read(first, 0, first.length));
+            assertFalse(a.isBurst(16000 * 1499L / 1000));
+            assertTrue(a.isBurst(16000 * 1500L / 1000));
+        }
+    }
+
+    private static void writeIntLe(DataOutputStream out, int value) throws IOException {
+        writeShortLe(out, value);
+        writeShortLe(out, value >> 16);
+    }
+
+    private static void writeShortLe(DataOutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+}
@@ -0,0 +1,74 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CommandDispatcherTest {
+    private static final List<String> LABELS = Arrays.asList(
+            "_silence_", "_unknown_", "yes", "no", "up", "down", "left", "right", "on", "off", "stop", "go");
+
+    private static RecognizeCommands.RecognitionResult detected(String label) {
+        return new RecognizeCommands.RecognitionResult(LABELS.indexOf(label), label, 0.9f, true);
+    }
+
+    @Test
+    public void defaultBindings_keepYesGoStop() {
+        CommandDispatcher dispatcher = new CommandDispatcher(LABELS);
+        assertEquals(CommandDispatcher.Action.HOST_POINT, dispatcher.dispatch(detected("yes"), 0));
+        assertEquals(CommandDispatcher.Action.UNDO, dispatcher.dispatch(detected("stop"), 1000));
+        assertNull(dispatcher.dispatch(detected("no"), 20000));
+        assertNull(dispatcher.dispatch(detected("_unknown_"), 30000));
+        assertEquals(CommandDispatcher.Action.GUEST_POINT, dispatcher.dispatch(detected("go"), 40000));
+    }
+
+    @Test
+    public void repeatedDetection_isNotDispatched() {
+        CommandDispatcher dispatcher = new CommandDispatcher(LABELS);
+        RecognizeCommands.RecognitionResult result = detected("stop");
+        result.isNewCommand = false;
+        assertNull(dispatcher.dispatch(result, 0));
+    }
+
+    @Test
+    public void pointsTooCloseTogether_areDropped_butOtherActionsAreNot() throws IOException {
+        Map<String, CommandDispatcher.Action> bindings = CommandDispatcher.readBindings(new StringReader(
+                "yes = HOST_POINT\nup = ANNOUNCE_SCORE\n"));
+        CommandDispatcher dispatcher = new CommandDispatcher(LABELS, bindings);
+
+        assertEquals(CommandDispatcher.Action.HOST_POINT, dispatcher.dispatch(detected("yes"), 0));
+        assertNull(dispatcher.dispatch(detected("yes"), 2000));
+        assertEquals(CommandDispatcher.Action.ANNOUNCE_SCORE, dispatcher.dispatch(detected("up"), 3000));
+        assertEquals(CommandDispatcher.Action.HOST_POINT,
+                dispatcher.dispatch(detected("yes"), CommandDispatcher.MINIMUM_TIME_BETWEEN_SCORES_MS));
+    }
+
+    @Test
+    public void readBindings_skipsCommentsAndBlankLines() throws IOException {
+        Map<String, CommandDispatcher.Action> bindings = CommandDispatcher.readBindings(new StringReader(
+                "# venue remap\n\n  left=HOST_POINT \nright = GUEST_POINT\noff = RESTART\n"));
+        CommandDispatcher dispatcher = new CommandDispatcher(LABELS, bindings);
+
+        assertEquals(3, bindings.size());
+        assertEquals(CommandDispatcher.Action.HOST_POINT, dispatcher.dispatch(detected("left"), 0));
+        assertEquals(CommandDispatcher.Action.RESTART, dispatcher.dispatch(detected("off"), 100));
+        // No longer bound once remapped.
+        assertNull(dispatcher.dispatch(detected("yes"), 20000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readBindings_rejectsUnknownAction() throws IOException {
+        CommandDispatcher.readBindings(new StringReader("yes = SMASH\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bindingForMissingLabel_isRejected() throws IOException {
+        new CommandDispatcher(LABELS, CommandDispatcher.readBindings(new StringReader("ace = HOST_POINT\n")));
+    }
+}
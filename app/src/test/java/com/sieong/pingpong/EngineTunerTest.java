@@ -0,0 +1,110 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EngineTunerTest {
+    private static final int WINDOW_LENGTH = 1600;
+    private static final int SAMPLE_RATE = 16000;
+    private static final String KEY = "model@device";
+
+    private final StubInferenceEngine.Clock clock = new StubInferenceEngine.Clock();
+    private final Map<String, String> stored = new HashMap<>();
+    private final TuningStore store = new TuningStore() {
+        @Override
+        public String get(String key) {
+            return stored.get(key);
+        }
+
+        @Override
+        public void put(String key, String value) {
+            stored.put(key, value);
+        }
+    };
+    private final Map<EngineConfig, Long> costs = new HashMap<>();
+    private final List<EngineConfig> created = new ArrayList<>();
+    private final List<StubInferenceEngine> engines = new ArrayList<>();
+
+    private final InferenceEngine.Factory factory = config -> {
+        final Long cost = costs.get(config);
+        if (cost == null) {
+            throw new IllegalArgumentException("Unsupported " + config);
+        }
+        created.add(config);
+        final StubInferenceEngine engine = new StubInferenceEngine(clock, cost, WINDOW_LENGTH);
+        engines.add(engine);
+        return engine;
+    };
+
+    private EngineTuner newTuner() {
+        return new EngineTuner(factory, store, KEY, WINDOW_LENGTH, SAMPLE_RATE, 12, () -> clock.now());
+    }
+
+    @Test
+    public void picksFastestCandidateAndRemembersIt() {
+        EngineConfig cpu1 = new EngineConfig(1, EngineConfig.Delegate.CPU);
+        EngineConfig cpu4 = new EngineConfig(4, EngineConfig.Delegate.CPU);
+        EngineConfig xnnpack2 = new EngineConfig(2, EngineConfig.Delegate.XNNPACK);
+        costs.put(cpu1, 30_000_000L);
+        costs.put(cpu4, 12_000_000L);
+        costs.put(xnnpack2, 9_000_000L);
+
+        EngineTuner.Result result = newTuner().select(Arrays.asList(cpu1, xnnpack2, cpu4));
+
+        assertEquals(xnnpack2, result.getConfig());
+        assertEquals(3, result.getTimingsNanos().size());
+        assertEquals(Long.valueOf(9_000_000L), result.getTimingsNanos().get(xnnpack2));
+        assertEquals("XNNPACK:2", stored.get(KEY));
+        for (StubInferenceEngine engine : engines) {
+            assertEquals(engine != result.getEngine(), engine.closed);
+        }
+    }
+
+    @Test
+    public void storedChoiceSkipsTiming() {
+        EngineConfig cpu2 = new EngineConfig(2, EngineConfig.Delegate.CPU);
+        costs.put(cpu2, 10_000_000L);
+        costs.put(EngineConfig.DEFAULT, 20_000_000L);
+        stored.put(KEY, cpu2.encode());
+
+        EngineTuner.Result result = newTuner().select(EngineConfig.candidates(false));
+
+        assertEquals(cpu2, result.getConfig());
+        assertTrue(result.getTimingsNanos().isEmpty());
+        assertEquals(Arrays.asList(cpu2), created);
+        assertEquals(0, engines.get(0).runs);
+    }
+
+    @Test
+    public void unsupportedConfigsAreSkippedAndStaleChoiceRetuned() {
+        // Stored from before an update that removed NNAPI support.
+        stored.put(KEY, "NNAPI:1");
+        EngineConfig cpu1 = new EngineConfig(1, EngineConfig.Delegate.CPU);
+        EngineConfig cpu2 = new EngineConfig(2, EngineConfig.Delegate.CPU);
+        costs.put(cpu1, 20_000_000L);
+        costs.put(cpu2, 11_000_000L);
+
+        EngineTuner.Result result = newTuner().select(EngineConfig.candidates(true));
+
+        assertEquals(cpu2, result.getConfig());
+        assertEquals("CPU:2", stored.get(KEY));
+        assertEquals(2, result.getTimingsNanos().size());
+    }
+
+    @Test
+    public void configRoundTripsThroughItsEncoding() {
+        for (EngineConfig config : EngineConfig.candidates(true)) {
+            assertEquals(config, EngineConfig.decode(config.encode()));
+        }
+        assertNull(EngineConfig.decode("GPU:1"));
+        assertNull(EngineConfig.decode("CPU:0"));
+        assertNull(EngineConfig.decode(null));
+    }
+}
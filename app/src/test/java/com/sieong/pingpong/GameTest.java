@@ -0,0 +1,255 @@
+package com.sieong.pingpong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class GameTest {
+    private File journalFile;
+
+    @Before
+    public void createJournalFile() throws IOException {
+        journalFile = File.createTempFile("game", ".journal");
+        assertTrue(journalFile.delete());
+    }
+
+    @After
+    public void deleteJournalFile() {
+        journalFile.delete();
+    }
+
+    @Test
+    public void deuce_needsTwoClearPoints() {
+        Game game = new Game();
+        for (int i = 0; i < 10; ++i) {
+            game.hostScores();
+            game.guestScores();
+        }
+        assertEquals("Deuce.", game.toString());
+        game.hostScores();
+        assertFalse(game.isGameOver());
+        game.hostScores();
+        assertTrue(game.isGameOver());
+        game.guestScores();
+        assertEquals(10, game.getScoreGuest());
+    }
+
+    @Test
+    public void undo_takesBackEveryPointInTurn() {
+        Game game = new Game();
+        game.hostScores();
+        game.guestScores();
+        game.guestScores();
+
+        game.cancelLastPoint();
+        assertEquals(Game.PlayerRole.GUEST, game.getLastScoredPlayer());
+        game.cancelLastPoint();
+        game.cancelLastPoint();
+        assertEquals(0, game.getScoreHost());
+        assertEquals(0, game.getScoreGuest());
+        assertNull(game.getLastScoredPlayer());
+        // Nothing left to take back.
+        game.cancelLastPoint();
+        assertEquals(0, game.getScoreHost());
+    }
+
+    @Test
+    public void undo_withoutJournalReachesBackEightPoints() {
+        Game game = new Game();
+        for (int i = 0; i < 8; ++i) {
+            game.hostScores();
+            game.guestScores();
+        }
+        for (int i = 0; i < 12; ++i) {
+            game.cancelLastPoint();
+        }
+        assertEquals(4, game.getScoreHost());
+        assertEquals(4, game.getScoreGuest());
+    }
+
+    @Test
+    public void undo_withJournalReachesBackToTheStart() throws IOException {
+        Game game = new Game(GameJournal.open(journalFile));
+        // Never two points apart, so the game never ends.
+        for (int i = 0; i < 30; ++i) {
+            if (i % 2 == 0) {
+                game.hostScores();
+            } else {
+                game.guestScores();
+            }
+        }
+        game.cancelLastPoint();
+        game.guestScores();
+        for (int i = 0; i < 25; ++i) {
+            game.cancelLastPoint();
+        }
+        // Points 0 to 4 still stand: host, guest, host, guest, host.
+        assertEquals(3, game.getScoreHost());
+        assertEquals(2, game.getScoreGuest());
+        assertEquals(Game.PlayerRole.HOST, game.getLastScoredPlayer());
+        for (int i = 0; i < 6; ++i) {
+            game.cancelLastPoint();
+        }
+        assertEquals(0, game.getScoreHost());
+        assertEquals(0, game.getScoreGuest());
+    }
+
+    @Test
+    public void undo_withJournalReachesIntoTheLastGame() throws IOException {
+        Game game = new Game(GameJournal.open(journalFile), new RuleSet(11, 2, 3));
+        for (int i = 0; i < 11; ++i) {
+            game.hostScores();
+        }
+        game.guestScores();
+        game.cancelLastPoint();
+        assertEquals(11, game.getScoreHost());
+        assertEquals(0, game.getScoreGuest());
+        assertTrue(game.isGameOver());
+        game.cancelLastPoint();
+        assertEquals(10, game.getScoreHost());
+        assertEquals(0, game.getScore().getGamesHost());
+    }
+
+    @Test
+    public void scores_areSnapshotsOrderedByVersion() {
+        Game game = new Game();
+        Score first = game.hostScores();
+        Score second = game.guestScores();
+        game.reset();
+        Score third = game.getScore();
+
+        assertEquals(1, first.getScoreHost());
+        assertEquals(0, first.getScoreGuest());
+        assertTrue(second.isNewerThan(first));
+        assertTrue(third.isNewerThan(second));
+        assertFalse(first.isNewerThan(third));
+        // Nothing to take back: no change, no new version.
+        assertEquals(third, game.cancelLastPoint());
+    }
+
+    @Test
+    public void concurrentScoring_losesNoPoints() throws Exception {
+        Game game = new Game(GameJournal.open(journalFile));
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final boolean host = t % 2 == 0;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2500; ++i) {
+                    if (host) {
+                        game.hostScores();
+                    } else {
+                        game.guestScores();
+                    }
+                    game.cancelLastPoint();
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, game.getScoreHost());
+        assertEquals(0, game.getScoreGuest());
+
+        // The journal holds the same changes in the order the game made them.
+        Game restored = new Game(GameJournal.open(journalFile));
+        assertEquals(game.getScore(), restored.getScore());
+    }
+
+    @Test
+    public void journal_restoresGameAfterRestart() throws IOException {
+        GameJournal journal = GameJournal.open(journalFile);
+        Game game = new Game(journal);
+        game.hostScores();
+        game.hostScores();
+        game.guestScores();
+        game.cancelLastPoint();
+        game.guestScores();
+        // No close: as if the process had been killed.
+
+        Game restored = new Game(GameJournal.open(journalFile));
+        assertEquals(2, restored.getScoreHost());
+        assertEquals(1, restored.getScoreGuest());
+        restored.cancelLastPoint();
+        restored.cancelLastPoint();
+        assertEquals(1, restored.getScoreHost());
+        assertEquals(0, restored.getScoreGuest());
+    }
+
+    @Test
+    public void journal_startsOverOnReset() throws IOException {
+        GameJournal journal = GameJournal.open(journalFile);
+        Game game = new Game(journal);
+        for (int i = 0; i < 5; ++i) {
+            game.hostScores();
+        }
+        game.reset();
+        game.guestScores();
+        journal.close();
+
+        GameJournal reopened = GameJournal.open(journalFile);
+        // The reset and the one point after it; the five before are gone.
+        assertEquals(2, reopened.getSize());
+        Game restored = new Game(reopened);
+        assertEquals(0, restored.getScoreHost());
+        assertEquals(1, restored.getScoreGuest());
+    }
+
+    @Test
+    public void journal_startsOverWhenTheMatchNumberWraps() throws IOException {
+        GameJournal journal = GameJournal.open(journalFile);
+        Game game = new Game(journal);
+        for (int i = 0; i < 10; ++i) {
+            game.hostScores();
+        }
+        // Enough short matches to bring the match number in the state back round to the first's.
+        for (int i = 0; i < 4096; ++i) {
+            game.reset();
+        }
+        game.guestScores();
+        journal.close();
+
+        GameJournal reopened = GameJournal.open(journalFile);
+        // The first match's records past the new end do not come back.
+        assertEquals(2, reopened.getSize());
+        assertEquals(4096, reopened.getEpoch());
+        Game restored = new Game(reopened);
+        assertEquals(0, restored.getScoreHost());
+        assertEquals(1, restored.getScoreGuest());
+        restored.reset();
+        restored.hostScores();
+        reopened.close();
+
+        reopened = GameJournal.open(journalFile);
+        assertEquals(4097, reopened.getEpoch());
+        assertEquals(2, reopened.getSize());
+        reopened.close();
+    }
+
+    @Test
+    public void journal_growsAndIgnoresTornRecord() throws IOException {
+        GameJournal journal = GameJournal.open(journalFile);
+        for (int i = 0; i < 3000; ++i) {
+            journal.append(i % 2 == 0 ? GameJournal.Event.HOST_POINT : GameJournal.Event.UNDO, i);
+        }
+        journal.append(GameJournal.Event.GUEST_POINT, 3000);
+        journal.close();
+
+        // Tear the last record as a crash halfway through writing it would.
+        try (RandomAccessFile raw = new RandomAccessFile(journalFile, "rw")) {
+            raw.seek(16 + 3000L * GameJournal.RECORD_SIZE + 12);
+            raw.writeInt(0);
+        }
+        Game restored = new Game(GameJournal.open(journalFile));
+        assertEquals(0, restored.getScoreHost());
+        assertEquals(0, restored.getScoreGuest());
+    }
+}
@@ -0,0 +1,64 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HopSchedulerTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void withoutNewAudio_timesOut() {
+        AudioRing ring = new AudioRing(SAMPLE_RATE, SAMPLE_RATE / 10);
+        HopScheduler scheduler = new HopScheduler(ring, SAMPLE_RATE, 40);
+        assertFalse(scheduler.awaitNextWindow(20));
+    }
+
+    @Test(timeout = 5000)
+    public void wakesOnceAHopHasBeenWritten() throws Exception {
+        final AudioRing ring = new AudioRing(SAMPLE_RATE, SAMPLE_RATE / 10);
+        final HopScheduler scheduler = new HopScheduler(ring, SAMPLE_RATE, 40);
+        scheduler.onWindowTaken(ring.snapshot(new short[SAMPLE_RATE]));
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short[] chunk = new short[160];
+                for (int i = 0; i < 4; ++i) {
+                    sleepMs(5);
+                    ring.write(chunk, 0, chunk.length);
+                    scheduler.onSamplesWritten();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(scheduler.awaitNextWindow(4000));
+        assertTrue(ring.writeSequence() >= scheduler.hopLength());
+        writer.join();
+    }
+
+    @Test
+    public void slowWindows_countSkippedHopsAndLowerTheRate() {
+        AudioRing ring = new AudioRing(SAMPLE_RATE, SAMPLE_RATE / 10);
+        HopScheduler scheduler = new HopScheduler(ring, SAMPLE_RATE, 40);
+        int hop = scheduler.hopLength();
+        assertEquals(640, hop);
+
+        scheduler.onWindowTaken(0);
+        scheduler.onWindowTaken(hop);
+        assertEquals(25.0f, scheduler.effectiveHopRateHz(), 0.01f);
+
+        scheduler.onWindowTaken(hop + 3 * hop);
+        assertEquals(2, scheduler.skippedHops());
+        assertEquals(3, scheduler.windows());
+        assertTrue(scheduler.effectiveHopRateHz() < 25.0f);
+    }
+
+    private static void sleepMs(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LogMelExtractorTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = 480;
+    private static final int STEP = 320;
+    private static final int MEL_BINS = 40;
+    private static final int FRAMES = (SAMPLE_RATE - FRAME) / STEP + 1;
+
+    private static LogMelExtractor newExtractor(int mfccCount) {
+        return new LogMelExtractor(SAMPLE_RATE, FRAME, STEP, MEL_BINS, mfccCount, 20.0f, 4000.0f, FRAMES);
+    }
+
+    private static short[] tone(float hz, float amplitude) {
+        final short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) (amplitude * 32767 * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static short[] noise(float amplitude) {
+        final Random random = new Random(11);
+        final short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) (amplitude * 32767 * (random.nextFloat() * 2 - 1));
+        }
+        return samples;
+    }
+
+    private static float[] newestFrames(LogMelExtractor extractor, int frames) {
+        final FloatBuffer out = FloatBuffer.allocate(frames * extractor.features().featureCount());
+        extractor.features().snapshot(out, frames);
+        return out.array();
+    }
+
+    @Test
+    public void blockSize_doesNotChangeFrames() throws Exception {
+        final short[] audio = new short[SAMPLE_RATE];
+        try (SyntheticAudioSource source = new SyntheticAudioSource(SAMPLE_RATE, 1001, 0, 3)) {
+            source.read(audio, 0, audio.length);
+        }
+        LogMelExtractor whole = newExtractor(0);
+        whole.process(audio, 0, audio.length);
+        LogMelExtractor pieces = newExtractor(0);
+        for (int offset = 0; offset < audio.length; offset += 7) {
+            pieces.process(audio, offset, Math.min(7, audio.length - offset));
+        }
+
+        assertEquals(FRAMES, whole.features().writeSequence());
+        assertEquals(FRAMES, pieces.features().writeSequence());
+        assertArrayEquals(newestFrames(whole, FRAMES), newestFrames(pieces, FRAMES), 0.0f);
+    }
+
+    @Test
+    public void tone_peaksInTheBandAroundIt() {
+        LogMelExtractor extractor = newExtractor(0);
+        extractor.process(tone(1000, 0.5f), 0, SAMPLE_RATE);
+
+        final float[] frame = newestFrames(extractor, 1);
+        int peak = 0;
+        for (int m = 1; m < MEL_BINS; ++m) {
+            if (frame[m] > frame[peak]) {
+                peak = m;
+            }
+        }
+        // Band edges on the HTK mel scale, as the extractor lays them out.
+        final double lowMel = 2595 * Math.log10(1 + 20 / 700.0);
+        final double highMel = 2595 * Math.log10(1 + 4000 / 700.0);
+        final double left = 700 * (Math.pow(10, (lowMel + (highMel - lowMel) * peak / (MEL_BINS + 1)) / 2595) - 1);
+        final double right = 700 * (Math.pow(10, (lowMel + (highMel - lowMel) * (peak + 2) / (MEL_BINS + 1)) / 2595) - 1);
+        assertTrue(left + " < 1000 < " + right, left < 1000 && 1000 < right);
+        assertTrue(frame[peak] > frame[0] + 5);
+    }
+
+    @Test
+    public void mfcc_firstCoefficientFollowsLoudness() {
+        LogMelExtractor quiet = newExtractor(13);
+        quiet.process(noise(0.05f), 0, SAMPLE_RATE);
+        LogMelExtractor loud = newExtractor(13);
+        loud.process(noise(0.5f), 0, SAMPLE_RATE);
+
+        assertEquals(13, loud.features().featureCount());
+        // Ten times the amplitude adds ln(100) to every band, and sqrt(40) times that to c0.
+        assertEquals(Math.log(100) * Math.sqrt(MEL_BINS),
+                newestFrames(loud, 1)[0] - newestFrames(quiet, 1)[0], 0.5);
+    }
+
+    @Test
+    public void featureRing_returnsNewestFramesOldestFirst() {
+        FeatureRing ring = new FeatureRing(2, 3);
+        final FloatBuffer out = FloatBuffer.allocate(6);
+        assertEquals(0, ring.snapshot(out, 3));
+        assertArrayEquals(new float[6], out.array(), 0.0f);
+
+        for (int i = 1; i <= 7; ++i) {
+            ring.write(new float[]{i, -i});
+        }
+        out.position(1);
+        assertEquals(7, ring.snapshot(out, 3));
+        assertArrayEquals(new float[]{5, -5, 6, -6, 7, -7}, out.array(), 0.0f);
+        assertEquals(1, out.position());
+    }
+}
@@ -0,0 +1,140 @@
+package com.sieong.pingpong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MatchArchiveTest {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("archive").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Host wins every point but each third, a point every 20 seconds or so.
+     */
+    private static MatchArchive.Points points(long startMs, int count) {
+        boolean[] hostWon = new boolean[count];
+        long[] timesMs = new long[count];
+        for (int i = 0; i < count; ++i) {
+            hostWon[i] = i % 3 != 2;
+            timesMs[i] = startMs + 20_000L * i + i % 7;
+        }
+        return new MatchArchive.Points(hostWon, timesMs);
+    }
+
+    @Test
+    public void points_surviveReopening() throws IOException {
+        MatchArchive.Points first = points(1000, 33);
+        MatchArchive.Points second = points(DAY_MS, 150);
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            archive.append(1000, 1, 2, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, first);
+            archive.append(DAY_MS, 2, 3, new RuleSet(21, 5, 3, true), 2, 1, second);
+        }
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            assertEquals(2, archive.getSize());
+            MatchArchive.Points read = archive.readPoints(1);
+            assertArrayEquals(second.getHostWon(), read.getHostWon());
+            assertArrayEquals(second.getTimesMs(), read.getTimesMs());
+            assertArrayEquals(first.getTimesMs(), archive.readPoints(0).getTimesMs());
+            assertEquals(100, archive.pointsHost(1));
+            assertEquals(50, archive.pointsGuest(1));
+            assertEquals(149 * 20_000L + 2, archive.durationMs(1));
+
+            RuleSet rules = archive.rules(1);
+            assertEquals(21, rules.getPointsToWin());
+            assertEquals(5, rules.getServesPerTurn());
+            assertEquals(3, rules.getBestOf());
+            assertTrue(rules.getDoubles());
+            assertSame(rules, archive.rules(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void append_rejectsRulesTheEntryCannotHold() throws IOException {
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            archive.append(0, 1, 2, new RuleSet(21, 8), 1, 0, points(0, 21));
+        }
+    }
+
+    @Test
+    public void playerQueries_coverTheDateRangeOnly() throws IOException {
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            // Player 7 plays every day, as host on even days; players 1 and 2 play each other too.
+            for (int day = 0; day < 60; ++day) {
+                long start = day * DAY_MS;
+                archive.append(start, 1, 2, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(start, 12));
+                if (day % 2 == 0) {
+                    archive.append(start + 1, 7, 1, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(start + 1, 12));
+                } else {
+                    archive.append(start + 1, 2, 7, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(start + 1, 12));
+                }
+            }
+            // Days 30 to 39: five as host, five as guest.
+            MatchArchive.Summary summary = archive.summarize(7, 30 * DAY_MS, 40 * DAY_MS);
+            assertEquals(10, summary.getMatches());
+            assertEquals(5, summary.getMatchesWon());
+            assertEquals(5, summary.getGamesWon());
+            assertEquals(5, summary.getGamesLost());
+            assertEquals(5 * 8 + 5 * 4, summary.getPointsWon());
+            assertEquals(5 * 4 + 5 * 8, summary.getPointsLost());
+            assertEquals(10 * (11 * 20_000L + 4), summary.getDurationMs());
+
+            assertEquals(90, archive.summarize(1, 0, Long.MAX_VALUE).getMatches());
+            assertEquals(0, archive.summarize(9, 0, Long.MAX_VALUE).getMatches());
+            assertEquals(60, archive.firstStartingFrom(30 * DAY_MS));
+            assertEquals(120, archive.firstStartingFrom(Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void appendCutShort_leavesTheChainsSound() throws IOException {
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            for (int day = 0; day < 3; ++day) {
+                archive.append(day * DAY_MS, 1, 2, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(day * DAY_MS, 11));
+            }
+        }
+        // As if the process had died with the third match in place but not yet counted.
+        try (RandomAccessFile raw = new RandomAccessFile(new File(directory, MatchArchive.INDEX_FILENAME), "rw")) {
+            raw.seek(8);
+            raw.writeInt(Integer.reverseBytes(2));
+        }
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            assertEquals(2, archive.getSize());
+            assertEquals(2, archive.summarize(1, 0, Long.MAX_VALUE).getMatches());
+            archive.append(5 * DAY_MS, 2, 1, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(5 * DAY_MS, 11));
+            assertEquals(3, archive.summarize(1, 0, Long.MAX_VALUE).getMatches());
+            assertEquals(3, archive.summarize(2, 0, Long.MAX_VALUE).getMatches());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void append_rejectsMatchesOutOfOrder() throws IOException {
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            archive.append(DAY_MS, 1, 2, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(DAY_MS, 11));
+            archive.append(0, 1, 2, RuleSet.ELEVEN_POINT_SINGLES, 1, 0, points(0, 11));
+        }
+    }
+}
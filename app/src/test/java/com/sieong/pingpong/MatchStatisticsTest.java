@@ -0,0 +1,82 @@
+package com.sieong.pingpong;
+
+import com.sieong.pingpong.Game.PlayerRole;
+import com.sieong.pingpong.MatchStatistics.Source;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MatchStatisticsTest {
+
+    private static String describe(MatchStatistics.Snapshot s) {
+        StringBuilder out = new StringBuilder();
+        for (PlayerRole side : PlayerRole.values()) {
+            out.append(s.pointsWon(side)).append(' ').append(s.servePoints(side)).append(' ')
+                    .append(s.wonOnServe(side)).append(' ').append(s.longestRun(side)).append(' ');
+        }
+        return out.append(s.getRunSide()).append(' ').append(s.getRunLength()).append(' ')
+                .append(s.getMomentum()).append(' ').append(s.getAveragePointMs()).append(' ')
+                .append(s.getVoicePoints()).append(' ').append(s.getButtonPoints()).toString();
+    }
+
+    @Test
+    public void points_updateEveryFigure() {
+        MatchStatistics stats = new MatchStatistics(3);
+        stats.onPoint(PlayerRole.HOST, PlayerRole.HOST, Source.BUTTON, 1000);
+        stats.onPoint(PlayerRole.HOST, PlayerRole.HOST, Source.VOICE, 5000);
+        stats.onPoint(PlayerRole.GUEST, PlayerRole.HOST, Source.VOICE, 7000);
+        stats.onPoint(PlayerRole.GUEST, PlayerRole.GUEST, Source.VOICE, 15000);
+
+        MatchStatistics.Snapshot s = stats.getSnapshot();
+        assertEquals(3, s.pointsWon(PlayerRole.HOST));
+        assertEquals(2, s.wonOnServe(PlayerRole.HOST));
+        assertEquals(1, s.wonOnReturn(PlayerRole.HOST));
+        assertEquals(2, s.returnPoints(PlayerRole.HOST));
+        assertEquals(1, s.wonOnServe(PlayerRole.GUEST));
+        assertEquals(3, s.longestRun(PlayerRole.HOST));
+        assertEquals(PlayerRole.GUEST, s.getRunSide());
+        assertEquals(1, s.getRunLength());
+        // The last three points: host, host, guest.
+        assertEquals(1, s.getMomentum());
+        assertEquals(14000 / 3, s.getAveragePointMs());
+        assertEquals(3, s.getVoicePoints());
+        assertEquals(1, s.getButtonPoints());
+    }
+
+    @Test
+    public void undo_restoresEveryFigureExactly() {
+        MatchStatistics stats = new MatchStatistics(5);
+        Random random = new Random(3);
+        String[] seen = new String[201];
+        seen[0] = describe(stats.getSnapshot());
+        long time = 0;
+        for (int i = 1; i <= 200; ++i) {
+            time += 1000 + random.nextInt(20000);
+            stats.onPoint(random.nextBoolean() ? PlayerRole.HOST : PlayerRole.GUEST,
+                    random.nextInt(3) == 0 ? PlayerRole.GUEST : PlayerRole.HOST,
+                    random.nextBoolean() ? Source.VOICE : Source.BUTTON, time);
+            seen[i] = describe(stats.getSnapshot());
+        }
+        for (int i = 199; i >= 0; --i) {
+            stats.onUndo();
+            assertEquals(seen[i], describe(stats.getSnapshot()));
+        }
+        stats.onUndo();
+        assertEquals(seen[0], describe(stats.getSnapshot()));
+    }
+
+    @Test
+    public void snapshot_isNotChangedByLaterPoints() {
+        MatchStatistics stats = new MatchStatistics();
+        stats.onPoint(PlayerRole.HOST, PlayerRole.GUEST, Source.BUTTON, 0);
+        MatchStatistics.Snapshot before = stats.getSnapshot();
+        stats.onPoint(PlayerRole.HOST, PlayerRole.GUEST, Source.BUTTON, 1000);
+        stats.onReset();
+        assertEquals(1, before.pointsWon(PlayerRole.GUEST));
+        assertEquals(0, stats.getSnapshot().pointsWon(PlayerRole.GUEST));
+        assertNull(stats.getSnapshot().getRunSide());
+    }
+}
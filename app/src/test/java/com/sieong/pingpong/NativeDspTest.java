@@ -0,0 +1,57 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class NativeDspTest {
+
+    @Test
+    public void ringToFloat_wrapsAroundTheEnd() {
+        short[] ring = {4, 5, 6, 0, 1, 2, 3};
+        FloatBuffer out = ByteBuffer.allocateDirect(5 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        NativeDsp.ringToFloat(ring, 5, 5, out, 0.5f);
+        for (int i = 0; i < 5; ++i) {
+            assertEquals((i + 2) * 0.5f, out.get(i), 0.0f);
+        }
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void blockStats_countsCrossingsAcrossBlocks() {
+        short[] samples = {100, -200, -300, 0, 400, -32768};
+        long[] stats = new long[NativeDsp.BLOCK_STATS_LENGTH];
+        NativeDsp.blockStats(samples, 0, samples.length, true, stats);
+        assertEquals(100L * 100 + 200 * 200 + 300 * 300 + 400 * 400 + 32768L * 32768, stats[NativeDsp.SUM_OF_SQUARES]);
+        assertEquals(32768, stats[NativeDsp.PEAK]);
+        assertEquals(4, stats[NativeDsp.ZERO_CROSSINGS]);
+
+        NativeDsp.blockStats(samples, 3, 3, samples[2] < 0, stats);
+        assertEquals(2, stats[NativeDsp.ZERO_CROSSINGS]);
+    }
+
+    @Test
+    public void ringSnapshot_matchesShortSnapshotConversion() {
+        AudioRing ring = new AudioRing(100, 30);
+        short[] chunk = new short[30];
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < chunk.length; ++i) {
+                chunk[i] = (short) (round * 1000 - i * 37);
+            }
+            ring.write(chunk, 0, chunk.length);
+        }
+        short[] samples = new short[100];
+        float[] expected = new float[100];
+        ring.snapshot(samples);
+        PcmWindow.toFloat(samples, expected);
+        FloatBuffer out = FloatBuffer.allocate(100);
+        assertEquals(300, ring.snapshot(out, 100, PcmWindow.SCALE));
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(expected[i], out.get(i), 0.0f);
+        }
+    }
+}
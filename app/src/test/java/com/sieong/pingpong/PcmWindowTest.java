@@ -0,0 +1,48 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class PcmWindowTest {
+    private static final short[] SAMPLES = {0, 32767, -32767, 16384, -32768};
+
+    @Test
+    public void isPcmQuantization_acceptsPcmScalesOnly() {
+        assertTrue(PcmWindow.isPcmQuantization(0.0f, 0));
+        assertTrue(PcmWindow.isPcmQuantization(1.0f / 32767.0f, 0));
+        assertTrue(PcmWindow.isPcmQuantization(1.0f / 32768.0f, 0));
+        assertFalse(PcmWindow.isPcmQuantization(1.0f / 32768.0f, 5));
+        assertFalse(PcmWindow.isPcmQuantization(1.0f / 127.0f, 0));
+    }
+
+    @Test
+    public void quantize_int8() {
+        ByteBuffer out = ByteBuffer.allocate(SAMPLES.length);
+        PcmWindow.quantize(SAMPLES, out, 1.0f / 127.0f, 0, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        assertArrayEquals(new byte[]{0, 127, -127, 64, -127}, out.array());
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void quantize_uint8ClampsToRange() {
+        ByteBuffer out = ByteBuffer.allocate(SAMPLES.length);
+        // Only [-0.5, 0.5] is representable, around a zero point of 128.
+        PcmWindow.quantize(SAMPLES, out, 1.0f / 255.0f, 128, 0, 255);
+        int[] values = new int[SAMPLES.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = out.get(i) & 0xff;
+        }
+        assertArrayEquals(new int[]{128, 255, 0, 255, 0}, values);
+    }
+
+    @Test
+    public void quantize_int16WithCoarserScale() {
+        ShortBuffer out = ShortBuffer.allocate(SAMPLES.length);
+        PcmWindow.quantize(SAMPLES, out, 1.0f / 1024.0f, 0);
+        assertArrayEquals(new short[]{0, 1024, -1024, 512, -1024}, out.array());
+    }
+}
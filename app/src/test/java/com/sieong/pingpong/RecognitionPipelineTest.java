@@ -0,0 +1,295 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RecognitionPipelineTest {
+    private static final List<String> LABELS = Arrays.asList(
+            "_silence_", "_unknown_", "yes", "no", "up", "down", "left", "right", "on", "off", "stop", "go");
+    private static final int SAMPLE_RATE = 16000;
+
+    /**
+     * Says "go" whenever the window is loud, which the synthetic bursts are and its clicks are not
+     * for long enough to matter.
+     */
+    private static class LoudnessEngine implements InferenceEngine {
+        private final short[] window = new short[SAMPLE_RATE];
+        int runs;
+        boolean closed;
+
+        @Override
+        public long load(AudioRing ring) {
+            return ring.snapshot(window);
+        }
+
+        @Override
+        public void run(float[] scores) {
+            ++runs;
+            score(window, scores);
+        }
+
+        static void score(short[] window, float[] scores) {
+            long sumOfSquares = 0;
+            for (short sample : window) {
+                sumOfSquares += sample * sample;
+            }
+            final boolean loud = sumOfSquares / window.length > 500L * 500L;
+            Arrays.fill(scores, 0.0f);
+            scores[loud ? LABELS.indexOf("go") : 0] = 1.0f;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Takes twice a hop's worth of real time per invocation however many windows it scores, so a
+     * real-time source leaves it behind unless it batches.
+     */
+    private static final class SlowBatchingEngine extends LoudnessEngine {
+        private final short[][] batchWindows = new short[8][SAMPLE_RATE];
+        int batchRuns;
+
+        @Override
+        public void run(float[] scores) {
+            sleep();
+            super.run(scores);
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return batchWindows.length;
+        }
+
+        @Override
+        public boolean loadBatch(AudioRing ring, long firstEnd, int hopLength, int count) {
+            for (int i = 0; i < count; ++i) {
+                if (!ring.read(firstEnd + (long) i * hopLength, batchWindows[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void runBatch(int count, float[][] scores) {
+            sleep();
+            ++batchRuns;
+            for (int i = 0; i < count; ++i) {
+                score(batchWindows[i], scores[i]);
+            }
+        }
+
+        private static void sleep() {
+            try {
+                Thread.sleep(2 * RecognitionPipeline.DEFAULT_HOP_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A device whose read can hang past an interrupt, as a stuck driver does, until released.
+     */
+    private static final class StuckSource implements AudioSource {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch reading = new CountDownLatch(1);
+        volatile boolean started;
+        volatile boolean closed;
+
+        @Override
+        public int sampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public int preferredReadLength() {
+            return SAMPLE_RATE / 10;
+        }
+
+        @Override
+        public boolean isPaced() {
+            return true;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) {
+            reading.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    return -1;
+                } catch (InterruptedException e) {
+                    // Ignored, like a read blocked in the driver.
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static final class RecordingListener implements RecognitionPipeline.Listener {
+        final List<CommandDispatcher.Action> actions = new ArrayList<>();
+        IOException failure;
+
+        @Override
+        public synchronized void onAction(CommandDispatcher.Action action) {
+            actions.add(action);
+        }
+
+        @Override
+        public void onCaptureFailed(IOException e) {
+            failure = e;
+        }
+
+        @Override
+        public void onScoreTraceFailed(IOException e) {
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void unpacedSource_evaluatesEveryHopAndDispatches() throws Exception {
+        LoudnessEngine engine = new LoudnessEngine();
+        RecordingListener listener = new RecordingListener();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE, listener);
+        pipeline.setVoiceActivityGate(true);
+
+        // Twenty seconds of audio with a burst every three seconds, as fast as the pipeline goes.
+        pipeline.start(new SyntheticAudioSource(SAMPLE_RATE, 20000, 0, 7));
+        assertTrue(pipeline.awaitCaptureFinished(15000));
+        Thread.sleep(200);
+        assertTrue(pipeline.stop());
+
+        assertNull(listener.failure);
+        assertEquals(20000 / RecognitionPipeline.DEFAULT_HOP_MS, pipeline.getWindows());
+        assertEquals(0, pipeline.getSkippedHops());
+        // The voice activity gate keeps the model off for most of the run.
+        assertTrue(engine.runs < pipeline.getWindows() / 2);
+        assertTrue(pipeline.getGatedWindowCount() > 0);
+        // Bursts at 1.5, 4.5, ... 19.5 s; the dispatcher allows one score per six seconds.
+        assertEquals(Arrays.asList(
+                CommandDispatcher.Action.GUEST_POINT,
+                CommandDispatcher.Action.GUEST_POINT,
+                CommandDispatcher.Action.GUEST_POINT), listener.actions);
+    }
+
+    @Test(timeout = 20000)
+    public void mutedPipeline_discardsDetections() throws Exception {
+        LoudnessEngine engine = new LoudnessEngine();
+        RecordingListener listener = new RecordingListener();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE, listener);
+        pipeline.mute();
+
+        pipeline.start(new SyntheticAudioSource(SAMPLE_RATE, 10000, 0, 7));
+        assertTrue(pipeline.awaitCaptureFinished(15000));
+        Thread.sleep(200);
+        assertTrue(pipeline.stop());
+
+        assertEquals(10000 / RecognitionPipeline.DEFAULT_HOP_MS, pipeline.getWindows());
+        assertEquals(0, engine.runs);
+        assertTrue(listener.actions.isEmpty());
+    }
+
+    @Test(timeout = 20000)
+    public void unmutedPipeline_neverHearsMutedAudio() throws Exception {
+        LoudnessEngine engine = new LoudnessEngine();
+        RecordingListener listener = new RecordingListener();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE, listener);
+        pipeline.mute();
+
+        // Real time; the burst from 1.5 to 1.9 s would still be in the window for a second after it.
+        pipeline.start(new SyntheticAudioSource(SAMPLE_RATE, 3500, 1, 7));
+        Thread.sleep(2100);
+        pipeline.unmute();
+        assertTrue(pipeline.awaitCaptureFinished(15000));
+        Thread.sleep(200);
+        assertTrue(pipeline.stop());
+
+        assertTrue(listener.actions.isEmpty());
+        // Re-armed with the next window rather than a window length later.
+        assertTrue(pipeline.getLastRearmLatencyMs() > 0);
+        assertTrue(pipeline.getLastRearmLatencyMs() < 500);
+    }
+
+    @Test(timeout = 20000)
+    public void slowEngine_catchesUpInBatchesWithoutSkippingHops() throws Exception {
+        SlowBatchingEngine engine = new SlowBatchingEngine();
+        RecordingListener listener = new RecordingListener();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE, listener);
+        pipeline.setVoiceActivityGate(false);
+
+        // Real time, so the audio keeps coming while the engine is busy.
+        pipeline.start(new SyntheticAudioSource(SAMPLE_RATE, 4000, 1, 7));
+        assertTrue(pipeline.awaitCaptureFinished(15000));
+        Thread.sleep(500);
+        assertTrue(pipeline.stop());
+
+        assertNull(listener.failure);
+        assertTrue(engine.batchRuns > 0);
+        assertTrue(pipeline.getBatchedWindowCount() > pipeline.getBatchCount());
+        assertEquals(0, pipeline.getSkippedHops());
+        assertEquals(Collections.singletonList(CommandDispatcher.Action.GUEST_POINT), listener.actions);
+    }
+
+    @Test(timeout = 20000)
+    public void start_waitsForACaptureThreadStillHoldingTheSource() throws Exception {
+        LoudnessEngine engine = new LoudnessEngine();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE,
+                new RecordingListener());
+        StuckSource stuck = new StuckSource();
+        pipeline.start(stuck);
+        assertTrue(stuck.reading.await(5, TimeUnit.SECONDS));
+        assertFalse(pipeline.stop());
+
+        // The old thread is still in its read, so the next source is never opened.
+        StuckSource next = new StuckSource();
+        assertFalse(pipeline.start(next));
+        assertFalse(next.started);
+        assertTrue(next.closed);
+        assertFalse(stuck.closed);
+
+        stuck.release.countDown();
+        assertTrue(pipeline.awaitCaptureFinished(5000));
+        assertTrue(stuck.closed);
+        StuckSource last = new StuckSource();
+        assertTrue(pipeline.start(last));
+        assertTrue(last.reading.await(5, TimeUnit.SECONDS));
+        last.release.countDown();
+        assertTrue(pipeline.stop());
+    }
+
+    @Test(timeout = 20000)
+    public void close_stopsThreadsAndReleasesEngine() throws Exception {
+        LoudnessEngine engine = new LoudnessEngine();
+        RecordingListener listener = new RecordingListener();
+        RecognitionPipeline pipeline = new RecognitionPipeline(LABELS, engine, SAMPLE_RATE, SAMPLE_RATE, listener);
+
+        pipeline.start(new SyntheticAudioSource(SAMPLE_RATE, 60000, 1, 7));
+        Thread.sleep(200);
+        pipeline.close();
+
+        assertTrue(engine.closed);
+        assertTrue(pipeline.awaitCaptureFinished(0));
+        assertNull(listener.failure);
+    }
+}
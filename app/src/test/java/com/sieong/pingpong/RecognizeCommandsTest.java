@@ -0,0 +1,162 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecognizeCommandsTest {
+    private static final List<String> LABELS = Arrays.asList("_silence_", "_unknown_", "yes", "no");
+
+    private static RecognizeCommands newRecognizer() {
+        return new RecognizeCommands(LABELS, 1000, 0.4f, 1500, 3, 30);
+    }
+
+    @Test
+    public void tooFewResults_reportsNoCommand() {
+        RecognizeCommands recognizer = newRecognizer();
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(scores(0, 0, 1, 0), 0);
+        assertFalse(result.isNewCommand);
+        assertEquals("_silence_", result.foundCommand);
+        assertEquals(0, result.labelIndex);
+        assertEquals(0.0f, result.score, 0.0f);
+    }
+
+    @Test
+    public void averagedScoreOverThreshold_detectsCommandOnce() {
+        RecognizeCommands recognizer = newRecognizer();
+        float[] yes = scores(0, 0, 0.9f, 0.1f);
+        recognizer.processLatestResults(yes, 0);
+        recognizer.processLatestResults(yes, 40);
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(yes, 80);
+        assertTrue(result.isNewCommand);
+        assertEquals("yes", result.foundCommand);
+        assertEquals(LABELS.indexOf("yes"), result.labelIndex);
+        assertEquals(0.9f, result.score, 1e-6f);
+
+        result = recognizer.processLatestResults(yes, 120);
+        assertFalse("suppressed within suppressionMs", result.isNewCommand);
+    }
+
+    @Test
+    public void hysteresis_reArmsOnlyBelowTheLowThreshold() {
+        // An average with a time constant far below the frame gap passes scores straight through.
+        RecognizeCommands recognizer = new RecognizeCommands(LABELS,
+                new HysteresisSmoother(new EmaSmoother(LABELS.size(), 1), LABELS.size(), 0.6f, 0.2f),
+                0.4f, 1500, 3, 30);
+        float[] yes = scores(0, 0, 0.9f, 0.1f);
+        float[] unsure = scores(0.5f, 0, 0.5f, 0);
+        // Rises above the high threshold before there are enough frames to report it.
+        recognizer.processLatestResults(yes, 0);
+        recognizer.processLatestResults(yes, 40);
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(yes, 80);
+        assertTrue(result.isNewCommand);
+        assertEquals("yes", result.foundCommand);
+
+        // Between the thresholds for well over the suppression time: still the same command.
+        for (long t = 120; t <= 3000; t += 40) {
+            result = recognizer.processLatestResults(t % 400 == 0 ? yes : unsure, t);
+            assertFalse("no re-trigger at " + t, result.isNewCommand);
+        }
+
+        // Falling below the low threshold re-arms it, and the next rise is a new command.
+        recognizer.processLatestResults(scores(1, 0, 0, 0), 3040);
+        result = recognizer.processLatestResults(yes, 3080);
+        assertTrue(result.isNewCommand);
+    }
+
+    @Test
+    public void hysteresis_keepsSuppressionAndIgnoresBackgroundLabels() {
+        RecognizeCommands recognizer = new RecognizeCommands(LABELS,
+                new HysteresisSmoother(new EmaSmoother(LABELS.size(), 1), LABELS.size(), 0.6f, 0.2f),
+                0.4f, 1500, 3, 30);
+        // Silence, then an unknown word, each rising past the high threshold.
+        recognizer.processLatestResults(scores(1, 0, 0, 0), 0);
+        recognizer.processLatestResults(scores(1, 0, 0, 0), 40);
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(scores(1, 0, 0, 0), 80);
+        assertEquals("_silence_", result.foundCommand);
+        assertFalse(result.isNewCommand);
+        result = recognizer.processLatestResults(scores(0, 0.9f, 0, 0), 120);
+        assertEquals("_unknown_", result.foundCommand);
+        assertFalse(result.isNewCommand);
+
+        result = recognizer.processLatestResults(scores(0, 0, 0.9f, 0), 160);
+        assertTrue(result.isNewCommand);
+
+        // Another word straight after is within the suppression time, and stays spent after it.
+        result = recognizer.processLatestResults(scores(0, 0, 0, 0.9f), 200);
+        assertEquals("no", result.foundCommand);
+        assertFalse(result.isNewCommand);
+        result = recognizer.processLatestResults(scores(0, 0, 0, 0.9f), 1800);
+        assertFalse(result.isNewCommand);
+
+        // Re-armed after the suppression time, it counts again.
+        recognizer.processLatestResults(scores(1, 0, 0, 0), 1840);
+        result = recognizer.processLatestResults(scores(0, 0, 0, 0.9f), 1880);
+        assertTrue(result.isNewCommand);
+    }
+
+    @Test
+    public void scoresAreAveragedOverTheWindow() {
+        RecognizeCommands recognizer = newRecognizer();
+        // The caller's array is reused between calls, as Referee does.
+        float[] reused = new float[LABELS.size()];
+        fill(reused, 1, 0, 0, 0);
+        recognizer.processLatestResults(reused, 0);
+        recognizer.processLatestResults(reused, 40);
+        fill(reused, 0, 0, 1, 0);
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(reused, 80);
+        assertEquals("_silence_", result.foundCommand);
+        assertEquals(2.0f / 3.0f, result.score, 1e-6f);
+    }
+
+    @Test
+    public void oldResultsLeaveTheWindow() {
+        RecognizeCommands recognizer = newRecognizer();
+        for (long t = 0; t <= 1000; t += 40) {
+            recognizer.processLatestResults(scores(1, 0, 0, 0), t);
+        }
+        RecognizeCommands.RecognitionResult result = null;
+        for (long t = 1040; t <= 2080; t += 40) {
+            result = recognizer.processLatestResults(scores(0, 0, 0, 1), t);
+        }
+        assertEquals("no", result.foundCommand);
+        assertEquals(1.0f, result.score, 1e-6f);
+    }
+
+    @Test
+    public void resultsTooCloseTogether_areIgnored() {
+        RecognizeCommands recognizer = newRecognizer();
+        recognizer.processLatestResults(scores(0, 0, 0, 1), 0);
+        recognizer.processLatestResults(scores(0, 0, 0, 1), 40);
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(scores(0, 0, 1, 0), 50);
+        assertFalse(result.isNewCommand);
+        assertEquals("_silence_", result.foundCommand);
+    }
+
+    @Test
+    public void windowHoldsMoreResultsThanEstimated() {
+        RecognizeCommands recognizer = new RecognizeCommands(LABELS, 1000, 0.4f, 1500, 3, 0);
+        for (long t = 0; t < 100; t++) {
+            recognizer.processLatestResults(scores(0, 1, 0, 0), t);
+        }
+        RecognizeCommands.RecognitionResult result = recognizer.processLatestResults(scores(0, 0, 1, 0), 100);
+        assertEquals("_unknown_", result.foundCommand);
+        assertEquals(100.0f / 101.0f, result.score, 1e-6f);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void wrongResultLength_throws() {
+        newRecognizer().processLatestResults(new float[2], 0);
+    }
+
+    private static float[] scores(float... values) {
+        return values;
+    }
+
+    private static void fill(float[] target, float... values) {
+        System.arraycopy(values, 0, target, 0, values.length);
+    }
+}
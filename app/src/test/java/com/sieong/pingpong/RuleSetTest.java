@@ -0,0 +1,139 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RuleSetTest {
+
+    @Test
+    public void elevenPointSingles_servesTwiceThenAlternatesFromDeuce() {
+        Game game = new Game();
+        assertEquals(RuleSet.Player.HOST, game.getScore().server());
+        assertEquals(RuleSet.Player.GUEST, game.getScore().receiver());
+        game.hostScores();
+        assertEquals(Game.PlayerRole.HOST, game.whoShouldServeNext());
+        game.guestScores();
+        assertEquals(Game.PlayerRole.GUEST, game.whoShouldServeNext());
+        for (int i = 0; i < 9; ++i) {
+            game.hostScores();
+            game.guestScores();
+        }
+        assertEquals("Deuce.", game.toString());
+        assertEquals(Game.PlayerRole.HOST, game.whoShouldServeNext());
+        game.hostScores();
+        assertEquals("Host's advantage.", game.toString());
+        assertEquals(Game.PlayerRole.GUEST, game.whoShouldServeNext());
+        game.guestScores();
+        assertEquals("Even.", game.toString());
+        // Far past deuce the states repeat, and so do the announcements.
+        for (int i = 0; i < 50; ++i) {
+            game.hostScores();
+            game.guestScores();
+        }
+        assertEquals("Even.", game.toString());
+        assertEquals(61, game.getScoreHost());
+        game.guestScores();
+        game.guestScores();
+        assertTrue(game.isGameOver());
+        assertTrue(game.isMatchOver());
+        assertEquals("Host 61 to guest 63.", game.toString());
+    }
+
+    @Test
+    public void twentyOnePoint_servesFiveEach() {
+        Game game = new Game(null, RuleSet.TWENTY_ONE_POINT_SINGLES);
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(Game.PlayerRole.HOST, game.whoShouldServeNext());
+            game.guestScores();
+        }
+        assertEquals(Game.PlayerRole.GUEST, game.whoShouldServeNext());
+        for (int i = 0; i < 15; ++i) {
+            game.guestScores();
+        }
+        assertFalse(game.isGameOver());
+        game.guestScores();
+        assertTrue(game.isGameOver());
+        assertEquals(21, game.getScoreGuest());
+    }
+
+    @Test
+    public void bestOfFive_startsNextGameAndEndsAtThree() {
+        Game game = new Game(null, new RuleSet(11, 2, 5));
+        for (int g = 0; g < 2; ++g) {
+            for (int i = 0; i < 11; ++i) {
+                game.hostScores();
+            }
+            assertTrue(game.isGameOver());
+            assertFalse(game.isMatchOver());
+        }
+        assertEquals(2, game.getScore().getGamesHost());
+        // The second game was started by the guest, the third by the host again.
+        game.guestScores();
+        assertEquals(0, game.getScoreHost());
+        assertEquals(1, game.getScoreGuest());
+        assertEquals(Game.PlayerRole.HOST, game.whoShouldServeNext());
+        for (int i = 0; i < 11; ++i) {
+            game.hostScores();
+        }
+        assertTrue(game.isMatchOver());
+        assertEquals(3, game.getScore().getGamesHost());
+        assertEquals(11, game.hostScores().getScoreHost());
+    }
+
+    @Test
+    public void undo_takesBackTheWinningPoint() {
+        Game game = new Game(null, new RuleSet(11, 2, 3));
+        for (int i = 0; i < 11; ++i) {
+            game.guestScores();
+        }
+        assertEquals(1, game.getScore().getGamesGuest());
+        game.cancelLastPoint();
+        assertEquals(0, game.getScore().getGamesGuest());
+        assertEquals(10, game.getScoreGuest());
+        assertFalse(game.isGameOver());
+    }
+
+    @Test
+    public void doubles_rotatesThroughAllFourPlayers() {
+        RuleSet rules = new RuleSet(11, 2, 3, true);
+        Game game = new Game(null, rules);
+        RuleSet.Player[] servers = new RuleSet.Player[4];
+        RuleSet.Player[] receivers = new RuleSet.Player[4];
+        for (int turn = 0; turn < 4; ++turn) {
+            servers[turn] = game.getScore().server();
+            receivers[turn] = game.getScore().receiver();
+            game.hostScores();
+            game.guestScores();
+        }
+        assertArrayEquals(new RuleSet.Player[]{RuleSet.Player.HOST, RuleSet.Player.GUEST,
+                RuleSet.Player.HOST_PARTNER, RuleSet.Player.GUEST_PARTNER}, servers);
+        assertArrayEquals(new RuleSet.Player[]{RuleSet.Player.GUEST, RuleSet.Player.HOST_PARTNER,
+                RuleSet.Player.GUEST_PARTNER, RuleSet.Player.HOST}, receivers);
+
+        for (int i = 0; i < 7; ++i) {
+            game.hostScores();
+        }
+        assertTrue(game.isGameOver());
+        game.guestScores();
+        // The guest pair received first in the last game, so serves first, to the host.
+        assertEquals(RuleSet.Player.GUEST, game.getScore().server());
+        assertEquals(RuleSet.Player.HOST, game.getScore().receiver());
+    }
+
+    @Test
+    public void tables_coverEveryReachableState() {
+        RuleSet rules = new RuleSet(11, 2, 7, true);
+        assertEquals(0, rules.stateOf(0, 0, 0, 0));
+        assertEquals(rules.stateOf(12, 12, 3, 2), rules.stateOf(14, 14, 3, 2));
+        assertNotEquals(rules.stateOf(12, 12, 3, 2), rules.stateOf(13, 13, 3, 2));
+        for (int host = 0; host <= 11; ++host) {
+            for (int guest = 0; guest <= 11; ++guest) {
+                int state = rules.stateOf(host, guest, 3, 2);
+                assertTrue(state < rules.getStateCount());
+                assertEquals(rules.stateOf(host + 1, guest, 3, 2) == rules.nextOnHostPoint(state),
+                        !rules.isGameOver(state) && !rules.isGameOver(rules.nextOnHostPoint(state)));
+            }
+        }
+    }
+}
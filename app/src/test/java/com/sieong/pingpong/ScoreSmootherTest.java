@@ -0,0 +1,83 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScoreSmootherTest {
+
+    @Test
+    public void ema_startsAtFirstFrameAndDecaysTowardsNewScores() {
+        EmaSmoother smoother = new EmaSmoother(2, 100);
+        smoother.add(new float[]{1, 0}, 0);
+        assertEquals(1.0f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0, 1}, 100);
+        // One time constant covers 1 - 1/e of the step.
+        assertEquals((float) Math.exp(-1), smoother.score(0), 1e-6f);
+        assertEquals(1 - (float) Math.exp(-1), smoother.score(1), 1e-6f);
+        assertEquals(2, smoother.size());
+        assertEquals(0, smoother.oldestTimeMs());
+        assertEquals(100, smoother.newestTimeMs());
+    }
+
+    @Test
+    public void median_ignoresSingleFrameSpike() {
+        MedianSmoother smoother = new MedianSmoother(1, 3);
+        smoother.add(new float[]{0.1f}, 0);
+        smoother.add(new float[]{0.9f}, 30);
+        smoother.add(new float[]{0.2f}, 60);
+        assertEquals(0.2f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0.3f}, 90);
+        assertEquals(0.3f, smoother.score(0), 0.0f);
+        assertEquals(3, smoother.size());
+        assertEquals(30, smoother.oldestTimeMs());
+        assertEquals(90, smoother.newestTimeMs());
+    }
+
+    @Test
+    public void median_evenCountAveragesMiddleValues() {
+        MedianSmoother smoother = new MedianSmoother(1, 4);
+        smoother.add(new float[]{0.2f}, 0);
+        smoother.add(new float[]{0.4f}, 30);
+        assertEquals(0.3f, smoother.score(0), 1e-6f);
+    }
+
+    @Test
+    public void hysteresis_latchesAboveHighUntilBelowLow() {
+        HysteresisSmoother smoother = new HysteresisSmoother(new MedianSmoother(1, 1), 1, 0.6f, 0.2f);
+        smoother.add(new float[]{0.5f}, 0);
+        assertEquals(0.0f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0.7f}, 30);
+        assertEquals(0.7f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0.3f}, 60);
+        assertEquals(0.3f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0.1f}, 90);
+        assertEquals(0.0f, smoother.score(0), 0.0f);
+
+        smoother.add(new float[]{0.5f}, 120);
+        assertEquals(0.0f, smoother.score(0), 0.0f);
+    }
+
+    @Test
+    public void boxcar_averagesFramesInsideWindow() {
+        BoxcarSmoother smoother = new BoxcarSmoother(1, 100, 2);
+        smoother.add(new float[]{1}, 0);
+        smoother.add(new float[]{0}, 50);
+        assertEquals(0.5f, smoother.score(0), 1e-6f);
+
+        smoother.add(new float[]{0}, 150);
+        assertEquals(0.0f, smoother.score(0), 1e-6f);
+        assertEquals(2, smoother.size());
+        assertEquals(50, smoother.oldestTimeMs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void median_rejectsEmptyHistory() {
+        new MedianSmoother(1, 0);
+    }
+}
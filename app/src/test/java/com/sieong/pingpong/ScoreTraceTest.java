@@ -0,0 +1,44 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScoreTraceTest {
+
+    @Test
+    public void roundTrip_keepsLabelsTimesAndScores() throws Exception {
+        List<String> labels = Arrays.asList("_silence_", "yes");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScoreTrace.Writer writer = new ScoreTrace.Writer(bytes, labels);
+        writer.write(new float[]{0.9f, 0.1f}, 1589000000000L);
+        writer.write(new float[]{0.2f, 0.8f}, 1589000000030L);
+        writer.close();
+
+        ScoreTrace.Reader reader = new ScoreTrace.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(labels, reader.labels());
+        float[] scores = new float[2];
+        assertTrue(reader.next(scores));
+        assertEquals(1589000000000L, reader.timeMs());
+        assertArrayEquals(new float[]{0.9f, 0.1f}, scores, 0.0f);
+        assertTrue(reader.next(scores));
+        assertEquals(1589000000030L, reader.timeMs());
+        assertArrayEquals(new float[]{0.2f, 0.8f}, scores, 0.0f);
+        assertFalse(reader.next(scores));
+    }
+
+    @Test
+    public void writesAfterClose_areIgnored() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScoreTrace.Writer writer = new ScoreTrace.Writer(bytes, Arrays.asList("yes"));
+        writer.close();
+        int size = bytes.size();
+        writer.write(new float[]{1}, 0);
+        assertEquals(size, bytes.size());
+    }
+}
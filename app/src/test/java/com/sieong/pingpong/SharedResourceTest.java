@@ -0,0 +1,79 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SharedResourceTest {
+    private static final class Resource implements Closeable {
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        boolean isClosed() {
+            return closed.getCount() == 0;
+        }
+    }
+
+    private int created;
+
+    private Resource create() {
+        ++created;
+        return new Resource();
+    }
+
+    @Test
+    public void acquire_sharesOneInstance() {
+        SharedResource<Resource> shared = new SharedResource<>(10_000, this::create);
+
+        Resource first = shared.acquire();
+        Resource second = shared.acquire();
+
+        assertSame(first, second);
+        assertEquals(1, created);
+        assertEquals(2, shared.getReferenceCount());
+    }
+
+    @Test
+    public void reacquireWithinGracePeriod_keepsInstance() throws Exception {
+        SharedResource<Resource> shared = new SharedResource<>(10_000, this::create);
+        Resource first = shared.acquire();
+
+        // An activity destroyed and recreated for a configuration change.
+        shared.release();
+        Resource second = shared.acquire();
+
+        assertSame(first, second);
+        assertEquals(1, created);
+        assertFalse(first.closed.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void lastRelease_closesAfterGracePeriod() throws Exception {
+        SharedResource<Resource> shared = new SharedResource<>(20, this::create);
+        Resource first = shared.acquire();
+        shared.acquire();
+
+        shared.release();
+        assertFalse(first.closed.await(100, TimeUnit.MILLISECONDS));
+        shared.release();
+        first.closed.await();
+
+        Resource second = shared.acquire();
+        assertNotSame(first, second);
+        assertFalse(second.isClosed());
+        assertEquals(2, created);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseWithoutAcquire_throws() {
+        new SharedResource<>(20, this::create).release();
+    }
+}
@@ -0,0 +1,177 @@
+package com.sieong.pingpong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StreamingInferenceEngineTest {
+    private static final int STEP = 4;
+    private static final int PRIME = 40;
+    private static final int HOP = 8;
+
+    /**
+     * Scores with the number of steps heard since the last reset, and checks that the audio of
+     * every step follows on from the one before.
+     */
+    private static final class CountingEngine extends StreamingInferenceEngine {
+        int sinceReset;
+        int expectedStep = -1;
+
+        CountingEngine() {
+            super(STEP, PRIME, 2);
+        }
+
+        @Override
+        protected void resetState() {
+            sinceReset = 0;
+            expectedStep = -1;
+        }
+
+        @Override
+        protected void step(short[] in, int offset, float[] scores) {
+            // Every sample holds the index of the step it belongs to.
+            if (expectedStep >= 0) {
+                assertEquals("audio skipped or repeated", expectedStep, in[offset]);
+            }
+            for (int i = 1; i < STEP; ++i) {
+                assertEquals(in[offset], in[offset + i]);
+            }
+            expectedStep = in[offset] + 1;
+            ++sinceReset;
+            scores[0] = sinceReset;
+            scores[1] = in[offset];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final AudioRing ring = new AudioRing(PRIME, PRIME + HOP, PRIME);
+    private final CountingEngine engine = new CountingEngine();
+    private final float[] scores = new float[2];
+    private long written;
+
+    @Before
+    public void fillPrime() {
+        write(PRIME);
+    }
+
+    private void write(int samples) {
+        final short[] block = new short[samples];
+        for (int i = 0; i < samples; ++i) {
+            block[i] = (short) ((written + i) / STEP);
+        }
+        ring.write(block, 0, samples);
+        written += samples;
+    }
+
+    @Test
+    public void everyHop_stepsOnlyThroughNewAudio() {
+        assertEquals(PRIME, engine.load(ring));
+        engine.run(scores);
+        assertEquals(PRIME / STEP, engine.steps());
+
+        for (int hop = 0; hop < 5; ++hop) {
+            write(HOP);
+            assertEquals(written, engine.load(ring));
+            engine.run(scores);
+        }
+        assertEquals(PRIME / STEP + 5 * HOP / STEP, engine.steps());
+        assertEquals(1, engine.resets());
+        assertEquals(written / STEP - 1, scores[1], 0.0f);
+    }
+
+    @Test
+    public void skippedRuns_areCaughtUpWithoutReset() {
+        engine.load(ring);
+        engine.run(scores);
+        // Gated hops: loaded but never run.
+        for (int hop = 0; hop < 3; ++hop) {
+            write(HOP);
+            engine.load(ring);
+        }
+        write(HOP);
+        engine.load(ring);
+        engine.run(scores);
+
+        assertEquals(1, engine.resets());
+        assertEquals(written / STEP, (long) scores[0]);
+    }
+
+    @Test
+    public void gapLongerThanPrime_resetsState() {
+        engine.load(ring);
+        engine.run(scores);
+        write(PRIME + HOP);
+        engine.load(ring);
+        engine.run(scores);
+
+        assertEquals(2, engine.resets());
+        assertEquals(PRIME / STEP, scores[0], 0.0f);
+    }
+
+    @Test
+    public void partialStep_waitsForTheRest() {
+        engine.load(ring);
+        engine.run(scores);
+        write(STEP - 1);
+        engine.load(ring);
+        engine.run(scores);
+        assertEquals(PRIME / STEP, engine.steps());
+
+        write(1);
+        engine.load(ring);
+        engine.run(scores);
+        assertEquals(PRIME / STEP + 1, engine.steps());
+    }
+
+    @Test
+    public void batch_reportsScoresAsOfEachWindow() {
+        engine.load(ring);
+        engine.run(scores);
+        write(3 * HOP);
+
+        final float[][] batch = new float[3][2];
+        assertTrue(engine.loadBatch(ring, PRIME + HOP, HOP, 3));
+        engine.runBatch(3, batch);
+
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(Arrays.toString(batch[i]), (PRIME + (i + 1) * HOP) / STEP, batch[i][0], 0.0f);
+        }
+        assertEquals(written / STEP, engine.steps());
+    }
+
+    @Test
+    public void anotherRing_startsAfreshOnIt() {
+        // As the tuner and the warm-up do before the live ring takes over.
+        for (int hop = 0; hop < 5; ++hop) {
+            write(HOP);
+        }
+        engine.load(ring);
+        engine.run(scores);
+        assertEquals(1, engine.resets());
+
+        final AudioRing live = new AudioRing(PRIME, PRIME + HOP, PRIME);
+        final short[] block = new short[PRIME];
+        for (int i = 0; i < PRIME; ++i) {
+            block[i] = (short) (1000 + i / STEP);
+        }
+        live.write(block, 0, PRIME);
+        assertEquals(PRIME, engine.load(live));
+        engine.run(scores);
+        assertEquals(2, engine.resets());
+        // Only the live audio was heard since.
+        assertEquals(PRIME / STEP, scores[0], 0.0f);
+        assertEquals(1000 + PRIME / STEP - 1, scores[1], 0.0f);
+
+        // Back to the first ring, whose audio the state no longer follows on from.
+        engine.load(ring);
+        engine.run(scores);
+        assertEquals(3, engine.resets());
+        assertEquals(PRIME / STEP, scores[0], 0.0f);
+    }
+}
@@ -0,0 +1,49 @@
+package com.sieong.pingpong;
+
+import java.util.Arrays;
+
+/**
+ * Engine for JVM tests: every run advances a fake clock by a fixed cost and reports silence.
+ */
+public final class StubInferenceEngine implements InferenceEngine {
+    /**
+     * Fake nanosecond clock shared by all stubs of a test.
+     */
+    public static final class Clock {
+        long nanos;
+
+        public long now() {
+            return nanos;
+        }
+    }
+
+    private final Clock clock;
+    private final long runNanos;
+    private final int windowLength;
+    boolean closed;
+    int runs;
+
+    public StubInferenceEngine(Clock clock, long runNanos, int windowLength) {
+        this.clock = clock;
+        this.runNanos = runNanos;
+        this.windowLength = windowLength;
+    }
+
+    @Override
+    public long load(AudioRing ring) {
+        return ring.snapshot(new short[windowLength]);
+    }
+
+    @Override
+    public void run(float[] scores) {
+        clock.nanos += runNanos;
+        ++runs;
+        Arrays.fill(scores, 0.0f);
+        scores[0] = 1.0f;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,23 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TfLiteEngineFactoryTest {
+    private static final int WINDOW_LENGTH = 16000;
+
+    @Test
+    public void sampleInputs_goToTheSampleEngine() {
+        assertEquals(0, TfLiteEngineFactory.featureCount(new int[]{1, WINDOW_LENGTH}, WINDOW_LENGTH));
+        // Batched raw audio has a third dimension too, which is not a feature count.
+        assertEquals(0, TfLiteEngineFactory.featureCount(new int[]{1, WINDOW_LENGTH, 1}, WINDOW_LENGTH));
+        assertEquals(0, TfLiteEngineFactory.featureCount(new int[]{8, WINDOW_LENGTH, 1}, WINDOW_LENGTH));
+    }
+
+    @Test
+    public void spectrogramInputs_goToTheFeatureEngine() {
+        assertEquals(40, TfLiteEngineFactory.featureCount(new int[]{1, 49, 40}, WINDOW_LENGTH));
+        assertEquals(10, TfLiteEngineFactory.featureCount(new int[]{1, 49, 10, 1}, WINDOW_LENGTH));
+    }
+}
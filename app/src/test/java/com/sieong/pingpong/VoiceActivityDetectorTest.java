@@ -0,0 +1,58 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void backgroundNoise_keepsGateClosed() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE);
+        short[] noise = noise(SAMPLE_RATE * 2, 50, new Random(1));
+        detector.process(noise, 0, noise.length);
+        assertFalse(detector.isSpeechWithin(noise.length, SAMPLE_RATE));
+    }
+
+    @Test
+    public void ballClicks_keepGateClosed() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE);
+        Random random = new Random(2);
+        short[] audio = noise(SAMPLE_RATE * 2, 50, random);
+        for (int click = 1000; click < audio.length; click += SAMPLE_RATE / 3) {
+            for (int i = 0; i < 48; ++i) {
+                audio[click + i] = (short) (random.nextGaussian() * 12000);
+            }
+        }
+        detector.process(audio, 0, audio.length);
+        assertFalse(detector.isSpeechWithin(audio.length, audio.length));
+    }
+
+    @Test
+    public void voicedSound_opensGateForTheWindowAfterIt() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE);
+        short[] audio = noise(SAMPLE_RATE * 3, 50, new Random(3));
+        int voiceStart = SAMPLE_RATE;
+        int voiceEnd = SAMPLE_RATE + SAMPLE_RATE / 2;
+        for (int i = voiceStart; i < voiceEnd; ++i) {
+            audio[i] += (short) (5000 * Math.sin(2 * Math.PI * 180 * i / SAMPLE_RATE));
+        }
+        detector.process(audio, 0, voiceEnd);
+        assertTrue(detector.isSpeechWithin(voiceEnd, SAMPLE_RATE));
+
+        detector.process(audio, voiceEnd, audio.length - voiceEnd);
+        assertTrue(detector.isSpeechWithin(voiceEnd + SAMPLE_RATE / 2, SAMPLE_RATE));
+        assertFalse(detector.isSpeechWithin(audio.length, SAMPLE_RATE));
+    }
+
+    private static short[] noise(int length, double deviation, Random random) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; ++i) {
+            samples[i] = (short) (random.nextGaussian() * deviation);
+        }
+        return samples;
+    }
+}
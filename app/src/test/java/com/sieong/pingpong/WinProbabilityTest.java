@@ -0,0 +1,111 @@
+package com.sieong.pingpong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WinProbabilityTest {
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Plays out every point up to a score of 60, rather than using the closed form for deuce;
+     * what is left by then is negligible.
+     */
+    private static double[][] bruteForce(RuleSet rules, double onHostServe, double onGuestServe) {
+        final int cap = 60;
+        final int last = rules.getPointsToWin();
+        double[][] chance = new double[cap + 2][cap + 2];
+        for (int host = cap + 1; host >= 0; --host) {
+            for (int guest = cap + 1; guest >= 0; --guest) {
+                if (Math.max(host, guest) >= last && Math.abs(host - guest) >= 2) {
+                    chance[host][guest] = host > guest ? 1 : 0;
+                } else if (host > cap || guest > cap) {
+                    chance[host][guest] = 0.5;
+                } else {
+                    RuleSet.Player server = rules.server(rules.stateOf(host, guest, 0, 0));
+                    double p = server.getSide() == Game.PlayerRole.HOST ? onHostServe : onGuestServe;
+                    chance[host][guest] = p * chance[host + 1][guest] + (1 - p) * chance[host][guest + 1];
+                }
+            }
+        }
+        return chance;
+    }
+
+    private static Score scoreOf(RuleSet rules, int host, int guest) {
+        Game game = new Game(null, rules);
+        while (game.getScoreHost() < host || game.getScoreGuest() < guest) {
+            if (game.getScoreHost() - game.getScoreGuest() < host - guest) {
+                game.hostScores();
+            } else {
+                game.guestScores();
+            }
+        }
+        return game.getScore();
+    }
+
+    @Test
+    public void evenRates_giveEvenChancesAtTheStart() {
+        WinProbability probability = new WinProbability(new RuleSet(11, 2, 5));
+        WinProbability.Chances chances = probability.chances(new Game(null, new RuleSet(11, 2, 5)).getScore());
+        assertEquals(0.5, chances.getGame(), 1e-6);
+        assertEquals(0.5, chances.getMatch(), 1e-6);
+    }
+
+    @Test
+    public void deuce_matchesTheClosedForm() {
+        RuleSet rules = RuleSet.ELEVEN_POINT_SINGLES;
+        WinProbability probability = new WinProbability(rules);
+        for (int i = 0; i < 12; ++i) {
+            probability.onPoint(Game.PlayerRole.HOST, Game.PlayerRole.HOST);
+            probability.onPoint(Game.PlayerRole.GUEST, Game.PlayerRole.HOST);
+        }
+        // Posterior rates with the 8-point prior at 0.55 for the server.
+        double a = (12 + 8 * 0.55) / 20;
+        double b = 1 - (0 + 8 * 0.55) / 20;
+        double deuce = a * b / (a * b + (1 - a) * (1 - b));
+        assertEquals(deuce, probability.chances(scoreOf(rules, 10, 10)).getGame(), DELTA);
+        assertEquals(deuce, probability.chances(scoreOf(rules, 13, 13)).getGame(), DELTA);
+
+        // The whole game agrees with playing every point out.
+        double[][] playedOut = bruteForce(rules, a, b);
+        for (int host = 0; host <= 10; host += 5) {
+            for (int guest = 0; guest <= 10; guest += 5) {
+                assertEquals(playedOut[host][guest],
+                        probability.chances(scoreOf(rules, host, guest)).getGame(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void undo_restoresTheEstimate() {
+        RuleSet rules = new RuleSet(11, 2, 3);
+        WinProbability probability = new WinProbability(rules);
+        Score start = new Game(null, rules).getScore();
+        probability.onPoint(Game.PlayerRole.HOST, Game.PlayerRole.GUEST);
+        double before = probability.chances(start).getMatch();
+        probability.onPoint(Game.PlayerRole.GUEST, Game.PlayerRole.GUEST);
+        assertTrue(probability.chances(start).getMatch() < before);
+        probability.onUndo();
+        assertEquals(before, probability.chances(start).getMatch(), DELTA);
+        probability.onReset();
+        assertEquals(0.5, probability.chances(start).getMatch(), 1e-6);
+    }
+
+    @Test
+    public void wonGame_countsTowardsTheMatch() {
+        RuleSet rules = new RuleSet(11, 2, 3);
+        WinProbability probability = new WinProbability(rules);
+        Game game = new Game(null, rules);
+        for (int i = 0; i < 11; ++i) {
+            game.hostScores();
+        }
+        WinProbability.Chances chances = probability.chances(game.getScore());
+        assertEquals(1.0, chances.getGame(), DELTA);
+        // Two more evenly matched games, of which the host needs one.
+        assertEquals(0.75, chances.getMatch(), 1e-6);
+        for (int i = 0; i < 11; ++i) {
+            game.hostScores();
+        }
+        assertEquals(1.0, probability.chances(game.getScore()).getMatch(), DELTA);
+    }
+}
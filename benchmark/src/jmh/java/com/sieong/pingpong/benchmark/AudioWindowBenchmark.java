@@ -0,0 +1,58 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.AudioRing;
+import com.sieong.pingpong.PcmWindow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * The per-tick audio work in Referee.recognize(): snapshotting the recording ring and scaling the
+ * window to floats for the model, into a heap array or the direct tensor buffer.
+ */
+@State(Scope.Thread)
+public class AudioWindowBenchmark {
+    private static final int RECORDING_LENGTH = 16000;
+
+    private final AudioRing ring = new AudioRing(RECORDING_LENGTH, RECORDING_LENGTH / 10);
+    private final short[] window = new short[RECORDING_LENGTH];
+    private final float[] flatInput = new float[RECORDING_LENGTH];
+    private final FloatBuffer directInput =
+            ByteBuffer.allocateDirect(RECORDING_LENGTH * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+    @Setup
+    public void setUp() {
+        // Leave the write position part way round the ring so snapshots wrap.
+        final Random random = new Random(42);
+        final short[] samples = new short[RECORDING_LENGTH + random.nextInt(RECORDING_LENGTH)];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) random.nextInt();
+        }
+        ring.write(samples, 0, samples.length);
+    }
+
+    @Benchmark
+    public short[] snapshot() {
+        ring.snapshot(window);
+        return window;
+    }
+
+    @Benchmark
+    public FloatBuffer toFloatDirect() {
+        PcmWindow.toFloat(window, directInput);
+        return directInput;
+    }
+
+    @Benchmark
+    public float[] toFloatFlat() {
+        PcmWindow.toFloat(window, flatInput);
+        return flatInput;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.Game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Scoring transitions and the score announcement text.
+ */
+@State(Scope.Thread)
+public class GameBenchmark {
+    private static final int STEP_COUNT = 1024;
+    private static final byte HOST = 0;
+    private static final byte GUEST = 1;
+    private static final byte UNDO = 2;
+
+    private final Game game = new Game();
+    private final byte[] steps = new byte[STEP_COUNT];
+    private int step;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < STEP_COUNT; ++i) {
+            final int roll = random.nextInt(20);
+            steps[i] = roll == 0 ? UNDO : (roll % 2 == 0 ? HOST : GUEST);
+        }
+    }
+
+    @Benchmark
+    public Game transition() {
+        step = (step + 1) & (STEP_COUNT - 1);
+        if (game.isGameOver()) {
+            game.reset();
+        }
+        switch (steps[step]) {
+            case HOST:
+                game.hostScores();
+                break;
+            case GUEST:
+                game.guestScores();
+                break;
+            default:
+                game.cancelLastPoint();
+                break;
+        }
+        return game;
+    }
+
+    @Benchmark
+    public String announce() {
+        transition();
+        return game.toString();
+    }
+
+    @Benchmark
+    public Game.PlayerRole whoShouldServeNext() {
+        transition();
+        return game.whoShouldServeNext();
+    }
+}
@@ -0,0 +1,75 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.MatchArchive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Queries against a generated archive: a player's month with totals, which touches only the
+ * index, and decoding the points of one match.
+ */
+@State(Scope.Thread)
+public class MatchArchiveBenchmark {
+    private static final int STEP_COUNT = 1024;
+    private static final long MONTH_MS = 30 * 24 * 60 * 60 * 1000L;
+
+    @Param({"1000000"})
+    public int matches;
+
+    @Param({"500"})
+    public int players;
+
+    private File directory;
+    private MatchArchive archive;
+    private final int[] queryPlayers = new int[STEP_COUNT];
+    private final long[] queryMonths = new long[STEP_COUNT];
+    private final int[] queryEntries = new int[STEP_COUNT];
+    private int step;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("archive").toFile();
+        MatchArchiveGenerator.generate(directory, matches, players, 42);
+        archive = MatchArchive.open(directory);
+        final long lastStartMs = archive.startMs(archive.getSize() - 1);
+        final Random random = new Random(7);
+        for (int i = 0; i < STEP_COUNT; ++i) {
+            queryPlayers[i] = random.nextInt(players);
+            queryMonths[i] = MatchArchiveGenerator.FIRST_MATCH_MS
+                    + (long) (random.nextDouble() * (lastStartMs - MatchArchiveGenerator.FIRST_MATCH_MS - MONTH_MS));
+            queryEntries[i] = random.nextInt(archive.getSize());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        archive.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public MatchArchive.Summary playerMonth() {
+        step = (step + 1) & (STEP_COUNT - 1);
+        return archive.summarize(queryPlayers[step], queryMonths[step], queryMonths[step] + MONTH_MS);
+    }
+
+    @Benchmark
+    public MatchArchive.Points matchPoints() throws IOException {
+        step = (step + 1) & (STEP_COUNT - 1);
+        return archive.readPoints(queryEntries[step]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.Game;
+import com.sieong.pingpong.MatchArchive;
+import com.sieong.pingpong.RuleSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fills an archive with simulated best-of-five matches among a club of players of varied
+ * strength, a match a minute on average, points 10 to 30 seconds apart.
+ *
+ * Usage: MatchArchiveGenerator directory [matches [players]]
+ */
+public class MatchArchiveGenerator {
+    static final long FIRST_MATCH_MS = 1_500_000_000_000L;
+
+    public static void generate(File directory, int matches, int players, long seed) throws IOException {
+        final RuleSet rules = new RuleSet(11, 2, 5);
+        final Random random = new Random(seed);
+        final double[] strength = new double[players];
+        for (int i = 0; i < players; ++i) {
+            strength[i] = random.nextGaussian() * 0.1;
+        }
+        final Game game = new Game(null, rules);
+        boolean[] hostWon = new boolean[128];
+        long[] timesMs = new long[128];
+        long startMs = FIRST_MATCH_MS;
+        try (MatchArchive archive = MatchArchive.open(directory)) {
+            for (int match = 0; match < matches; ++match) {
+                final int host = random.nextInt(players);
+                final int guest = (host + 1 + random.nextInt(players - 1)) % players;
+                final double onHost = 0.5 + strength[host] - strength[guest];
+                startMs += 30_000 + random.nextInt(60_000);
+                game.reset();
+                long timeMs = startMs;
+                int count = 0;
+                while (!game.isMatchOver()) {
+                    if (count == hostWon.length) {
+                        hostWon = Arrays.copyOf(hostWon, count * 2);
+                        timesMs = Arrays.copyOf(timesMs, count * 2);
+                    }
+                    hostWon[count] = random.nextDouble() < onHost;
+                    timesMs[count] = timeMs;
+                    timeMs += 10_000 + random.nextInt(20_000);
+                    if (hostWon[count++]) {
+                        game.hostScores();
+                    } else {
+                        game.guestScores();
+                    }
+                }
+                archive.append(startMs, host, guest, rules, game.getScore().getGamesHost(),
+                        game.getScore().getGamesGuest(),
+                        new MatchArchive.Points(Arrays.copyOf(hostWon, count), Arrays.copyOf(timesMs, count)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MatchArchiveGenerator directory [matches [players]]");
+            System.exit(2);
+        }
+        final int matches = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        final int players = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        final long start = System.nanoTime();
+        generate(new File(args[0]), matches, players, 42);
+        System.out.printf("%d matches among %d players in %d ms%n", matches, players, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,74 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.RecognizeCommands;
+import com.sieong.pingpong.Smoothing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost of one smoothing tick, as paid every ~30 ms on the recognition thread.
+ */
+@State(Scope.Thread)
+public class RecognizeCommandsBenchmark {
+    private static final int FRAME_COUNT = 1024;
+    private static final long TICK_MS = 30;
+
+    @Param({"500", "1000", "2000"})
+    public long windowMs;
+
+    @Param({"12", "35", "100"})
+    public int labelCount;
+
+    @Param({"BOXCAR", "EMA", "HYSTERESIS", "MEDIAN"})
+    public Smoothing smoothing;
+
+    private RecognizeCommands recognizeCommands;
+    private float[][] frames;
+    private int frame;
+    private long timeMs;
+
+    @Setup
+    public void setUp() {
+        final List<String> labels = new ArrayList<>(labelCount);
+        labels.add("_silence_");
+        labels.add("_unknown_");
+        for (int i = 2; i < labelCount; ++i) {
+            labels.add("word" + i);
+        }
+        recognizeCommands = new RecognizeCommands(
+                labels,
+                smoothing.newSmoother(labelCount, windowMs, TICK_MS),
+                0.40f,
+                1500,
+                3,
+                TICK_MS);
+
+        // Mostly silence with occasional bursts of one keyword, like a rally.
+        final Random random = new Random(42);
+        frames = new float[FRAME_COUNT][labelCount];
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            final int top = (i % 200) < 20 ? 2 + (i / 200) % (labelCount - 2) : 0;
+            float sum = 0;
+            for (int j = 0; j < labelCount; ++j) {
+                frames[i][j] = random.nextFloat() * 0.05f;
+                sum += frames[i][j];
+            }
+            frames[i][top] += 1.0f - sum;
+        }
+    }
+
+    @Benchmark
+    public RecognizeCommands.RecognitionResult processLatestResults() {
+        timeMs += TICK_MS;
+        frame = (frame + 1) & (FRAME_COUNT - 1);
+        return recognizeCommands.processLatestResults(frames[frame], timeMs);
+    }
+}
@@ -0,0 +1,59 @@
+package com.sieong.pingpong.benchmark;
+
+import com.sieong.pingpong.Game;
+import com.sieong.pingpong.RuleSet;
+import com.sieong.pingpong.WinProbability;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The per-point cost of the win chances: a new point, which invalidates the tables, then the
+ * chances for the score it led to.
+ */
+@State(Scope.Thread)
+public class WinProbabilityBenchmark {
+    private static final int STEP_COUNT = 1024;
+
+    @Param({"11", "21"})
+    public int pointsToWin;
+
+    private Game game;
+    private WinProbability probability;
+    private final boolean[] hostWins = new boolean[STEP_COUNT];
+    private int step;
+
+    @Setup
+    public void setUp() {
+        final RuleSet rules = new RuleSet(pointsToWin, pointsToWin == 11 ? 2 : 5, 7);
+        game = new Game(null, rules);
+        probability = new WinProbability(rules);
+        final Random random = new Random(42);
+        for (int i = 0; i < STEP_COUNT; ++i) {
+            hostWins[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    public WinProbability.Chances point() {
+        step = (step + 1) & (STEP_COUNT - 1);
+        if (game.isMatchOver()) {
+            game.reset();
+            probability.onReset();
+        }
+        final Game.PlayerRole server = game.whoShouldServeNext();
+        if (hostWins[step]) {
+            game.hostScores();
+            probability.onPoint(server, Game.PlayerRole.HOST);
+        } else {
+            game.guestScores();
+            probability.onPoint(server, Game.PlayerRole.GUEST);
+        }
+        return probability.chances(game.getScore());
+    }
+}
@@ -0,0 +1,24 @@
+package com.sieong.pingpong.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A stream of timestamped model score vectors to replay.
+ */
+interface FrameSource extends Closeable {
+    List<String> labels();
+
+    /**
+     * Reads the next frame into scores, returning false once the source is exhausted.
+     */
+    boolean next(float[] scores) throws IOException;
+
+    long timeMs();
+
+    /**
+     * Whether the last frame was synthetic silence because the voice activity gate was closed.
+     */
+    boolean gated();
+}
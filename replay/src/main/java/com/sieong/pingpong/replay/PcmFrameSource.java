@@ -0,0 +1,92 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.PcmFileSource;
+import com.sieong.pingpong.VoiceActivityDetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Slides a one second window over 16 kHz mono 16-bit PCM, either a WAV file or headerless
+ * little-endian samples, and scores it every hop, the way the recognition thread does on device.
+ * With a {@link VoiceActivityDetector}, windows without speech skip the scorer and read as silence.
+ */
+final class PcmFrameSource implements FrameSource {
+    static final int SAMPLE_RATE = 16000;
+    static final int WINDOW_LENGTH = SAMPLE_RATE;
+
+    private final PcmFileSource in;
+    private final List<String> labels;
+    private final WindowScorer scorer;
+    private final VoiceActivityDetector voiceActivityDetector;
+    private final float[] silenceScores;
+    private boolean gated;
+    private final int hopLength;
+    private final short[] ring = new short[WINDOW_LENGTH];
+    private final short[] window = new short[WINDOW_LENGTH];
+    private final short[] hop;
+    private int ringOffset;
+    private long samplesRead;
+
+    PcmFrameSource(File file, List<String> labels, WindowScorer scorer, long hopMs,
+                   VoiceActivityDetector voiceActivityDetector) throws IOException {
+        this.labels = labels;
+        this.scorer = scorer;
+        this.voiceActivityDetector = voiceActivityDetector;
+        silenceScores = new float[labels.size()];
+        final int silenceIndex = labels.indexOf("_silence_");
+        if (silenceIndex >= 0) {
+            silenceScores[silenceIndex] = 1.0f;
+        }
+        hopLength = (int) (SAMPLE_RATE * hopMs / 1000);
+        hop = new short[hopLength];
+        in = new PcmFileSource(file, SAMPLE_RATE, 0);
+        in.start();
+    }
+
+    @Override
+    public List<String> labels() {
+        return labels;
+    }
+
+    @Override
+    public boolean next(float[] scores) throws IOException {
+        if (in.read(hop, 0, hopLength) < hopLength) {
+            return false;
+        }
+        for (int i = 0; i < hopLength; ++i) {
+            ring[ringOffset] = hop[i];
+            ringOffset = ringOffset + 1 == WINDOW_LENGTH ? 0 : ringOffset + 1;
+        }
+        samplesRead += hopLength;
+        if (voiceActivityDetector != null) {
+            voiceActivityDetector.process(hop, 0, hopLength);
+        }
+        gated = voiceActivityDetector != null
+                && !voiceActivityDetector.isSpeechWithin(samplesRead, WINDOW_LENGTH);
+        if (gated) {
+            System.arraycopy(silenceScores, 0, scores, 0, scores.length);
+            return true;
+        }
+        System.arraycopy(ring, ringOffset, window, 0, WINDOW_LENGTH - ringOffset);
+        System.arraycopy(ring, 0, window, WINDOW_LENGTH - ringOffset, ringOffset);
+        scorer.score(window, scores);
+        return true;
+    }
+
+    @Override
+    public long timeMs() {
+        return samplesRead * 1000 / SAMPLE_RATE;
+    }
+
+    @Override
+    public boolean gated() {
+        return gated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
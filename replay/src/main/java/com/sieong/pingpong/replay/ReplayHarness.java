@@ -0,0 +1,163 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.CommandDispatcher;
+import com.sieong.pingpong.RecognizeCommands;
+import com.sieong.pingpong.Smoothing;
+import com.sieong.pingpong.VoiceActivityDetector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded model scores, or raw audio through a {@link WindowScorer}, through the same
+ * smoothing and command dispatch as {@code Referee}, as fast as the CPU allows.
+ *
+ * <pre>
+ * --trace FILE           score trace recorded with Referee.startScoreTrace
+ * --pcm FILE             16 kHz mono PCM (.wav or raw), needs --labels and --scorer
+ * --labels FILE          label file, one label per line
+ * --scorer CLASS         WindowScorer implementation for --pcm
+ * --truth FILE           "timeMs label" lines for the commands actually spoken
+ * --threshold F          detection threshold (0.40)
+ * --suppression-ms N     suppression after a detection (1500)
+ * --min-count N          minimum results in the window (3)
+ * --window-ms N          averaging window (1000)
+ * --min-gap-ms N         minimum time between results (30)
+ * --hop-ms N             time between windows for --pcm (40)
+ * --vad true|false       gate --pcm windows on voice activity like Referee (false)
+ * --smoothing NAME       boxcar, ema, hysteresis or median (boxcar)
+ * --max-latency-ms N     how late a detection may be and still count as a hit (1500)
+ * </pre>
+ */
+public final class ReplayHarness {
+    private String tracePath;
+    private String pcmPath;
+    private String labelsPath;
+    private String scorerClass;
+    private String truthPath;
+    // Defaults match Referee.
+    private float threshold = 0.40f;
+    private int suppressionMs = 1500;
+    private int minimumCount = 3;
+    private long windowMs = 1000;
+    private long minimumGapMs = 30;
+    private long hopMs = 40;
+    private boolean voiceActivityGate = false;
+    private Smoothing smoothing = Smoothing.BOXCAR;
+    private long maxLatencyMs = 1500;
+
+    public static void main(String[] args) throws Exception {
+        final ReplayHarness harness = new ReplayHarness();
+        harness.parse(args);
+        harness.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--trace": tracePath = value; break;
+                case "--pcm": pcmPath = value; break;
+                case "--labels": labelsPath = value; break;
+                case "--scorer": scorerClass = value; break;
+                case "--truth": truthPath = value; break;
+                case "--threshold": threshold = Float.parseFloat(value); break;
+                case "--suppression-ms": suppressionMs = Integer.parseInt(value); break;
+                case "--min-count": minimumCount = Integer.parseInt(value); break;
+                case "--window-ms": windowMs = Long.parseLong(value); break;
+                case "--min-gap-ms": minimumGapMs = Long.parseLong(value); break;
+                case "--hop-ms": hopMs = Long.parseLong(value); break;
+                case "--vad": voiceActivityGate = Boolean.parseBoolean(value); break;
+                case "--smoothing": smoothing = Smoothing.valueOf(value.toUpperCase()); break;
+                case "--max-latency-ms": maxLatencyMs = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if ((tracePath == null) == (pcmPath == null)) {
+            throw new IllegalArgumentException("Give exactly one of --trace or --pcm");
+        }
+        if (pcmPath != null && (labelsPath == null || scorerClass == null)) {
+            throw new IllegalArgumentException("--pcm needs --labels and --scorer");
+        }
+    }
+
+    private void run() throws Exception {
+        final ReplayReport report = new ReplayReport(maxLatencyMs);
+        try (FrameSource source = openSource()) {
+            replay(source, report);
+        }
+        report.print(System.out, truthPath == null ? null : readTruth(new File(truthPath)));
+    }
+
+    private void replay(FrameSource source, ReplayReport report) throws IOException {
+        final List<String> labels = source.labels();
+        final RecognizeCommands recognizeCommands = new RecognizeCommands(
+                labels,
+                smoothing.newSmoother(labels.size(), windowMs, minimumGapMs),
+                threshold,
+                suppressionMs,
+                minimumCount,
+                minimumGapMs);
+        final CommandDispatcher dispatcher = new CommandDispatcher(labels);
+        final float[] scores = new float[labels.size()];
+
+        final long start = System.nanoTime();
+        while (source.next(scores)) {
+            final long timeMs = source.timeMs();
+            report.onFrame(timeMs, source.gated());
+            final RecognizeCommands.RecognitionResult result =
+                    recognizeCommands.processLatestResults(scores, timeMs);
+            if (result.isNewCommand && !result.foundCommand.startsWith("_")) {
+                report.onDetection(result.foundCommand, timeMs);
+            }
+            final CommandDispatcher.Action action = dispatcher.dispatch(result, timeMs);
+            if (action != null) {
+                report.onAction(action.name());
+            }
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+    }
+
+    private FrameSource openSource() throws Exception {
+        if (tracePath != null) {
+            return new TraceFrameSource(new File(tracePath));
+        }
+        final List<String> labels = readLines(new File(labelsPath));
+        final WindowScorer scorer = (WindowScorer) Class.forName(scorerClass)
+                .getConstructor(List.class)
+                .newInstance(labels);
+        return new PcmFrameSource(new File(pcmPath), labels, scorer, hopMs,
+                voiceActivityGate ? new VoiceActivityDetector(PcmFrameSource.SAMPLE_RATE) : null);
+    }
+
+    private static List<ReplayReport.TruthEvent> readTruth(File file) throws IOException {
+        final List<ReplayReport.TruthEvent> events = new ArrayList<>();
+        for (String line : readLines(file)) {
+            final String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2 && !parts[0].startsWith("#")) {
+                events.add(new ReplayReport.TruthEvent(Long.parseLong(parts[0]), parts[1]));
+            }
+        }
+        return events;
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,225 @@
+package com.sieong.pingpong.replay;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects detections from a replay and scores them against the spoken commands, if known.
+ */
+final class ReplayReport {
+    private final long maxLatencyMs;
+    private final Map<String, List<Long>> detections = new LinkedHashMap<>();
+    private final Map<String, Integer> actions = new LinkedHashMap<>();
+    private long frames;
+    private long gatedFrames;
+    // Times of the frames the model actually ran on, for telling gate misses from model misses.
+    private long[] openFrameTimes = new long[1024];
+    private int openFrameCount;
+    private long elapsedNanos;
+    private long audioMs;
+
+    ReplayReport(long maxLatencyMs) {
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    void onFrame(long timeMs, boolean gated) {
+        ++frames;
+        audioMs = timeMs;
+        if (gated) {
+            ++gatedFrames;
+            return;
+        }
+        if (openFrameCount == openFrameTimes.length) {
+            openFrameTimes = Arrays.copyOf(openFrameTimes, openFrameCount * 2);
+        }
+        openFrameTimes[openFrameCount++] = timeMs;
+    }
+
+    void onDetection(String label, long timeMs) {
+        List<Long> times = detections.get(label);
+        if (times == null) {
+            times = new ArrayList<>();
+            detections.put(label, times);
+        }
+        times.add(timeMs);
+    }
+
+    void onAction(String action) {
+        final Integer count = actions.get(action);
+        actions.put(action, count == null ? 1 : count + 1);
+    }
+
+    void setElapsedNanos(long nanos) {
+        elapsedNanos = nanos;
+    }
+
+    void print(PrintStream out, List<TruthEvent> truth) {
+        final double seconds = elapsedNanos / 1e9;
+        if (seconds > 0) {
+            out.printf("frames: %d in %.3f s (%.0f frames/s, %.0fx real time)%n",
+                    frames, seconds, frames / seconds, audioMs / 1000.0 / seconds);
+        } else {
+            out.printf("frames: %d%n", frames);
+        }
+        if (gatedFrames > 0) {
+            out.printf("voice activity gate: model skipped on %d of %d windows (%.1f%%)%n",
+                    gatedFrames, frames, 100.0 * gatedFrames / frames);
+        }
+        out.println("actions: " + actions);
+        for (Map.Entry<String, List<Long>> entry : detections.entrySet()) {
+            out.printf("detected %-10s %d%n", entry.getKey(), entry.getValue().size());
+        }
+        if (truth == null) {
+            return;
+        }
+
+        out.println("label        hits  misses  false  gated    p50    p90    p99    max (ms)");
+        for (Map.Entry<String, LabelScore> entry : score(truth).entrySet()) {
+            final LabelScore score = entry.getValue();
+            if (!score.spoken) {
+                out.printf("%-10s %6d %7d %6d%n", entry.getKey(), 0, 0, score.falseTriggers);
+                continue;
+            }
+            final long[] sorted = score.latenciesMs;
+            out.printf("%-10s %6d %7d %6d %6d %6d %6d %6d %6d%n",
+                    entry.getKey(), sorted.length, score.misses, score.falseTriggers, score.gateMisses,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    sorted.length == 0 ? -1 : sorted[sorted.length - 1]);
+        }
+    }
+
+    /**
+     * Matches each spoken command to the earliest unused detection of its label within the latency
+     * bound. Labels that were spoken come first, in order of first mention, then those only detected.
+     */
+    Map<String, LabelScore> score(List<TruthEvent> truth) {
+        final Map<String, List<Long>> latencies = new LinkedHashMap<>();
+        final Map<String, Integer> misses = new LinkedHashMap<>();
+        final Map<String, Integer> gateMisses = new LinkedHashMap<>();
+        final Map<String, boolean[]> used = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Long>> entry : detections.entrySet()) {
+            used.put(entry.getKey(), new boolean[entry.getValue().size()]);
+        }
+        for (TruthEvent event : truth) {
+            if (!latencies.containsKey(event.label)) {
+                latencies.put(event.label, new ArrayList<Long>());
+                misses.put(event.label, 0);
+                gateMisses.put(event.label, 0);
+            }
+            if (!modelRanWithin(event.timeMs, event.timeMs + maxLatencyMs)) {
+                gateMisses.put(event.label, gateMisses.get(event.label) + 1);
+            }
+            final List<Long> times = detections.get(event.label);
+            int match = -1;
+            if (times != null) {
+                final boolean[] taken = used.get(event.label);
+                for (int i = 0; i < times.size(); ++i) {
+                    final long latency = times.get(i) - event.timeMs;
+                    if (!taken[i] && latency >= 0 && latency <= maxLatencyMs) {
+                        match = i;
+                        break;
+                    }
+                }
+                if (match >= 0) {
+                    taken[match] = true;
+                    latencies.get(event.label).add(times.get(match) - event.timeMs);
+                }
+            }
+            if (match < 0) {
+                misses.put(event.label, misses.get(event.label) + 1);
+            }
+        }
+
+        final Map<String, LabelScore> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+            final String label = entry.getKey();
+            result.put(label, new LabelScore(true, sorted(entry.getValue()), misses.get(label),
+                    falseTriggers(used.get(label)), gateMisses.get(label)));
+        }
+        for (Map.Entry<String, boolean[]> entry : used.entrySet()) {
+            if (!result.containsKey(entry.getKey())) {
+                result.put(entry.getKey(), new LabelScore(false, new long[0], 0, falseTriggers(entry.getValue()), 0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the model ran on any window ending in [fromMs, toMs]. A spoken command without one was
+     * missed by the voice activity gate rather than by the model.
+     */
+    private boolean modelRanWithin(long fromMs, long toMs) {
+        int index = Arrays.binarySearch(openFrameTimes, 0, openFrameCount, fromMs);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < openFrameCount && openFrameTimes[index] <= toMs;
+    }
+
+    private static int falseTriggers(boolean[] taken) {
+        int count = 0;
+        if (taken != null) {
+            for (boolean matched : taken) {
+                if (!matched) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long[] sorted(List<Long> values) {
+        final long[] result = new long[values.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = values.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    /**
+     * How the detections of one label compare with the spoken commands.
+     */
+    static final class LabelScore {
+        // Whether the label was spoken at all; if not, every detection of it is a false trigger.
+        final boolean spoken;
+        // Sorted latencies of the matched detections, one per hit.
+        final long[] latenciesMs;
+        final int misses;
+        final int falseTriggers;
+        // Spoken commands the voice activity gate kept the model from hearing at all.
+        final int gateMisses;
+
+        LabelScore(boolean spoken, long[] latenciesMs, int misses, int falseTriggers, int gateMisses) {
+            this.spoken = spoken;
+            this.latenciesMs = latenciesMs;
+            this.misses = misses;
+            this.falseTriggers = falseTriggers;
+            this.gateMisses = gateMisses;
+        }
+    }
+
+    /**
+     * A command known to have been spoken at a given time.
+     */
+    static final class TruthEvent {
+        final long timeMs;
+        final String label;
+
+        TruthEvent(long timeMs, String label) {
+            this.timeMs = timeMs;
+            this.label = label;
+        }
+    }
+}
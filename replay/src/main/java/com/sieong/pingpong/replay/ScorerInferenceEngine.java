@@ -0,0 +1,56 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.AudioRing;
+import com.sieong.pingpong.InferenceEngine;
+
+/**
+ * Puts a {@link WindowScorer} behind the engine interface the recognition pipeline runs. A batch
+ * is scored one window after another, which is no faster but drives the pipeline's catch-up path.
+ */
+final class ScorerInferenceEngine implements InferenceEngine {
+    private final WindowScorer scorer;
+    private final short[] window;
+    private final short[][] batchWindows;
+
+    ScorerInferenceEngine(WindowScorer scorer, int windowLength, int maxBatchSize) {
+        this.scorer = scorer;
+        window = new short[windowLength];
+        batchWindows = new short[maxBatchSize][windowLength];
+    }
+
+    @Override
+    public long load(AudioRing ring) {
+        return ring.snapshot(window);
+    }
+
+    @Override
+    public void run(float[] scores) {
+        scorer.score(window, scores);
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchWindows.length;
+    }
+
+    @Override
+    public boolean loadBatch(AudioRing ring, long firstEnd, int hopLength, int count) {
+        for (int i = 0; i < count; ++i) {
+            if (!ring.read(firstEnd + (long) i * hopLength, batchWindows[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void runBatch(int count, float[][] scores) {
+        for (int i = 0; i < count; ++i) {
+            scorer.score(batchWindows[i], scores[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
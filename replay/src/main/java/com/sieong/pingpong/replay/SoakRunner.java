@@ -0,0 +1,165 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.AudioSource;
+import com.sieong.pingpong.CommandDispatcher;
+import com.sieong.pingpong.PcmFileSource;
+import com.sieong.pingpong.RecognitionPipeline;
+import com.sieong.pingpong.Smoothing;
+import com.sieong.pingpong.SyntheticAudioSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the whole capture, inference, smoothing and dispatch pipeline headless, with both of its
+ * threads, on a file or on generated audio, and reports throughput, skipped hops and heap use.
+ *
+ * <pre>
+ * --pcm FILE             16 kHz mono PCM (.wav or raw)
+ * --synthetic-s N        N seconds of generated audio instead of --pcm
+ * --labels FILE          label file, one label per line
+ * --scorer CLASS         WindowScorer implementation
+ * --speed F              1 for real time, 20 for twenty times as fast, 0 for as fast as the
+ *                        pipeline keeps up without skipping a hop (0)
+ * --hop-ms N             time between windows (40)
+ * --vad true|false       gate windows on voice activity (false)
+ * --smoothing NAME       boxcar, ema, hysteresis or median (boxcar)
+ * --seed N               seed for --synthetic-s (1)
+ * --batch N              windows the scorer may take at once when catching up (1)
+ * </pre>
+ */
+public final class SoakRunner {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int WINDOW_LENGTH = SAMPLE_RATE;
+    private static final long REPORT_INTERVAL_MS = 10_000;
+
+    private String pcmPath;
+    private long syntheticSeconds;
+    private String labelsPath;
+    private String scorerClass;
+    private float speed;
+    private long hopMs = RecognitionPipeline.DEFAULT_HOP_MS;
+    private boolean voiceActivityGate = false;
+    private Smoothing smoothing = Smoothing.BOXCAR;
+    private long seed = 1;
+    private int maxBatchSize = 1;
+
+    public static void main(String[] args) throws Exception {
+        final SoakRunner runner = new SoakRunner();
+        runner.parse(args);
+        runner.run(System.out);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--pcm": pcmPath = value; break;
+                case "--synthetic-s": syntheticSeconds = Long.parseLong(value); break;
+                case "--labels": labelsPath = value; break;
+                case "--scorer": scorerClass = value; break;
+                case "--speed": speed = Float.parseFloat(value); break;
+                case "--hop-ms": hopMs = Long.parseLong(value); break;
+                case "--vad": voiceActivityGate = Boolean.parseBoolean(value); break;
+                case "--smoothing": smoothing = Smoothing.valueOf(value.toUpperCase()); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--batch": maxBatchSize = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if ((pcmPath == null) == (syntheticSeconds <= 0)) {
+            throw new IllegalArgumentException("Give exactly one of --pcm or --synthetic-s");
+        }
+        if (labelsPath == null || scorerClass == null) {
+            throw new IllegalArgumentException("--labels and --scorer are required");
+        }
+    }
+
+    private void run(PrintStream out) throws Exception {
+        final List<String> labels = readLines(new File(labelsPath));
+        final WindowScorer scorer = (WindowScorer) Class.forName(scorerClass)
+                .getConstructor(List.class)
+                .newInstance(labels);
+        final Map<CommandDispatcher.Action, Integer> actions = new EnumMap<>(CommandDispatcher.Action.class);
+        final IOException[] failure = new IOException[1];
+        final RecognitionPipeline pipeline = new RecognitionPipeline(
+                labels, new ScorerInferenceEngine(scorer, WINDOW_LENGTH, maxBatchSize), SAMPLE_RATE, WINDOW_LENGTH,
+                new RecognitionPipeline.Listener() {
+                    @Override
+                    public void onAction(CommandDispatcher.Action action) {
+                        synchronized (actions) {
+                            actions.merge(action, 1, Integer::sum);
+                        }
+                    }
+
+                    @Override
+                    public void onCaptureFailed(IOException e) {
+                        failure[0] = e;
+                    }
+
+                    @Override
+                    public void onScoreTraceFailed(IOException e) {
+                    }
+                });
+        pipeline.setHopMs(hopMs);
+        pipeline.setSmoothing(smoothing);
+        pipeline.setVoiceActivityGate(voiceActivityGate);
+
+        final AudioSource source = pcmPath != null
+                ? new PcmFileSource(new File(pcmPath), SAMPLE_RATE, speed)
+                : new SyntheticAudioSource(SAMPLE_RATE, syntheticSeconds * 1000, speed, seed);
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final long start = System.nanoTime();
+        pipeline.start(source);
+        while (!pipeline.awaitCaptureFinished(REPORT_INTERVAL_MS)) {
+            out.println(String.format(Locale.US, "%6.0f s  %s",
+                    (System.nanoTime() - start) / 1e9, pipeline));
+        }
+        // Let recognition take the last window before stopping.
+        Thread.sleep(Math.max(50, hopMs * 2));
+        final boolean stopped = pipeline.stop();
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.gc();
+        final long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        final double audioSeconds = pipeline.getCapturedSamples() / (double) SAMPLE_RATE;
+        out.println(String.format(Locale.US, "audio %.1f s in %.2f s wall, %.1fx real time",
+                audioSeconds, elapsedSeconds, audioSeconds / elapsedSeconds));
+        out.println(pipeline);
+        out.println("actions " + actions);
+        out.println(String.format(Locale.US, "heap %.1f MB before, %.1f MB after",
+                heapBefore / 1e6, heapAfter / 1e6));
+        if (!stopped) {
+            out.println("threads did not stop in time");
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
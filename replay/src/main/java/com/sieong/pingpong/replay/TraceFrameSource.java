@@ -0,0 +1,45 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.ScoreTrace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Frames recorded on device with {@code Referee.startScoreTrace}.
+ */
+final class TraceFrameSource implements FrameSource {
+    private final ScoreTrace.Reader reader;
+
+    TraceFrameSource(File file) throws IOException {
+        reader = new ScoreTrace.Reader(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    @Override
+    public List<String> labels() {
+        return reader.labels();
+    }
+
+    @Override
+    public boolean next(float[] scores) throws IOException {
+        return reader.next(scores);
+    }
+
+    @Override
+    public long timeMs() {
+        return reader.timeMs();
+    }
+
+    @Override
+    public boolean gated() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
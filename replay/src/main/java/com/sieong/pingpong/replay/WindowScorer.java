@@ -0,0 +1,9 @@
+package com.sieong.pingpong.replay;
+
+/**
+ * Runs a keyword model over one window of 16 kHz PCM for the raw audio replay mode. Implementations
+ * are loaded by class name and need a public constructor taking the label list.
+ */
+public interface WindowScorer {
+    void score(short[] window, float[] scores);
+}
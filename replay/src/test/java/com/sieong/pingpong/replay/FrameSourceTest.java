@@ -0,0 +1,151 @@
+package com.sieong.pingpong.replay;
+
+import com.sieong.pingpong.ScoreTrace;
+import com.sieong.pingpong.VoiceActivityDetector;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameSourceTest {
+    private static final List<String> LABELS = Arrays.asList("_silence_", "go");
+    private static final int HOP_MS = 100;
+    private static final int HOP_LENGTH = PcmFrameSource.SAMPLE_RATE * HOP_MS / 1000;
+
+    /**
+     * Scores "go" as the last sample of the window and "_silence_" as the first.
+     */
+    private static final class LastSampleScorer implements WindowScorer {
+        int windows;
+
+        @Override
+        public void score(short[] window, float[] scores) {
+            ++windows;
+            scores[0] = window[0];
+            scores[1] = window[window.length - 1];
+        }
+    }
+
+    private static void writeShortLe(DataOutputStream out, int value) throws IOException {
+        out.writeByte(value & 0xff);
+        out.writeByte((value >> 8) & 0xff);
+    }
+
+    private static void writeIntLe(DataOutputStream out, int value) throws IOException {
+        writeShortLe(out, value & 0xffff);
+        writeShortLe(out, value >>> 16);
+    }
+
+    private static File pcmFile(short[] samples, boolean wav) throws IOException {
+        File file = File.createTempFile("replay", wav ? ".wav" : ".pcm");
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            if (wav) {
+                out.writeBytes("RIFF");
+                writeIntLe(out, 36 + samples.length * 2);
+                out.writeBytes("WAVE");
+                out.writeBytes("fmt ");
+                writeIntLe(out, 16);
+                writeShortLe(out, 1);
+                writeShortLe(out, 1);
+                writeIntLe(out, PcmFrameSource.SAMPLE_RATE);
+                writeIntLe(out, PcmFrameSource.SAMPLE_RATE * 2);
+                writeShortLe(out, 2);
+                writeShortLe(out, 16);
+                out.writeBytes("data");
+                writeIntLe(out, samples.length * 2);
+            }
+            for (short sample : samples) {
+                writeShortLe(out, sample);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Ten and a half hops, each sample holding the number of the hop it is in, counting from one.
+     */
+    private static short[] numberedHops() {
+        short[] samples = new short[HOP_LENGTH * 21 / 2];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) (i / HOP_LENGTH + 1);
+        }
+        return samples;
+    }
+
+    private static void assertSlidesOverNumberedHops(File file) throws IOException {
+        LastSampleScorer scorer = new LastSampleScorer();
+        float[] scores = new float[LABELS.size()];
+        try (PcmFrameSource source = new PcmFrameSource(file, LABELS, scorer, HOP_MS, null)) {
+            assertEquals(LABELS, source.labels());
+            for (int hop = 1; hop <= 10; ++hop) {
+                assertTrue(source.next(scores));
+                assertFalse(source.gated());
+                assertEquals(hop * HOP_MS, source.timeMs());
+                assertEquals(hop, scores[1], 0.0f);
+                // The window is zero-filled until a whole second has been read.
+                assertEquals(hop < 10 ? 0 : 1, scores[0], 0.0f);
+            }
+            // The trailing half hop is not enough for another window.
+            assertFalse(source.next(scores));
+        }
+        assertEquals(10, scorer.windows);
+    }
+
+    @Test
+    public void pcmSource_slidesTheWindowOneHopAtATime() throws IOException {
+        assertSlidesOverNumberedHops(pcmFile(numberedHops(), false));
+        assertSlidesOverNumberedHops(pcmFile(numberedHops(), true));
+    }
+
+    @Test
+    public void pcmSource_gatesSilenceWithoutScoring() throws IOException {
+        LastSampleScorer scorer = new LastSampleScorer();
+        float[] scores = new float[LABELS.size()];
+        File file = pcmFile(new short[HOP_LENGTH * 20], false);
+        try (PcmFrameSource source = new PcmFrameSource(file, LABELS, scorer,
+                HOP_MS, new VoiceActivityDetector(PcmFrameSource.SAMPLE_RATE))) {
+            int frames = 0;
+            while (source.next(scores)) {
+                ++frames;
+                assertTrue(source.gated());
+                assertArrayEquals(new float[]{1.0f, 0.0f}, scores, 0.0f);
+            }
+            assertEquals(20, frames);
+        }
+        assertEquals(0, scorer.windows);
+    }
+
+    @Test
+    public void traceSource_readsBackWhatWasRecorded() throws IOException {
+        File file = File.createTempFile("replay", ".trace");
+        file.deleteOnExit();
+        try (ScoreTrace.Writer writer = new ScoreTrace.Writer(new FileOutputStream(file), LABELS)) {
+            writer.write(new float[]{0.9f, 0.1f}, 1000);
+            writer.write(new float[]{0.2f, 0.8f}, 1100);
+            writer.write(new float[]{0.5f, 0.5f}, 1350);
+        }
+
+        float[] scores = new float[LABELS.size()];
+        try (TraceFrameSource source = new TraceFrameSource(file)) {
+            assertEquals(LABELS, source.labels());
+            assertTrue(source.next(scores));
+            assertEquals(1000, source.timeMs());
+            assertArrayEquals(new float[]{0.9f, 0.1f}, scores, 0.0f);
+            assertTrue(source.next(scores));
+            assertEquals(1100, source.timeMs());
+            assertArrayEquals(new float[]{0.2f, 0.8f}, scores, 0.0f);
+            assertTrue(source.next(scores));
+            assertEquals(1350, source.timeMs());
+            assertFalse(source.gated());
+            assertFalse(source.next(scores));
+        }
+    }
+}
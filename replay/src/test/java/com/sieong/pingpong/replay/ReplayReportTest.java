@@ -0,0 +1,96 @@
+package com.sieong.pingpong.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReplayReportTest {
+    private static String printed(ReplayReport report, List<ReplayReport.TruthEvent> truth) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        report.print(new PrintStream(bytes, true), truth);
+        return bytes.toString();
+    }
+
+    @Test
+    public void score_matchesEachCommandToOneDetectionWithinTheLatencyBound() {
+        ReplayReport report = new ReplayReport(1000);
+        // A frame every 100 ms for ten seconds, with the gate closed from 5 to 7 s.
+        for (long timeMs = 100; timeMs <= 10000; timeMs += 100) {
+            report.onFrame(timeMs, timeMs >= 5000 && timeMs <= 7000);
+        }
+        List<ReplayReport.TruthEvent> truth = Arrays.asList(
+                new ReplayReport.TruthEvent(1000, "go"),
+                new ReplayReport.TruthEvent(2000, "stop"),
+                new ReplayReport.TruthEvent(3000, "go"),
+                new ReplayReport.TruthEvent(5500, "go"),
+                new ReplayReport.TruthEvent(8000, "stop"));
+        report.onDetection("up", 500);
+        report.onDetection("go", 1300);
+        report.onDetection("stop", 2200);
+        report.onDetection("go", 3800);
+        // The second detection of the same command.
+        report.onDetection("go", 4000);
+        // Too late for the command at 8 s.
+        report.onDetection("stop", 9500);
+
+        Map<String, ReplayReport.LabelScore> scores = report.score(truth);
+        assertEquals(Arrays.asList("go", "stop", "up"), new ArrayList<>(scores.keySet()));
+
+        ReplayReport.LabelScore go = scores.get("go");
+        assertTrue(go.spoken);
+        assertArrayEquals(new long[]{300, 800}, go.latenciesMs);
+        assertEquals(1, go.misses);
+        assertEquals(1, go.falseTriggers);
+        // The model did not run between 5.5 and 6.5 s.
+        assertEquals(1, go.gateMisses);
+
+        ReplayReport.LabelScore stop = scores.get("stop");
+        assertArrayEquals(new long[]{200}, stop.latenciesMs);
+        assertEquals(1, stop.misses);
+        assertEquals(1, stop.falseTriggers);
+        assertEquals(0, stop.gateMisses);
+
+        ReplayReport.LabelScore up = scores.get("up");
+        assertFalse(up.spoken);
+        assertEquals(0, up.latenciesMs.length);
+        assertEquals(1, up.falseTriggers);
+    }
+
+    @Test
+    public void percentile_picksFromTheSortedLatencies() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; ++i) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(51, ReplayReport.percentile(sorted, 50));
+        assertEquals(91, ReplayReport.percentile(sorted, 90));
+        assertEquals(100, ReplayReport.percentile(sorted, 99));
+        assertEquals(100, ReplayReport.percentile(sorted, 100));
+        assertEquals(7, ReplayReport.percentile(new long[]{7}, 99));
+        assertEquals(-1, ReplayReport.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void print_emptyReplayHasNoRates() {
+        String output = printed(new ReplayReport(1000), Collections.<ReplayReport.TruthEvent>emptyList());
+        assertTrue(output.startsWith("frames: 0"));
+        assertFalse(output.contains("NaN"));
+        assertFalse(output.contains("Infinity"));
+
+        ReplayReport report = new ReplayReport(1000);
+        report.onFrame(100, true);
+        report.onDetection("go", 100);
+        output = printed(report, Collections.singletonList(new ReplayReport.TruthEvent(50, "go")));
+        assertFalse(output.contains("NaN"));
+        assertFalse(output.contains("Infinity"));
+        assertTrue(output.contains("skipped on 1 of 1 windows"));
+    }
+}